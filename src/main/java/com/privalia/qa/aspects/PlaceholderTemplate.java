@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.aspects;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.privalia.qa.exceptions.NonReplaceableException;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+
+import java.io.FileNotFoundException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled form of a string that contains ${}, !{}, @{} and #{} placeholders.
+ * <p>
+ * A string is tokenized once into literal segments and typed {@link Placeholder} nodes, and the result
+ * is cached, so rendering the same text again (i.e. the same step in every row of a Scenario Outline)
+ * is a single pass over the segments with one StringBuilder.
+ * <p>
+ * Placeholders can be nested (i.e. {@code @{IP.${iface}}}), the inner ones are rendered first. As in the
+ * previous implementation, where every type was replaced in its own pass (${}, then !{}, then @{} and
+ * finally #{}), a resolved value is expanded again only for its own type and the types that come after it.
+ */
+final class PlaceholderTemplate {
+
+    public static final long MAX_CACHED_CHARS = 8_000_000L;
+
+    public static final int MAX_DEPTH = 32;
+
+    public static final int ALL_KINDS = 0xF;
+
+    private static final Cache<Key, PlaceholderTemplate> CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_CACHED_CHARS)
+            .weigher((Key key, PlaceholderTemplate template) -> key.text.length())
+            .build();
+
+    private final String text;
+
+    private final int mask;
+
+    private final Object[] segments;
+
+    private PlaceholderTemplate(String text, int mask, Object[] segments) {
+        this.text = text;
+        this.mask = mask;
+        this.segments = segments;
+    }
+
+    /**
+     * Types of placeholder, in the order in which they used to be replaced.
+     */
+    enum Kind {
+        ENVIRONMENT, REFLECTION, CODE, PROPERTY;
+
+        int bit() {
+            return 1 << ordinal();
+        }
+
+        /**
+         * Mask with this kind and all the kinds replaced after it.
+         *
+         * @return mask
+         */
+        int andLater() {
+            return ALL_KINDS & ~(bit() - 1);
+        }
+
+        /**
+         * Returns the kind of placeholder that starts with the given marker ($, !, @, #).
+         *
+         * @param c marker
+         * @return the kind, or null if c is not a marker
+         */
+        static Kind of(char c) {
+            switch (c) {
+                case '$':
+                    return ENVIRONMENT;
+                case '!':
+                    return REFLECTION;
+                case '@':
+                    return CODE;
+                case '#':
+                    return PROPERTY;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Resolves the value of a single placeholder.
+     */
+    interface Resolver {
+
+        /**
+         * Returns the value of the placeholder.
+         *
+         * @param placeholder placeholder, with its body already rendered
+         * @return the value, or null to leave the placeholder untouched
+         * @throws NonReplaceableException NonReplaceableException
+         * @throws ConfigurationException  ConfigurationException
+         * @throws URISyntaxException      URISyntaxException
+         * @throws FileNotFoundException   FileNotFoundException
+         */
+        String resolve(Placeholder placeholder) throws NonReplaceableException, ConfigurationException, URISyntaxException, FileNotFoundException;
+    }
+
+    /**
+     * A placeholder node. The name, modifier, argument and default value are already split
+     * from the body (i.e. ${NAME.toUpper:-default} or @{JSON.path/to/file}).
+     */
+    static final class Placeholder {
+
+        private final Kind kind;
+
+        private final String raw;
+
+        private final PlaceholderTemplate body;
+
+        private final String name;
+
+        private final String modifier;
+
+        private final String defaultValue;
+
+        private Placeholder(Kind kind, String raw, PlaceholderTemplate body, String bodyText) {
+            this.kind = kind;
+            this.raw = raw;
+            this.body = body;
+
+            String parsedName = bodyText;
+            String parsedModifier = null;
+            String parsedDefault = null;
+
+            if (bodyText != null) {
+                switch (kind) {
+                    case ENVIRONMENT:
+                        String head = bodyText;
+                        int defaultIndex = bodyText.indexOf(":-");
+                        if (defaultIndex != -1) {
+                            head = bodyText.substring(0, defaultIndex);
+                            parsedDefault = bodyText.substring(defaultIndex + 2);
+                            if (parsedDefault.isEmpty()) {
+                                parsedDefault = null;
+                            }
+                        }
+                        int modifierIndex = head.indexOf('.');
+                        if (modifierIndex != -1) {
+                            parsedName = head.substring(0, modifierIndex);
+                            parsedModifier = head.substring(modifierIndex + 1);
+                        } else {
+                            parsedName = head;
+                        }
+                        break;
+                    case CODE:
+                        int argumentIndex = bodyText.indexOf('.');
+                        if (argumentIndex != -1) {
+                            parsedName = bodyText.substring(0, argumentIndex).toLowerCase();
+                            parsedModifier = bodyText.substring(argumentIndex + 1);
+                        } else {
+                            parsedName = bodyText.toLowerCase();
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            this.name = parsedName;
+            this.modifier = parsedModifier;
+            this.defaultValue = parsedDefault;
+        }
+
+        private Placeholder withBody(String bodyText) {
+            return new Placeholder(kind, raw, null, bodyText);
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the placeholder as written in the source text, i.e. ${NAME.toUpper}
+         */
+        String getRaw() {
+            return raw;
+        }
+
+        /**
+         * @return the variable, attribute or property name. For @{} placeholders, the lowercase option (ip, json, file)
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return the .modifier of a ${} placeholder, or what follows the option in a @{} placeholder
+         */
+        String getModifier() {
+            return modifier;
+        }
+
+        /**
+         * @return the :-default value of a ${} placeholder
+         */
+        String getDefaultValue() {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the compiled template of the given string, compiling it only the first time it is seen.
+     *
+     * @param text the string
+     * @param mask bits of the {@link Kind}s to replace, other placeholders are kept as literals
+     * @return the template
+     */
+    static PlaceholderTemplate compile(String text, int mask) {
+        Key key = new Key(text, mask);
+        PlaceholderTemplate template = CACHE.getIfPresent(key);
+        if (template == null) {
+            List<Object> segments = new ArrayList<>();
+            if (parse(text, 0, mask, false, segments) < 0) {
+                segments.clear();
+                segments.add(text);
+            }
+            template = new PlaceholderTemplate(text, mask, segments.toArray());
+            CACHE.put(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * Replaces every placeholder of the given kinds in the string.
+     *
+     * @param text     the string
+     * @param mask     bits of the {@link Kind}s to replace
+     * @param resolver resolver of each placeholder
+     * @return the resulting string. The same instance if nothing was replaced
+     * @throws NonReplaceableException NonReplaceableException
+     * @throws ConfigurationException  ConfigurationException
+     * @throws URISyntaxException      URISyntaxException
+     * @throws FileNotFoundException   FileNotFoundException
+     */
+    static String replace(String text, int mask, Resolver resolver) throws NonReplaceableException, ConfigurationException, URISyntaxException, FileNotFoundException {
+        if (!mayContainPlaceholders(text)) {
+            return text;
+        }
+        return compile(text, mask).render(resolver, 0);
+    }
+
+    private static boolean mayContainPlaceholders(String text) {
+        // a placeholder needs its marker before the '{', so it can not start at the first char
+        return text.indexOf('{', 1) != -1;
+    }
+
+    /**
+     * @return true if the template has no placeholders
+     */
+    boolean isLiteral() {
+        return segments.length == 0 || (segments.length == 1 && segments[0] instanceof String);
+    }
+
+    private String render(Resolver resolver, int depth) throws NonReplaceableException, ConfigurationException, URISyntaxException, FileNotFoundException {
+        if (segments.length == 0) {
+            return "";
+        }
+        if (isLiteral()) {
+            return (String) segments[0];
+        }
+        if (depth > MAX_DEPTH) {
+            throw new NonReplaceableException("Too many nested replacements in: " + text);
+        }
+
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        for (Object segment : segments) {
+            if (segment instanceof String) {
+                sb.append((String) segment);
+            } else {
+                sb.append(resolve((Placeholder) segment, resolver, depth));
+            }
+        }
+        return sb.toString();
+    }
+
+    private String resolve(Placeholder placeholder, Resolver resolver, int depth) throws NonReplaceableException, ConfigurationException, URISyntaxException, FileNotFoundException {
+        Placeholder resolved = placeholder;
+        if (placeholder.body != null) {
+            resolved = placeholder.withBody(placeholder.body.render(resolver, depth + 1));
+        }
+
+        String value = resolver.resolve(resolved);
+        if (value == null) {
+            return placeholder.raw;
+        }
+
+        int valueMask = mask & placeholder.kind.andLater();
+        if (mayContainPlaceholders(value)) {
+            PlaceholderTemplate valueTemplate = compile(value, valueMask);
+            if (!valueTemplate.isLiteral()) {
+                return valueTemplate.render(resolver, depth + 1);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Tokenizes text from the given position, adding the segments found to the list.
+     *
+     * @return the position of the '}' that closes the enclosing placeholder, the text length if
+     * not nested, or -1 if a nested placeholder is not closed
+     */
+    private static int parse(String text, int from, int mask, boolean nested, List<Object> segments) {
+        StringBuilder literal = new StringBuilder();
+        int i = from;
+
+        while (i < text.length()) {
+            char c = text.charAt(i);
+
+            if (nested && c == '}') {
+                flush(literal, segments);
+                return i;
+            }
+
+            Kind kind = Kind.of(c);
+            if (kind != null && (mask & kind.bit()) != 0 && i + 1 < text.length() && text.charAt(i + 1) == '{') {
+                List<Object> body = new ArrayList<>();
+                int end = parse(text, i + 2, mask, true, body);
+                if (end < 0) {
+                    if (nested) {
+                        return -1;
+                    }
+                    literal.append(text, i, text.length());
+                    break;
+                }
+
+                String raw = text.substring(i, end + 1);
+                Placeholder placeholder;
+                if (body.isEmpty()) {
+                    placeholder = new Placeholder(kind, raw, null, "");
+                } else if (body.size() == 1 && body.get(0) instanceof String) {
+                    placeholder = new Placeholder(kind, raw, null, (String) body.get(0));
+                } else {
+                    PlaceholderTemplate bodyTemplate = new PlaceholderTemplate(text.substring(i + 2, end), mask, body.toArray());
+                    placeholder = new Placeholder(kind, raw, bodyTemplate, null);
+                }
+                flush(literal, segments);
+                segments.add(placeholder);
+                i = end + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+
+        if (nested) {
+            return -1;
+        }
+        flush(literal, segments);
+        return text.length();
+    }
+
+    private static void flush(StringBuilder literal, List<Object> segments) {
+        if (literal.length() > 0) {
+            segments.add(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    private static final class Key {
+
+        private final String text;
+
+        private final int mask;
+
+        private Key(String text, int mask) {
+            this.text = text;
+            this.mask = mask;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mask == other.mask && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.hashCode() + mask;
+        }
+    }
+}
@@ -17,27 +17,22 @@
 package com.privalia.qa.aspects;
 
 import com.privalia.qa.cucumber.testng.CucumberReporter;
+import com.privalia.qa.aspects.PlaceholderTemplate.Kind;
+import com.privalia.qa.aspects.PlaceholderTemplate.Placeholder;
 import com.privalia.qa.exceptions.NonReplaceableException;
-import com.privalia.qa.specs.CommonG;
+import com.privalia.qa.utils.PropertySnapshot;
+import com.privalia.qa.utils.ResourceCache;
 import com.privalia.qa.utils.ThreadProperty;
 import gherkin.I18n;
 import gherkin.formatter.Reporter;
 import gherkin.formatter.model.*;
-import org.apache.commons.configuration2.CombinedConfiguration;
-import org.apache.commons.configuration2.FileBasedConfiguration;
-import org.apache.commons.configuration2.PropertiesConfiguration;
-import org.apache.commons.configuration2.builder.FileBasedConfigurationBuilder;
-import org.apache.commons.configuration2.builder.fluent.Parameters;
 import org.apache.commons.configuration2.ex.ConfigurationException;
-import org.apache.commons.configuration2.tree.OverrideCombiner;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.lang.reflect.Field;
 import java.net.*;
 import java.util.Enumeration;
 import java.util.List;
@@ -47,7 +42,10 @@ public class ReplacementAspect {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
 
-    private String lastEchoedStep = "";
+    /**
+     * Last step echoed by each thread: with -Dgingerspec.parallel, several scenarios run at the same time.
+     */
+    private final ThreadLocal<String> lastEchoedStep = ThreadLocal.withInitial(() -> "");
 
 
     @Pointcut("(execution (gherkin.formatter.model.Scenario.new(..)) ||  execution (gherkin.formatter.model.ScenarioOutline.new(..))) && "
@@ -60,20 +58,7 @@ public class ReplacementAspect {
 
         BasicStatement scenario = (BasicStatement) jp.getThis();
         String scenarioName = scenario.getName();
-        String newScenarioName = replacedElement(scenarioName, jp);
-
-        if (!scenarioName.equals(newScenarioName)) {
-            Field field = null;
-            Class current = scenario.getClass();
-            do {
-                try {
-                    field = current.getDeclaredField("name");
-                } catch (Exception e) { }
-            } while ((current = current.getSuperclass()) != null);
-
-            field.setAccessible(true);
-            field.set(scenario, replacedElement(name, jp));
-        }
+        StatementAccessors.setName(scenario, scenarioName, replacedElement(scenarioName, jp));
     }
 
     @Pointcut("execution (public void cucumber.runtime.Runtime.runStep(..)) && "
@@ -86,67 +71,46 @@ public class ReplacementAspect {
         DocString docString = step.getDocString();
         List<DataTableRow> rows = step.getRows();
         if (docString != null) {
-            String value = replacedElement(docString.getValue(), jp);
-            Field field = docString.getClass().getDeclaredField("value");
-            field.setAccessible(true);
-            field.set(docString, value);
+            String value = docString.getValue();
+            StatementAccessors.setValue(docString, value, replacedElement(value, jp));
         }
         if (rows != null) {
             for (int r = 0; r < rows.size(); r++) {
                 List<String> cells = rows.get(r).getCells();
                 for (int c = 0; c < cells.size(); c++) {
-                    cells.set(c, replacedElement(cells.get(c), jp));
+                    String cell = cells.get(c);
+                    String newCell = replacedElement(cell, jp);
+                    if (cell != newCell) {
+                        cells.set(c, newCell);
+                    }
                 }
             }
         }
 
+        //field up to BasicStatement, from Step and ExampleStep
         String stepName = step.getName();
-        String newName = replacedElement(stepName, jp);
-        if (!stepName.equals(newName)) {
-            //field up to BasicStatement, from Step and ExampleStep
-            Field field = null;
-            Class current = step.getClass();
-            do {
-                try {
-                    field = current.getDeclaredField("name");
-                } catch (Exception e) { }
-            } while ((current = current.getSuperclass()) != null);
-
-            field.setAccessible(true);
-            field.set(step, newName);
-        }
+        StatementAccessors.setName(step, stepName, replacedElement(stepName, jp));
 
-        lastEchoedStep = step.getName();
+        lastEchoedStep.set(step.getName());
         logger.info("  {}{}", step.getKeyword(), step.getName());
     }
 
+    /**
+     * Replaces every placeholded element (${}, !{}, @{} and #{}) in the given string.
+     * <p>
+     * Each distinct string is compiled once into a {@link PlaceholderTemplate}, so the same step in
+     * every example row of a Scenario Outline is only rendered, not parsed again.
+     *
+     * @param el element to be replaced
+     * @param jp JoinPoint
+     * @return resulting string. The same instance if nothing was replaced
+     * @throws NonReplaceableException NonReplaceableException
+     * @throws ConfigurationException  ConfigurationException
+     * @throws URISyntaxException      URISyntaxException
+     * @throws FileNotFoundException   FileNotFoundException
+     */
     protected String replacedElement(String el, JoinPoint jp) throws NonReplaceableException, ConfigurationException, URISyntaxException, FileNotFoundException {
-        if (el.contains("${")) {
-            el = replaceEnvironmentPlaceholders(el, jp);
-        }
-        if (el.contains("!{")) {
-            el = replaceReflectionPlaceholders(el, jp);
-        }
-        if (el.contains("@{")) {
-            el = replaceCodePlaceholders(el, jp);
-        }
-        if (el.contains("#{")) {
-            el = replacePropertyPlaceholders(el, jp);
-        }
-        return el;
-    }
-
-    private File getfile(String environment) throws URISyntaxException, FileNotFoundException {
-
-        URL url = getClass().getClassLoader().getResource("configuration/" + environment + ".properties");
-
-        if (url != null) {
-            return new File(url.toURI());
-        } else {
-            logger.error("The configuration file {}.properties was not found", environment);
-            throw new FileNotFoundException("The configuration file " + environment + ".properties was not found");
-        }
-
+        return replace(el, PlaceholderTemplate.ALL_KINDS, jp);
     }
 
     /**
@@ -163,6 +127,8 @@ public class ReplacementAspect {
      * for example, to use properties from the file pre.properties located in
      * /resources/configuration/pre.properties, just pass -Denv=pre when
      * running your tests
+     * <p>
+     * The files are not read on every call, see {@link PropertySnapshot}
      *
      * @param element element to be replaced
      * @param pjp     JoinPoint
@@ -173,41 +139,7 @@ public class ReplacementAspect {
      * @throws FileNotFoundException   FileNotFoundException
      */
     protected String replacePropertyPlaceholders(String element, JoinPoint pjp) throws ConfigurationException, URISyntaxException, NonReplaceableException, FileNotFoundException {
-
-        String newVal = element;
-        Parameters params = new Parameters();
-        CombinedConfiguration config = new CombinedConfiguration(new OverrideCombiner());
-
-        /*If environment specific file is required, search it by its name and add it as a source of properties*/
-        String environment = System.getProperty("env", null);
-        if (environment != null) {
-            FileBasedConfigurationBuilder<FileBasedConfiguration> config2 = new FileBasedConfigurationBuilder<FileBasedConfiguration>(
-                    PropertiesConfiguration.class).configure(params.properties().setFile(this.getfile(environment)));
-            config.addConfiguration(config2.getConfiguration());
-        }
-
-        /*Add the file common.properties as a source of properties*/
-        FileBasedConfigurationBuilder<FileBasedConfiguration> config1 = new FileBasedConfigurationBuilder<FileBasedConfiguration>(
-                PropertiesConfiguration.class)
-                .configure(params.properties().setFile(this.getfile("common")));
-
-        config.addConfiguration(config1.getConfiguration());
-
-
-        while (newVal.contains("#{")) {
-            String placeholder = newVal.substring(newVal.indexOf("#{"), newVal.indexOf("}", newVal.indexOf("#{")) + 1);
-            String property = placeholder.substring(2, placeholder.length() - 1);
-
-            String prop = config.getString(property);
-            if (prop != null) {
-                newVal = newVal.replace(placeholder, prop);
-            } else {
-                logger.error("Could not find property {} in included files", property);
-                throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder);
-            }
-        }
-
-        return newVal;
+        return replace(element, Kind.PROPERTY.bit(), pjp);
     }
 
     /**
@@ -231,62 +163,9 @@ public class ReplacementAspect {
      * @throws NonReplaceableException exception
      */
     protected String replaceCodePlaceholders(String element, JoinPoint pjp) throws NonReplaceableException {
-        String newVal = element;
-        while (newVal.contains("@{")) {
-            String placeholder = newVal.substring(newVal.indexOf("@{"), newVal.indexOf("}", newVal.indexOf("@{")) + 1);
-            String property = placeholder.substring(2, placeholder.length() - 1).toLowerCase();
-            String subproperty = "";
-            CommonG commonJson;
-            if (placeholder.contains(".")) {
-                property = placeholder.substring(2, placeholder.indexOf(".")).toLowerCase();
-                subproperty = placeholder.substring(placeholder.indexOf(".") + 1, placeholder.length() - 1);
-            } else {
-                if (pjp.getThis() instanceof CucumberReporter.TestMethod) {
-                    return newVal;
-                } else {
-                    logger.error("{} -> {} placeholded element has not been replaced previously.", element, property);
-                    throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder);
-                }
-            }
-
-            switch (property) {
-                case "ip":
-                    boolean found = false;
-                    if (!subproperty.isEmpty()) {
-                        Enumeration<InetAddress> ifs = null;
-                        try {
-                            ifs = NetworkInterface.getByName(subproperty).getInetAddresses();
-                        } catch (SocketException e) {
-                            this.logger.error(e.getMessage());
-                        }
-                        while (ifs.hasMoreElements() && !found) {
-                            InetAddress itf = ifs.nextElement();
-                            if (itf instanceof Inet4Address) {
-                                String ip = itf.getHostAddress();
-                                newVal = newVal.replace(placeholder, ip);
-                                found = true;
-                            }
-                        }
-                    }
-                    if (!found) {
-                        throw new NonReplaceableException("Interface " + subproperty + " not available");
-                    }
-                    break;
-                case "json":
-                case "file":
-                    commonJson = new CommonG();
-                    newVal = newVal.replace(placeholder, commonJson.retrieveData(subproperty, property));
-                    break;
-                default:
-                    commonJson = new CommonG();
-                    commonJson.getLogger().error("Replacement with an undefined option ({})", property);
-                    newVal = newVal.replace(placeholder, "");
-            }
-        }
-        return newVal;
+        return replaceOnly(element, Kind.CODE, pjp);
     }
 
-
     /**
      * Replaces every placeholded element, enclosed in !{} with the
      * corresponding attribute value in local Common class
@@ -297,28 +176,9 @@ public class ReplacementAspect {
      * @throws NonReplaceableException exception
      */
     protected String replaceReflectionPlaceholders(String element, JoinPoint pjp) throws NonReplaceableException {
-        String newVal = element;
-        while (newVal.contains("!{")) {
-            String placeholder = newVal.substring(newVal.indexOf("!{"),
-                    newVal.indexOf("}", newVal.indexOf("!{")) + 1);
-            String attribute = placeholder.substring(2, placeholder.length() - 1);
-            // we want to use value previously saved
-            String prop = ThreadProperty.get(attribute);
-
-            if (prop == null && (pjp.getThis() instanceof CucumberReporter.TestMethod)) {
-                return element;
-            } else if (prop == null) {
-                logger.warn("{} -> {} local var has not been saved correctly previously.", element, attribute);
-                newVal = newVal.replace(placeholder, "NULL");
-                //throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder);
-            } else {
-                newVal = newVal.replace(placeholder, prop);
-            }
-        }
-        return newVal;
+        return replaceOnly(element, Kind.REFLECTION, pjp);
     }
 
-
     /**
      * Replaces every placeholded element, enclosed in ${} with the
      * corresponding java property
@@ -329,64 +189,122 @@ public class ReplacementAspect {
      * @throws NonReplaceableException exception
      */
     protected String replaceEnvironmentPlaceholders(String element, JoinPoint jp) throws NonReplaceableException {
-        String newVal = element;
-        while (newVal.contains("${")) {
-            String placeholder = newVal.substring(newVal.indexOf("${"),
-                    newVal.indexOf("}", newVal.indexOf("${")) + 1);
-            String modifier = "";
-            String sysProp;
-            String defaultValue = "";
-            String prop;
-            String placeholderAux = "";
-
-            if (placeholder.contains(":-")) {
-                defaultValue = placeholder.substring(placeholder.indexOf(":-") + 2, placeholder.length() - 1);
-                placeholderAux = placeholder.substring(0, placeholder.indexOf(":-")) + "}";
-            }
+        return replaceOnly(element, Kind.ENVIRONMENT, jp);
+    }
 
-            if (placeholderAux.contains(".")) {
-                if (placeholder.contains(":-")) {
-                    sysProp = placeholderAux.substring(2, placeholderAux.indexOf("."));
-                    modifier = placeholderAux.substring(placeholderAux.indexOf(".") + 1, placeholderAux.length() - 1);
-                } else {
-                    sysProp = placeholder.substring(2, placeholder.indexOf("."));
-                    modifier = placeholder.substring(placeholder.indexOf(".") + 1, placeholder.length() - 1);
-                }
+    private String replace(String element, int kinds, JoinPoint jp) throws NonReplaceableException, ConfigurationException, URISyntaxException, FileNotFoundException {
+        return PlaceholderTemplate.replace(element, kinds, placeholder -> resolve(placeholder, element, jp));
+    }
+
+    private String replaceOnly(String element, Kind kind, JoinPoint jp) throws NonReplaceableException {
+        try {
+            return replace(element, kind.bit(), jp);
+        } catch (ConfigurationException | URISyntaxException | FileNotFoundException e) {
+            throw new NonReplaceableException(e);
+        }
+    }
+
+    private String resolve(Placeholder placeholder, String element, JoinPoint jp) throws NonReplaceableException, ConfigurationException, URISyntaxException, FileNotFoundException {
+        switch (placeholder.getKind()) {
+            case ENVIRONMENT:
+                return resolveEnvironment(placeholder, element, jp);
+            case REFLECTION:
+                return resolveReflection(placeholder, element, jp);
+            case CODE:
+                return resolveCode(placeholder, element, jp);
+            case PROPERTY:
+                return resolveProperty(placeholder);
+            default:
+                throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder.getRaw());
+        }
+    }
+
+    private String resolveProperty(Placeholder placeholder) throws ConfigurationException, URISyntaxException, NonReplaceableException, FileNotFoundException {
+        String prop = PropertySnapshot.get().getString(placeholder.getName());
+        if (prop == null) {
+            logger.error("Could not find property {} in included files", placeholder.getName());
+            throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder.getRaw());
+        }
+        return prop;
+    }
+
+    private String resolveCode(Placeholder placeholder, String element, JoinPoint pjp) throws NonReplaceableException {
+        String property = placeholder.getName();
+        String subproperty = placeholder.getModifier();
+
+        if (subproperty == null) {
+            if (pjp.getThis() instanceof CucumberReporter.TestMethod) {
+                return null;
             } else {
-                if (defaultValue.isEmpty()) {
-                    if (placeholder.contains(".")) {
-                        modifier = placeholder.substring(placeholder.indexOf(".") + 1, placeholder.length() - 1);
-                        sysProp = placeholder.substring(2, placeholder.indexOf("."));
-                    } else {
-                        sysProp = placeholder.substring(2, placeholder.length() - 1);
+                logger.error("{} -> {} placeholded element has not been replaced previously.", element, property);
+                throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder.getRaw());
+            }
+        }
+
+        switch (property) {
+            case "ip":
+                if (!subproperty.isEmpty()) {
+                    Enumeration<InetAddress> ifs = null;
+                    try {
+                        NetworkInterface networkInterface = NetworkInterface.getByName(subproperty);
+                        if (networkInterface != null) {
+                            ifs = networkInterface.getInetAddresses();
+                        }
+                    } catch (SocketException e) {
+                        this.logger.error(e.getMessage());
+                    }
+                    while (ifs != null && ifs.hasMoreElements()) {
+                        InetAddress itf = ifs.nextElement();
+                        if (itf instanceof Inet4Address) {
+                            return itf.getHostAddress();
+                        }
                     }
-                } else {
-                    sysProp = placeholder.substring(2, placeholder.indexOf(":-"));
                 }
-            }
+                throw new NonReplaceableException("Interface " + subproperty + " not available");
+            case "json":
+            case "file":
+                return ResourceCache.INSTANCE.retrieveData(subproperty, property, "UTF-8");
+            default:
+                logger.error("Replacement with an undefined option ({})", property);
+                return "";
+        }
+    }
 
-            if (defaultValue.isEmpty()) {
-                prop = System.getProperty(sysProp);
-            } else {
-                prop = System.getProperty(sysProp, defaultValue);
-            }
+    private String resolveReflection(Placeholder placeholder, String element, JoinPoint pjp) {
+        // we want to use value previously saved
+        String prop = ThreadProperty.get(placeholder.getName());
 
-            if (prop == null && (jp.getThis() instanceof CucumberReporter.TestMethod)) {
-                return element;
-            } else if (prop == null) {
-                logger.error("{} -> {} env var has not been defined.", element, sysProp);
-                throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder);
-            }
+        if (prop == null && (pjp.getThis() instanceof CucumberReporter.TestMethod)) {
+            return null;
+        } else if (prop == null) {
+            logger.warn("{} -> {} local var has not been saved correctly previously.", element, placeholder.getName());
+            return "NULL";
+        }
+        return prop;
+    }
 
-            if ("toLower".equals(modifier)) {
-                prop = prop.toLowerCase();
-            } else if ("toUpper".equals(modifier)) {
-                prop = prop.toUpperCase();
-            }
-            newVal = newVal.replace(placeholder, prop);
+    private String resolveEnvironment(Placeholder placeholder, String element, JoinPoint jp) throws NonReplaceableException {
+        String sysProp = placeholder.getName();
+        String prop;
+
+        if (placeholder.getDefaultValue() == null) {
+            prop = System.getProperty(sysProp);
+        } else {
+            prop = System.getProperty(sysProp, placeholder.getDefaultValue());
+        }
+
+        if (prop == null && (jp.getThis() instanceof CucumberReporter.TestMethod)) {
+            return null;
+        } else if (prop == null) {
+            logger.error("{} -> {} env var has not been defined.", element, sysProp);
+            throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder.getRaw());
         }
 
-        return newVal;
+        if ("toLower".equals(placeholder.getModifier())) {
+            prop = prop.toLowerCase();
+        } else if ("toUpper".equals(placeholder.getModifier())) {
+            prop = prop.toUpperCase();
+        }
+        return prop;
     }
 }
-
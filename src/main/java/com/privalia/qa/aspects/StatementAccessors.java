@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.aspects;
+
+import gherkin.formatter.model.BasicStatement;
+import gherkin.formatter.model.DocString;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Registry of setters for the fields of the gherkin model that the aspects rewrite: the name of
+ * {@link BasicStatement} subclasses (Scenario, ScenarioOutline, Step, ExampleStep...) and the value
+ * of a {@link DocString}.
+ * <p>
+ * The field is searched in the class hierarchy only the first time a concrete class is seen, and the
+ * resulting {@link MethodHandle} is kept for the rest of the execution.
+ */
+final class StatementAccessors {
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final ClassValue<MethodHandle> NAME = new FieldSetter("name");
+
+    private static final ClassValue<MethodHandle> VALUE = new FieldSetter("value");
+
+    private StatementAccessors() {
+    }
+
+    /**
+     * Sets the name of a scenario, step... Nothing is written if the new name is the same instance as the old one.
+     *
+     * @param statement statement to modify
+     * @param oldName   current name
+     * @param newName   replaced name
+     */
+    static void setName(BasicStatement statement, String oldName, String newName) {
+        if (oldName != newName) {
+            set(NAME.get(statement.getClass()), statement, newName);
+        }
+    }
+
+    /**
+     * Sets the value of a DocString. Nothing is written if the new value is the same instance as the old one.
+     *
+     * @param docString docString to modify
+     * @param oldValue  current value
+     * @param newValue  replaced value
+     */
+    static void setValue(DocString docString, String oldValue, String newValue) {
+        if (oldValue != newValue) {
+            set(VALUE.get(docString.getClass()), docString, newValue);
+        }
+    }
+
+    private static void set(MethodHandle setter, Object target, String value) {
+        try {
+            setter.invokeExact(target, (Object) value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not modify " + target.getClass().getName(), e);
+        }
+    }
+
+    private static final class FieldSetter extends ClassValue<MethodHandle> {
+
+        private final String fieldName;
+
+        private FieldSetter(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                try {
+                    Field field = current.getDeclaredField(fieldName);
+                    field.setAccessible(true);
+                    return setterFor(field);
+                } catch (NoSuchFieldException e) {
+                    // keep on looking in the superclass
+                }
+            }
+            throw new IllegalStateException("Field " + fieldName + " not found in " + type.getName());
+        }
+
+        private MethodHandle setterFor(Field field) {
+            try {
+                return MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                // older JVMs do not hand out setters of final fields, go through Field.set instead
+                try {
+                    return MethodHandles.lookup().findVirtual(Field.class, "set", SETTER_TYPE).bindTo(field);
+                } catch (NoSuchMethodException | IllegalAccessException ex) {
+                    throw new IllegalStateException("Could not access field " + field, ex);
+                }
+            }
+        }
+    }
+}
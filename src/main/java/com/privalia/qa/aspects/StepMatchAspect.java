@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.aspects;
+
+import cucumber.runtime.StepDefinition;
+import gherkin.formatter.Argument;
+import gherkin.formatter.model.Step;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Caches the match of every step text against every step definition (see {@link StepMatchCache}), and
+ * with -Dgingerspec.stepmatch.profile=true logs the matching time of each step definition when the JVM exits.
+ */
+@Aspect
+public class StepMatchAspect {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StepMatchAspect.class.getCanonicalName());
+
+    private static final StepMatchCache CACHE = StepMatchCache.fromSystemProperties();
+
+    static {
+        if (CACHE.isProfiling()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(StepMatchAspect::logProfile, "gingerspec-stepmatch-profile"));
+        }
+    }
+
+    @Pointcut("execution (* cucumber.runtime.StepDefinition+.matchedArguments(..)) && "
+            + "this (definition) && args (step)")
+    protected void matchedArguments(StepDefinition definition, Step step) {
+    }
+
+    /**
+     * @param pjp        ProceedingJoinPoint
+     * @param definition step definition
+     * @param step       step
+     * @return the arguments found in the step, or null if the step definition does not match
+     * @throws Throwable exception
+     */
+    @SuppressWarnings("unchecked")
+    @Around(value = "matchedArguments(definition, step)")
+    public List<Argument> aroundMatchedArguments(ProceedingJoinPoint pjp, StepDefinition definition, Step step) throws Throwable {
+        StepMatchCache.Matcher<List<Argument>> matcher = () -> (List<Argument>) pjp.proceed();
+        return CACHE.matchedArguments(definition.getClass(), definition.getPattern(), step.getName(), matcher);
+    }
+
+    private static void logProfile() {
+        LOGGER.info("Step definition matching time ({}):", CACHE);
+        for (String line : CACHE.profile()) {
+            LOGGER.info(line);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.aspects;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results of matching a step text against the regular expression of a step definition.
+ * <p>
+ * Cucumber tests every step against every step definition, and the arguments found depend only on the
+ * kind of definition, its pattern and the step text, so they are cached for every runtime and thread. A
+ * definition that does not match is cached too. Cucumber still gets the result of every definition and
+ * handles ambiguous and undefined steps as before.
+ * <p>
+ * With -Dgingerspec.stepmatch.profile=true, the time spent matching each pattern is recorded, see
+ * {@link #profile()}. Cached results are not timed, so the report shows the real cost of each regular
+ * expression. The cache can be disabled with -Dgingerspec.stepmatch.cache=false.
+ */
+final class StepMatchCache {
+
+    public static final String CACHE_PROPERTY = "gingerspec.stepmatch.cache";
+
+    public static final String SIZE_PROPERTY = "gingerspec.stepmatch.cache.size";
+
+    public static final String PROFILE_PROPERTY = "gingerspec.stepmatch.profile";
+
+    public static final long DEFAULT_SIZE = 200_000L;
+
+    private static final Object NO_MATCH = new Object();
+
+    private final boolean enabled;
+
+    private final boolean profiling;
+
+    private final Cache<Key, Object> cache;
+
+    private final Map<String, PatternStats> stats = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Functional form of the match of a step definition, that may throw anything (i.e. a join point).
+     *
+     * @param <T> type of the arguments
+     */
+    @FunctionalInterface
+    interface Matcher<T> {
+        T match() throws Throwable;
+    }
+
+    StepMatchCache(boolean enabled, boolean profiling, long maximumSize) {
+        this.enabled = enabled;
+        this.profiling = profiling;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    static StepMatchCache fromSystemProperties() {
+        return new StepMatchCache(Boolean.parseBoolean(System.getProperty(CACHE_PROPERTY, "true")),
+                Boolean.getBoolean(PROFILE_PROPERTY), Long.getLong(SIZE_PROPERTY, DEFAULT_SIZE));
+    }
+
+    boolean isProfiling() {
+        return profiling;
+    }
+
+    /**
+     * Returns the arguments found by a step definition in a step text.
+     *
+     * @param kind    class of the step definition
+     * @param pattern pattern of the step definition
+     * @param text    step text
+     * @param matcher the real match, used when the result is not cached
+     * @param <T>     type of the arguments
+     * @return the arguments, or null if the step definition does not match
+     * @throws Throwable the exception of the matcher
+     */
+    @SuppressWarnings("unchecked")
+    <T> T matchedArguments(Class<?> kind, String pattern, String text, Matcher<T> matcher) throws Throwable {
+        if (!enabled) {
+            return match(pattern, matcher);
+        }
+
+        Key key = new Key(kind, pattern, text);
+        Object arguments = cache.getIfPresent(key);
+        if (arguments != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            arguments = match(pattern, matcher);
+            cache.put(key, arguments == null ? NO_MATCH : arguments);
+        }
+        return arguments == NO_MATCH ? null : (T) arguments;
+    }
+
+    private <T> T match(String pattern, Matcher<T> matcher) throws Throwable {
+        if (!profiling) {
+            return matcher.match();
+        }
+        long start = System.nanoTime();
+        T arguments = matcher.match();
+        stats.computeIfAbsent(String.valueOf(pattern), p -> new PatternStats()).record(System.nanoTime() - start, arguments != null);
+        return arguments;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the cumulative matching time of each pattern, the slowest first.
+     *
+     * @return one line per pattern: total ms, number of matches attempted, how many matched and the pattern
+     */
+    List<String> profile() {
+        List<Map.Entry<String, PatternStats>> entries = new ArrayList<>(stats.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().nanos.sum(), a.getValue().nanos.sum()));
+
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, PatternStats> entry : entries) {
+            PatternStats pattern = entry.getValue();
+            lines.add(String.format("%10.3f ms %8d calls %8d matches  %s", pattern.nanos.sum() / 1e6,
+                    pattern.calls.sum(), pattern.matches.sum(), entry.getKey()));
+        }
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "StepMatchCache{hits=" + getHits() + ", misses=" + getMisses() + ", entries=" + cache.size() + "}";
+    }
+
+    private static final class PatternStats {
+
+        private final LongAdder nanos = new LongAdder();
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder matches = new LongAdder();
+
+        private void record(long elapsed, boolean matched) {
+            nanos.add(elapsed);
+            calls.increment();
+            if (matched) {
+                matches.increment();
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final Class<?> kind;
+
+        private final String pattern;
+
+        private final String text;
+
+        private final int hash;
+
+        private Key(Class<?> kind, String pattern, String text) {
+            this.kind = kind;
+            this.pattern = pattern;
+            this.text = text;
+            this.hash = Objects.hash(kind, pattern, text);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return kind == key.kind && Objects.equals(pattern, key.pattern) && Objects.equals(text, key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -257,7 +257,7 @@ public class SeleniumAssert extends AbstractAssert<SeleniumAssert, Object> {
     }
 
     /**
-     * Checks if a webDriver or WebElement has values.
+     * Checks if a webDriver, WebElement or String has values.
      *
      * @param values char sequence compared
      * @return SeleniumAssert
@@ -269,6 +269,8 @@ public class SeleniumAssert extends AbstractAssert<SeleniumAssert, Object> {
         } else if (actual instanceof WebElement) {
             Strings.instance().assertContains(info,
                     ((WebElement) actual).getText(), values);
+        } else if (actual instanceof String) {
+            Strings.instance().assertContains(info, (String) actual, values);
         }
         return this;
     }
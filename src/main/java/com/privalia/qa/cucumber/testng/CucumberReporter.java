@@ -21,39 +21,38 @@ import com.jayway.jsonpath.PathNotFoundException;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.Response;
 import com.privalia.qa.specs.CommonG;
+import com.privalia.qa.utils.EvidenceWriter;
 import com.privalia.qa.utils.ThreadProperty;
 import cucumber.runtime.CucumberException;
-import cucumber.runtime.Utils;
-import cucumber.runtime.io.URLOutputStream;
-import cucumber.runtime.io.UTF8OutputStreamWriter;
 import gherkin.formatter.Formatter;
 import gherkin.formatter.Reporter;
 import gherkin.formatter.model.*;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.*;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+/**
+ * Writes the TestNG and JUnit xml reports of an execution. Every test-method and testcase is written to disk
+ * when its scenario finishes (see {@link XmlReportWriter}), and the totals are written at the end.
+ */
 public class CucumberReporter implements Formatter, Reporter {
 
     public static final int DURATION_STRING = 1000000;
@@ -66,32 +65,16 @@ public class CucumberReporter implements Formatter, Reporter {
 
     private static final String STATUS = "status";
 
-    private final Document document;
-
-    private final Document jUnitDocument;
-
-    private final Element results;
-
-    private final Element jUnitResults;
+    private XmlReportWriter testNGWriter;
 
-    private final Element suite;
+    private XmlReportWriter jUnitWriter;
 
-    private final Element jUnitSuite;
+    private boolean classOpen;
 
-    private final Element test;
+    private final RunStatistics statistics = new RunStatistics();
 
     private String featureName;
 
-    private Writer writer;
-
-    private Writer  writerJunit;
-
-    private Element clazz;
-
-    private Element root;
-
-    private Element jUnitRoot;
-
     private TestMethod testMethod;
 
     private Examples tmpExamples;
@@ -104,8 +87,6 @@ public class CucumberReporter implements Formatter, Reporter {
 
     private Integer iteration = 0;
 
-    private Integer position = 0;
-
     private String callerClass;
 
     private Background background;
@@ -116,6 +97,14 @@ public class CucumberReporter implements Formatter, Reporter {
 
     private String additional;
 
+    private String featureUri;
+
+    private Integer outlineLine;
+
+    private String scenarioKey;
+
+    private final Map<String, Double> durations = new LinkedHashMap<>();
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass()
             .getCanonicalName());
 
@@ -131,23 +120,19 @@ public class CucumberReporter implements Formatter, Reporter {
         this.url = url;
         this.cClass = cClass;
         this.additional = additional;
+        this.callerClass = cClass;
+    }
 
-        try {
-            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-            results = document.createElement("testng-results");
-            suite = document.createElement("suite");
-            test = document.createElement("test");
-            callerClass = cClass;
-            suite.appendChild(test);
-            results.appendChild(suite);
-            document.appendChild(results);
-            jUnitDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-            jUnitResults = jUnitDocument.createElement("testsuites");
-            jUnitSuite = jUnitDocument.createElement("testsuite");
-            jUnitDocument.appendChild(jUnitResults);
-            jUnitResults.appendChild(jUnitSuite);
-        } catch (ParserConfigurationException e) {
-            throw new CucumberException("Error initializing DocumentBuilder.", e);
+    /**
+     * The report files are created with the first event, so a reporter that receives none (i.e. in a
+     * worker JVM) does not overwrite the reports of another execution.
+     */
+    private void openReports() throws IOException {
+        if (testNGWriter == null) {
+            testNGWriter = new XmlReportWriter(new File(url + cClass + additional + "TESTNG.xml"),
+                    "testng-results", "suite", "test");
+            jUnitWriter = new XmlReportWriter(new File(url + cClass + additional + "JUNIT.xml"),
+                    "testsuites", "testsuite");
         }
     }
 
@@ -157,14 +142,22 @@ public class CucumberReporter implements Formatter, Reporter {
 
     @Override
     public void uri(String uri) {
+        featureUri = uri;
     }
 
     @Override
     public void feature(Feature feature) {
         featureName = feature.getName();
-        clazz = document.createElement("class");
-        clazz.setAttribute("name", callerClass);
-        test.appendChild(clazz);
+        try {
+            openReports();
+            if (classOpen) {
+                testNGWriter.endElement();
+            }
+            testNGWriter.startElement("class").attribute("name", callerClass);
+            classOpen = true;
+        } catch (IOException e) {
+            throw new CucumberException("Error writing report.", e);
+        }
     }
 
     @Override
@@ -174,6 +167,7 @@ public class CucumberReporter implements Formatter, Reporter {
     @Override
     public void scenarioOutline(ScenarioOutline scenarioOutline) {
         iteration = 1;
+        outlineLine = scenarioOutline.getLine();
     }
 
     @Override
@@ -183,10 +177,6 @@ public class CucumberReporter implements Formatter, Reporter {
 
     @Override
     public void startOfScenarioLifeCycle(Scenario scenario) {
-        root = document.createElement("test-method");
-        jUnitRoot = jUnitDocument.createElement("testcase");
-        jUnitSuite.appendChild(jUnitRoot);
-        clazz.appendChild(root);
         testMethod = new TestMethod(featureName, scenario);
         testMethod.hooks = tmpHooks;
         tmpStepsBG.clear();
@@ -198,7 +188,9 @@ public class CucumberReporter implements Formatter, Reporter {
             testMethod.stepsbg = tmpStepsBG;
         }
         testMethod.examplesData = tmpExamples;
-        testMethod.start(root, iteration, jUnitRoot);
+        testMethod.start(iteration);
+        scenarioKey = ScenarioShard.key(featureUri == null ? featureName : featureUri,
+                (tmpExamples == null || outlineLine == null) ? scenario.getLine() : outlineLine);
         iteration++;
     }
 
@@ -226,13 +218,13 @@ public class CucumberReporter implements Formatter, Reporter {
     @Override
     public void endOfScenarioLifeCycle(Scenario scenario) {
 
+        durations.merge(scenarioKey, testMethod.calculateTotalDurationString(), Double::sum);
         try {
-            testMethod.finish(document, root, this.position, scenario.getTags(), jUnitDocument, jUnitRoot);
+            testMethod.finish(testNGWriter, scenario.getTags(), jUnitWriter);
         } catch (ExecutionException  | InterruptedException  | IOException e) {
             e.printStackTrace();
         }
 
-        this.position++;
         if ((tmpExamples != null) && (iteration >= tmpExamples.getRows().size())) {
             tmpExamples = null;
         }
@@ -240,7 +232,13 @@ public class CucumberReporter implements Formatter, Reporter {
         tmpSteps.clear();
         tmpStepsBG.clear();
         testMethod = null;
-        jUnitRoot.setAttribute("classname", callerClass);
+    }
+
+    /**
+     * @return the counters of the scenarios reported so far
+     */
+    public RunStatistics getStatistics() {
+        return statistics;
     }
 
     @Override
@@ -250,53 +248,45 @@ public class CucumberReporter implements Formatter, Reporter {
     @Override
     public void done() {
         try {
-            results.setAttribute("total", String.valueOf(getElementsCountByAttribute(suite, STATUS, ".*")));
-            results.setAttribute("passed", String.valueOf(getElementsCountByAttribute(suite, STATUS, "PASS")));
-            results.setAttribute("failed", String.valueOf(getElementsCountByAttribute(suite, STATUS, "FAIL")));
-            results.setAttribute("skipped", String.valueOf(getElementsCountByAttribute(suite, STATUS, "SKIP")));
-            suite.setAttribute("name", CucumberReporter.class.getName());
-            suite.setAttribute("duration-ms",
-                    String.valueOf(getTotalDuration(suite.getElementsByTagName("test-method"))));
-            test.setAttribute("name", CucumberReporter.class.getName());
-            test.setAttribute("duration-ms",
-                    String.valueOf(getTotalDuration(suite.getElementsByTagName("test-method"))));
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-
-            URLOutputStream urlOS = null;
-            try {
-                urlOS = new URLOutputStream(Utils.toURL(url + cClass + additional + "TESTNG.xml"));
-                this.writer = new UTF8OutputStreamWriter(urlOS);
-            } catch (Exception e) {
-                logger.error("error writing TESTNG.xml file", e);
-            }
-
-            StreamResult streamResult = new StreamResult(writer);
-            DOMSource domSource = new DOMSource(document);
-            transformer.transform(domSource, streamResult);
-            jUnitSuite.setAttribute("name", callerClass + "." + featureName);
-            jUnitSuite.setAttribute("tests", String.valueOf(getElementsCountByAttribute(suite, STATUS, ".*")));
-            jUnitSuite.setAttribute("failures", String.valueOf(getElementsCountByAttribute(suite, STATUS, "FAIL")));
-            jUnitSuite.setAttribute("skipped", String.valueOf(getElementsCountByAttribute(suite, STATUS, "SKIP")));
-            jUnitSuite.setAttribute("timestamp", new java.util.Date().toString());
-            jUnitSuite.setAttribute("time",
-                    String.valueOf(getTotalDurationMs(suite.getElementsByTagName("test-method"))));
-            Transformer transformerJunit = TransformerFactory.newInstance().newTransformer();
-            transformerJunit.setOutputProperty(OutputKeys.INDENT, "yes");
+            openReports();
+
+            Map<String, String> results = new HashMap<>();
+            results.put("total", String.valueOf(statistics.getTotal()));
+            results.put("passed", String.valueOf(statistics.getPassed()));
+            results.put("failed", String.valueOf(statistics.getFailed()));
+            results.put("skipped", String.valueOf(statistics.getSkipped()));
+            Map<String, String> suite = new HashMap<>();
+            suite.put("name", CucumberReporter.class.getName());
+            suite.put("duration-ms", String.valueOf(statistics.getDurationMs()));
+            testNGWriter.close(results, suite, suite);
+
+            Map<String, String> jUnitSuite = new HashMap<>();
+            jUnitSuite.put("name", callerClass + "." + featureName);
+            jUnitSuite.put("tests", String.valueOf(statistics.getTotal()));
+            jUnitSuite.put("failures", String.valueOf(statistics.getFailed()));
+            jUnitSuite.put("skipped", String.valueOf(statistics.getSkipped()));
+            jUnitSuite.put("timestamp", new java.util.Date().toString());
+            jUnitSuite.put("time", String.valueOf(statistics.getDurationMs() / 1000));
+            jUnitWriter.close(new HashMap<>(), jUnitSuite);
+        } catch (IOException e) {
+            throw new CucumberException("Error writing report.", e);
+        }
 
-            try {
-                urlOS = new URLOutputStream(Utils.toURL(url + cClass + additional + "JUNIT.xml"));
-                this.writerJunit = new UTF8OutputStreamWriter(urlOS);
-            } catch (Exception e) {
-                logger.error("error writing TESTNG.xml file", e);
+        try {
+            ScenarioShard.saveHistory(new File(url + cClass + additional + ScenarioShard.HISTORY_SUFFIX), durations);
+            // every shard adds its durations to the shared history, read by all of them in the next run
+            String sharedHistory = System.getProperty(ScenarioShard.HISTORY_PROPERTY);
+            ScenarioShard shard = ScenarioShard.fromSystemProperty();
+            if (sharedHistory != null && shard != null) {
+                File folder = new File(sharedHistory);
+                if (!folder.isDirectory() && !folder.mkdirs()) {
+                    throw new IOException("Could not create " + folder);
+                }
+                ScenarioShard.saveHistory(new File(folder, cClass + additional + "." + shard.getName() + "."
+                        + ScenarioShard.HISTORY_SUFFIX), durations);
             }
-
-            StreamResult streamResultJunit = new StreamResult(writerJunit);
-            DOMSource domSourceJunit = new DOMSource(jUnitDocument);
-            transformerJunit.transform(domSourceJunit, streamResultJunit);
-
-        } catch (TransformerException e) {
-            throw new CucumberException("Error transforming report.", e);
+        } catch (IOException e) {
+            logger.error("error writing scenario durations", e);
         }
     }
 
@@ -332,44 +322,6 @@ public class CucumberReporter implements Formatter, Reporter {
         testMethod.hooks.add(result);
     }
 
-    private int getElementsCountByAttribute(Node node, String attributeName, String attributeValue) {
-        int count = 0;
-
-        for (int i = 0; i < node.getChildNodes().getLength(); i++) {
-            count += getElementsCountByAttribute(node.getChildNodes().item(i), attributeName, attributeValue);
-        }
-
-        NamedNodeMap attributes = node.getAttributes();
-        if (attributes != null) {
-            Node namedItem = attributes.getNamedItem(attributeName);
-            if (namedItem != null && namedItem.getNodeValue().matches(attributeValue)) {
-                count++;
-            }
-        }
-        return count;
-    }
-
-    private double getTotalDuration(NodeList testCaseNodes) {
-        double totalDuration = 0;
-        for (int i = 0; i < testCaseNodes.getLength(); i++) {
-            try {
-                String duration = "0";
-                Node durationms = testCaseNodes.item(i).getAttributes().getNamedItem("duration-ms");
-                if (durationms != null) {
-                    duration = durationms.getNodeValue();
-                }
-                totalDuration += Double.parseDouble(duration);
-            } catch (NumberFormatException e) {
-                throw new CucumberException(e);
-            }
-        }
-        return totalDuration;
-    }
-
-    private double getTotalDurationMs(NodeList testCaseNodes) {
-        return getTotalDuration(testCaseNodes) / 1000;
-    }
-
     public final class TestMethod {
 
         private boolean treatSkippedAsFailure = false;
@@ -390,12 +342,20 @@ public class CucumberReporter implements Formatter, Reporter {
 
         private Integer iteration = 1;
 
+        private String name;
+
+        private String startedAt;
+
+        private String status;
+
+        private boolean jUnitCase;
+
         public TestMethod(String feature, Scenario scenario) {
             this.featureName = feature;
             this.scenario = scenario;
         }
 
-        private void start(Element element, Integer iteration, Element JunitElement) {
+        private void start(Integer iteration) {
             this.iteration = iteration;
             String testSuffix = System.getProperty("TESTSUFFIX");
             String name = scenario.getName();
@@ -403,16 +363,14 @@ public class CucumberReporter implements Formatter, Reporter {
                 name = name + " [" + testSuffix + "]";
             }
             if ((examplesData == null) || (this.iteration >= examplesData.getRows().size())) {
-                element.setAttribute("name", name);
-                JunitElement.setAttribute("name", name);
+                this.name = name;
                 ThreadProperty.set("dataSet", "");
             } else {
                 String data = obtainOutlineScenariosExamples(examplesData.getRows().get(iteration).getCells().toString());
-                element.setAttribute("name", name + " " + data);
-                JunitElement.setAttribute("name", name + " " + data);
+                this.name = name + " " + data;
                 ThreadProperty.set("dataSet", data);
             }
-            element.setAttribute("started-at", DATE_FORMAT.format(new Date()));
+            startedAt = DATE_FORMAT.format(new Date(ScenarioEvent.currentTimeMillis()));
         }
 
         public String obtainOutlineScenariosExamples(String examplesData) {
@@ -468,27 +426,37 @@ public class CucumberReporter implements Formatter, Reporter {
         }
 
         /**
-         * Builds a test result xml document, builds exception messages on non valid ignore causes such as
+         * Writes the test result to the reports, builds exception messages on non valid ignore causes such as
          * \@tillfixed without an in progress Jira ticker
          *
-         * @param doc report document
-         * @param element scenario execution result
-         * @param position position of element in document
+         * @param testNG TestNG report
          * @param tags tags that performs conditional inclusion of element
-         * @param docJunit docJunit report document
-         * @param Junit Junit scenario execution result
+         * @param jUnit JUnit report
          * @throws ExecutionException exception
          * @throws InterruptedException exception
          * @throws IOException exception
          */
-        public void finish(Document doc, Element element, Integer position, List<Tag> tags, Document docJunit,
-                           Element Junit) throws ExecutionException, InterruptedException, IOException {
-
-            Junit.setAttribute("time", String.valueOf(calculateTotalDurationString() / 1000));
-
-            element.setAttribute("duration-ms", String.valueOf(calculateTotalDurationString()));
-            element.setAttribute("finished-at", DATE_FORMAT.format(new Date()));
+        public void finish(XmlReportWriter testNG, List<Tag> tags, XmlReportWriter jUnit)
+                throws ExecutionException, InterruptedException, IOException {
+
+            testNG.startElement("test-method")
+                    .attribute("name", name)
+                    .attribute("started-at", startedAt)
+                    .attribute("duration-ms", String.valueOf(calculateTotalDurationString()))
+                    .attribute("finished-at", DATE_FORMAT.format(new Date(ScenarioEvent.currentTimeMillis())));
+            jUnitCase = false;
+            try {
+                writeResult(testNG, tags, jUnit);
+            } finally {
+                testNG.endElement();
+                if (jUnitCase) {
+                    jUnit.endElement();
+                }
+                statistics.record(status, calculateTotalDurationNanos());
+            }
+        }
 
+        private void writeResult(XmlReportWriter testNG, List<Tag> tags, XmlReportWriter jUnit) throws IOException {
             StringBuilder stringBuilder = new StringBuilder();
 
             List<Step> mergedsteps = new ArrayList<Step>();
@@ -552,10 +520,17 @@ public class CucumberReporter implements Formatter, Reporter {
             String msg2 = "";
 
             if (ignoreRun) {
-                docJunit.getDocumentElement().getLastChild().removeChild(docJunit.getDocumentElement().getLastChild().getLastChild());
                 return;
-            } else if (ignored && (!ignoreReason || (ignoreReason && isJiraTicketDone) || (ignoreReason && isWrongTicket))) {
-                element.setAttribute(STATUS, "FAIL");
+            }
+
+            jUnit.startElement("testcase")
+                    .attribute("classname", callerClass)
+                    .attribute("name", name)
+                    .attribute("time", String.valueOf(calculateTotalDurationString() / 1000));
+            jUnitCase = true;
+
+            if (ignored && (!ignoreReason || (ignoreReason && isJiraTicketDone) || (ignoreReason && isWrongTicket))) {
+                setStatus(testNG, RunStatistics.FAIL);
                 if (isJiraTicketDone) {
                     msg1 = "The scenario was ignored due an already done (or in progress) ticket. " + "http://jira.privalia.pin/browse/" + ticket;
                 } else if (isWrongTicket) {
@@ -564,31 +539,23 @@ public class CucumberReporter implements Formatter, Reporter {
                     msg1 = "The scenario has no valid reason for being ignored. \n Valid values: @tillfixed(ISSUE-007) @unimplemented @manual @toocomplex";
                 }
 
-                Element exception = createException(doc, msg1, msg1, msg2);
-                element.appendChild(exception);
-                Element systemOut = createExceptionJunit(docJunit, msg1, msg1, msg2);
-                Junit.appendChild(systemOut);
+                writeException(testNG, msg1, msg1, msg2);
+                writeExceptionJunit(jUnit, msg1, msg1, msg2);
 
             } else if (ignored && ignoreReason) {
-                element.setAttribute(STATUS, "SKIP");
-                Element exception = createException(doc, "skipped",
+                setStatus(testNG, RunStatistics.SKIP);
+                writeException(testNG, "skipped",
                         exceptionmsg, " ");
-                element.appendChild(exception);
-                Element skippedElementJunit = docJunit.createElement("skipped");
-                Junit.appendChild(skippedElementJunit);
-                Element systemOut = systemOutPrintJunit(docJunit, exceptionmsg);
-                Junit.appendChild(systemOut);
+                jUnit.startElement("skipped").endElement();
+                writeSystemOutJunit(jUnit, exceptionmsg);
 
             } else if ((stringBuilder.toString().contains("${")) || (stringBuilder.toString().contains("!{")) || (stringBuilder.toString().contains("@{"))) {
-                element.setAttribute(STATUS, "FAIL");
-                Element exception = createException(doc, "The scenario has unreplaced variables.",
+                setStatus(testNG, RunStatistics.FAIL);
+                writeException(testNG, "The scenario has unreplaced variables.",
                         "The scenario has unreplaced variables.", " ");
-                element.appendChild(exception);
-                Element exceptionJunit = createExceptionJunit(docJunit, "The scenario has unreplaced variables.",
+                writeExceptionJunit(jUnit, "The scenario has unreplaced variables.",
                         "The scenario has unreplaced variables.", " ");
-                Junit.appendChild(exceptionJunit);
-                Element systemOut = systemOutPrintJunit(docJunit, stringBuilder.toString());
-                Junit.appendChild(systemOut);
+                writeSystemOutJunit(jUnit, stringBuilder.toString());
             } else {
                 for (Result result : results) {
                     if ("failed".equals(result.getStatus())) {
@@ -603,53 +570,49 @@ public class CucumberReporter implements Formatter, Reporter {
                     }
                 }
                 if (failed != null) {
-                    element.setAttribute(STATUS, "FAIL");
+                    setStatus(testNG, RunStatistics.FAIL);
                     StringWriter stringWriter = new StringWriter();
                     failed.getError().printStackTrace(new PrintWriter(stringWriter));
-                    Element exception = createException(doc, failed.getError().getClass().getName(),
+                    writeException(testNG, failed.getError().getClass().getName(),
                             stringBuilder.toString(), stringWriter.toString());
-                    element.appendChild(exception);
-                    Element exceptionJunit = createExceptionJunit(docJunit, failed.getError().getClass().getName(),
+                    writeExceptionJunit(jUnit, failed.getError().getClass().getName(),
                             stringBuilder.toString(), stringWriter.toString());
-                    Junit.appendChild(exceptionJunit);
                 } else if (skipped != null) {
                     if (treatSkippedAsFailure) {
-                        element.setAttribute(STATUS, "FAIL");
-                        Element exception = createException(doc, "The scenario has pending or undefined step(s)",
+                        setStatus(testNG, RunStatistics.FAIL);
+                        writeException(testNG, "The scenario has pending or undefined step(s)",
                                 stringBuilder.toString(), "The scenario has pending or undefined step(s)");
-                        element.appendChild(exception);
-                        Element exceptionJunit = createExceptionJunit(docJunit,
+                        writeExceptionJunit(jUnit,
                                 "The scenario has pending or undefined step(s)", stringBuilder.toString(),
                                 "The scenario has pending or undefined step(s)");
-                        Junit.appendChild(exceptionJunit);
                     } else {
-                        element.setAttribute(STATUS, "SKIP");
-                        Element skippedElementJunit = docJunit.createElement("skipped");
-                        Junit.appendChild(skippedElementJunit);
-                        Element systemOut = systemOutPrintJunit(docJunit, stringBuilder.toString());
-                        Junit.appendChild(systemOut);
+                        setStatus(testNG, RunStatistics.SKIP);
+                        jUnit.startElement("skipped").endElement();
+                        writeSystemOutJunit(jUnit, stringBuilder.toString());
                     }
 
                 } else {
-                    element.setAttribute(STATUS, "PASS");
-                    Element exception = createException(doc, "NonRealException", stringBuilder.toString(), " ");
-                    element.appendChild(exception);
-                    Element systemOut = systemOutPrintJunit(docJunit, stringBuilder.toString());
-                    Junit.appendChild(systemOut);
+                    setStatus(testNG, RunStatistics.PASS);
+                    writeException(testNG, "NonRealException", stringBuilder.toString(), " ");
+                    writeSystemOutJunit(jUnit, stringBuilder.toString());
                 }
             }
         }
 
 
         private double calculateTotalDurationString() {
-            double totalDurationNanos = 0;
+            return (double) calculateTotalDurationNanos() / DURATION_STRING;
+        }
+
+        private long calculateTotalDurationNanos() {
+            long totalDurationNanos = 0;
             for (Result r : results) {
                 totalDurationNanos += r.getDuration() == null ? 0 : r.getDuration();
             }
             for (Result r : hooks) {
                 totalDurationNanos += r.getDuration() == null ? 0 : r.getDuration();
             }
-            return totalDurationNanos / DURATION_STRING;
+            return totalDurationNanos;
         }
 
         public void addStepAndResultListing(StringBuilder sb, List<Step> mergedsteps) {
@@ -702,47 +665,55 @@ public class CucumberReporter implements Formatter, Reporter {
                 dir = new File("./target/executions/");
             }
             final String[] imgext = {"png"};
-            Collection<File> files = FileUtils.listFiles(dir, imgext, true);
+            Collection<File> files = new ArrayList<>(FileUtils.listFiles(dir, imgext, true));
+            for (File evidence : EvidenceWriter.INSTANCE.getStoredFiles()) {
+                if (evidence.getName().endsWith(".png")) {
+                    files.add(evidence);
+                }
+            }
+            for (File pending : EvidenceWriter.INSTANCE.getPendingFiles()) {
+                if (pending.getName().endsWith(".png")) {
+                    files.add(pending);
+                }
+            }
 
             for (File file : files) {
                 if (file.getPath().contains(featureName.replaceAll(" ", "_") + "." + scenario.getName().replaceAll(" ", "_")) &&
                         file.getName().contains("assert")) {
-                    return file.toString();
+                    // the content of a stored evidence is in a blob, or in the archive; the index tells which one
+                    String location = EvidenceWriter.INSTANCE.locate(file);
+                    return location != null ? location : EvidenceWriter.INSTANCE.getIndex().toString();
                 }
             }
             return "";
         }
 
-        private Element createException(Document doc, String clazz, String message, String stacktrace) {
-            Element exceptionElement = doc.createElement("exception");
-            exceptionElement.setAttribute("class", clazz);
+        private void setStatus(XmlReportWriter testNG, String status) {
+            testNG.attribute(STATUS, status);
+            this.status = status;
+        }
+
+        private void writeException(XmlReportWriter testNG, String clazz, String message, String stacktrace) throws IOException {
+            testNG.startElement("exception").attribute("class", clazz);
 
             if (message != null) {
-                Element messageElement = doc.createElement("message");
-                messageElement.appendChild(doc.createCDATASection("\r\n<pre>\r\n" + message + "\r\n</pre>\r\n"));
-                exceptionElement.appendChild(messageElement);
+                testNG.startElement("message").cdata("\r\n<pre>\r\n" + message + "\r\n</pre>\r\n").endElement();
             }
 
-            Element stacktraceElement = doc.createElement("full-stacktrace");
-            stacktraceElement.appendChild(doc.createCDATASection(stacktrace));
-            exceptionElement.appendChild(stacktraceElement);
-
-            return exceptionElement;
+            testNG.startElement("full-stacktrace").cdata(stacktrace).endElement();
+            testNG.endElement();
         }
 
-        private Element createExceptionJunit(Document doc, String clazz, String message, String stacktrace) {
-            Element exceptionElement = doc.createElement("failure");
+        private void writeExceptionJunit(XmlReportWriter jUnit, String clazz, String message, String stacktrace) throws IOException {
+            jUnit.startElement("failure");
             if (message != null) {
-                exceptionElement.setAttribute("message", "\r\n" + message + "\r\n");
+                jUnit.attribute("message", "\r\n" + message + "\r\n");
             }
-            exceptionElement.appendChild(doc.createCDATASection(stacktrace));
-            return exceptionElement;
+            jUnit.cdata(stacktrace).endElement();
         }
 
-        private Element systemOutPrintJunit(Document doc, String message) {
-            Element systemOut = doc.createElement("system-out");
-            systemOut.appendChild(doc.createCDATASection("\r\n" + message + "\r\n"));
-            return systemOut;
+        private void writeSystemOutJunit(XmlReportWriter jUnit, String message) throws IOException {
+            jUnit.startElement("system-out").cdata("\r\n" + message + "\r\n").endElement();
         }
     }
 }
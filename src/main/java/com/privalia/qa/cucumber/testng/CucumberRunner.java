@@ -16,6 +16,9 @@
 
 package com.privalia.qa.cucumber.testng;
 
+import com.privalia.qa.utils.ClassIndex;
+import com.privalia.qa.utils.EvidenceWriter;
+import com.privalia.qa.utils.WebDriverTransport;
 import cucumber.api.CucumberOptions;
 import cucumber.runtime.ClassFinder;
 import cucumber.runtime.CucumberException;
@@ -24,7 +27,9 @@ import cucumber.runtime.RuntimeOptionsFactory;
 import cucumber.runtime.io.MultiLoader;
 import cucumber.runtime.io.ResourceLoader;
 import cucumber.runtime.io.ResourceLoaderClassFinder;
-import org.reflections.Reflections;
+import cucumber.runtime.model.CucumberFeature;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +38,7 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -45,6 +51,14 @@ public class CucumberRunner {
 
     private RuntimeOptions runtimeOptions;
 
+    private ResourceLoader resourceLoader;
+
+    private ClassFinder classFinder;
+
+    private Set<Class<? extends ICucumberFormatter>> implementers;
+
+    private String targetExecutionsPath;
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass()
             .getCanonicalName());
 
@@ -64,13 +78,13 @@ public class CucumberRunner {
     public CucumberRunner(Class<?> clazz, String... feature) throws IOException, ClassNotFoundException,
             InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
         classLoader = clazz.getClassLoader();
-        ResourceLoader resourceLoader = new MultiLoader(classLoader);
+        resourceLoader = new MultiLoader(classLoader);
 
         RuntimeOptionsFactory runtimeOptionsFactory = new RuntimeOptionsFactory(clazz,
                 new Class[]{CucumberOptions.class});
         runtimeOptions = runtimeOptionsFactory.create();
         String testSuffix = System.getProperty("TESTSUFFIX");
-        String targetExecutionsPath = "target/executions/";
+        targetExecutionsPath = "target/executions/";
         if (testSuffix != null) {
             targetExecutionsPath = targetExecutionsPath + testSuffix + "/";
         }
@@ -93,8 +107,7 @@ public class CucumberRunner {
         runtimeOptions.getGlue().addAll(uniqueGlue);
 
         runtimeOptions.addFormatter(reporterTestNG);
-        Set<Class<? extends ICucumberFormatter>> implementers = new Reflections("com.privalia.qa.utils")
-                .getSubTypesOf(ICucumberFormatter.class);
+        implementers = ClassIndex.subTypesOf(ICucumberFormatter.class, "com.privalia.qa.utils", classLoader);
 
         for (Class<? extends ICucumberFormatter> implementerClazz : implementers) {
             Constructor<?> ctor = implementerClazz.getConstructor();
@@ -102,12 +115,15 @@ public class CucumberRunner {
             runtimeOptions.addFormatter((ICucumberFormatter) ctor.newInstance());
         }
 
-        ClassFinder classFinder = new ResourceLoaderClassFinder(resourceLoader, classLoader);
+        classFinder = new ResourceLoaderClassFinder(resourceLoader, classLoader);
         runtime = new cucumber.runtime.Runtime(resourceLoader, classFinder, classLoader, runtimeOptions);
     }
 
     /**
-     * Run the testclases(Features).
+     * Run the testclases(Features). With -Dgingerspec.parallel=N, the scenarios are spread over N threads.
+     * With -Dgingerspec.shard=i/N, only the i-th of N balanced subsets of the scenarios is run.
+     * With -Dgingerspec.coordinator=PORT, the scenarios are served to the worker JVMs started with
+     * -Dgingerspec.worker=HOST:PORT, and only the coordinator writes the reports.
      *
      * @throws IOException exception
      * @throws NoSuchMethodException exception
@@ -116,11 +132,61 @@ public class CucumberRunner {
      */
     public void runCukes() throws IOException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
 
-        runtime.run();
+        List<Throwable> errors;
+        int threads = Integer.getInteger(ParallelRuntime.PARALLEL_PROPERTY, 1);
+        ScenarioShard shard = ScenarioShard.fromSystemProperty();
+        Integer coordinatorPort = Integer.getInteger(WorkQueueCoordinator.PORT_PROPERTY);
+        String coordinator = System.getProperty(WorkQueueWorker.COORDINATOR_PROPERTY);
+
+        if (threads <= 1 && shard == null && coordinatorPort == null && coordinator == null) {
+            runtime.run();
+            errors = runtime.getErrors();
+        } else {
+            List<CucumberFeature> features = runtimeOptions.cucumberFeatures(resourceLoader);
+            String historyPath = System.getProperty(ScenarioShard.HISTORY_PROPERTY, targetExecutionsPath);
+            if (shard != null) {
+                if (System.getProperty("TESTSUFFIX") == null) {
+                    logger.warn("Shard {} writes its reports to {} without -DTESTSUFFIX: shards that share this folder "
+                            + "overwrite each other's reports", System.getProperty(ScenarioShard.SHARD_PROPERTY), targetExecutionsPath);
+                }
+                // the shards only get disjoint subsets from the same history, so durations are used only from a shared folder
+                String sharedHistory = System.getProperty(ScenarioShard.HISTORY_PROPERTY);
+                shard.filter(features, sharedHistory == null ? Collections.emptyMap() : ScenarioShard.loadHistory(new File(sharedHistory)));
+            }
+
+            if (coordinatorPort != null) {
+                errors = new WorkQueueCoordinator(runtimeOptions, coordinatorPort).run(features, ScenarioShard.loadHistory(new File(historyPath)));
+            } else if (coordinator != null) {
+                try {
+                    errors = new WorkQueueWorker(resourceLoader, classFinder, classLoader, runtimeOptions, implementers, coordinator)
+                            .run(features, Math.max(threads, 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CucumberException(e);
+                }
+            } else if (threads > 1) {
+                errors = new ParallelRuntime(resourceLoader, classFinder, classLoader, runtimeOptions, implementers, threads).run(features);
+            } else {
+                Formatter formatter = runtimeOptions.formatter(classLoader);
+                Reporter reporter = runtimeOptions.reporter(classLoader);
+                for (CucumberFeature feature : features) {
+                    feature.run(formatter, reporter, runtime);
+                }
+                // as Runtime.run does once the features are run
+                formatter.done();
+                formatter.close();
+                runtime.printSummary();
+                errors = runtime.getErrors();
+            }
+        }
+        EvidenceWriter.INSTANCE.flush();
+        if (WebDriverTransport.INSTANCE.getRequests() > 0) {
+            logger.info("{}", WebDriverTransport.INSTANCE);
+        }
 
-        if (!runtime.getErrors().isEmpty()) {
-            logger.error ("Got {} exceptions", runtime.getErrors());
-            throw new CucumberException(runtime.getErrors().get(0));
+        if (!errors.isEmpty()) {
+            logger.error ("Got {} exceptions", errors);
+            throw new CucumberException(errors.get(0));
         }
     }
 }
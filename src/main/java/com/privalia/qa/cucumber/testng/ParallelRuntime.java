@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.cucumber.testng;
+
+import com.privalia.qa.utils.VariableStore;
+import cucumber.runtime.ClassFinder;
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import gherkin.formatter.Formatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the scenarios of a list of features in a work-stealing pool (-Dgingerspec.parallel=N).
+ * <p>
+ * Every worker thread has its own {@link ScenarioExecutor}: its own cucumber runtime, so its own picocontainer
+ * world (CommonG and specs), and its own instances of the {@link ICucumberFormatter}s. The rest of the
+ * formatters (the TestNG/JUnit {@link CucumberReporter}, json, html...) are not thread safe: the events of each
+ * scenario are recorded and replayed on the calling thread, in the original order of the scenarios, once it has
+ * finished. This way the reports are the same as in a sequential execution.
+ * <p>
+ * The unit of work is a scenario or a whole scenario outline, so the examples of an outline are kept in order.
+ */
+final class ParallelRuntime {
+
+    public static final String PARALLEL_PROPERTY = "gingerspec.parallel";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
+
+    private final ResourceLoader resourceLoader;
+
+    private final ClassFinder classFinder;
+
+    private final ClassLoader classLoader;
+
+    private final RuntimeOptions runtimeOptions;
+
+    private final Collection<Class<? extends ICucumberFormatter>> liveFormatters;
+
+    private final int threads;
+
+    private final Map<String, String> threadVariables;
+
+    private final List<ScenarioExecutor> executors = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger workerCount = new AtomicInteger();
+
+    /**
+     * @param resourceLoader resource loader of the features
+     * @param classFinder    class finder of the glue
+     * @param classLoader    class loader
+     * @param runtimeOptions runtime options, shared by all the workers
+     * @param liveFormatters formatters instantiated in every worker
+     * @param threads        number of workers
+     */
+    ParallelRuntime(ResourceLoader resourceLoader, ClassFinder classFinder, ClassLoader classLoader, RuntimeOptions runtimeOptions,
+                    Collection<Class<? extends ICucumberFormatter>> liveFormatters, int threads) {
+        this.resourceLoader = resourceLoader;
+        this.classFinder = classFinder;
+        this.classLoader = classLoader;
+        this.runtimeOptions = runtimeOptions;
+        this.liveFormatters = liveFormatters;
+        this.threads = threads;
+        this.threadVariables = VariableStore.snapshot(VariableStore.Scope.THREAD);
+    }
+
+    /**
+     * Runs every scenario of the features and writes the reports.
+     *
+     * @param features features to run
+     * @return the errors of all the workers
+     */
+    List<Throwable> run(List<CucumberFeature> features) {
+        ForkJoinPool pool = new ForkJoinPool(threads, Worker::new, null, true);
+        List<Throwable> failures;
+        try {
+            List<List<CompletableFuture<List<ScenarioEvent>>>> scheduled = new ArrayList<>();
+            for (CucumberFeature feature : features) {
+                List<CompletableFuture<List<ScenarioEvent>>> units = new ArrayList<>();
+                for (CucumberTagStatement statement : feature.getFeatureElements()) {
+                    units.add(CompletableFuture.supplyAsync(() -> ((Worker) Thread.currentThread()).execute(feature, statement), pool));
+                }
+                scheduled.add(units);
+            }
+
+            logger.info("Running {} features in {} threads", features.size(), threads);
+            failures = report(runtimeOptions, features, scheduled);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<Throwable> result = new ArrayList<>(failures);
+        for (ScenarioExecutor executor : executors) {
+            result.addAll(executor.getErrors());
+        }
+        return result;
+    }
+
+    /**
+     * Replays the events of every scenario, as they finish and in the original order, in the formatters that
+     * are not {@link ICucumberFormatter}s, and closes them. The scenarios that failed to run (i.e. expired in
+     * the coordinator) are left out of the reports.
+     *
+     * @param runtimeOptions runtime options with the formatters
+     * @param features       features that were run
+     * @param scheduled      events of each scenario of each feature
+     * @return the errors of the scenarios that failed to run
+     */
+    static List<Throwable> report(RuntimeOptions runtimeOptions, List<CucumberFeature> features,
+                                  List<List<CompletableFuture<List<ScenarioEvent>>>> scheduled) {
+        List<Throwable> failures = new ArrayList<>();
+        List<Object> serialized = new ArrayList<>();
+        for (Formatter formatter : formatters(runtimeOptions)) {
+            if (!(formatter instanceof ICucumberFormatter)) {
+                serialized.add(formatter);
+            }
+        }
+        Object sink = ScenarioEvent.broadcast(serialized);
+
+        for (int i = 0; i < features.size(); i++) {
+            CucumberFeature feature = features.get(i);
+            ((Formatter) sink).uri(feature.getPath());
+            ((Formatter) sink).feature(feature.getGherkinFeature());
+            for (CompletableFuture<List<ScenarioEvent>> unit : scheduled.get(i)) {
+                List<ScenarioEvent> events;
+                try {
+                    events = unit.get();
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause());
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CucumberException(e);
+                }
+                for (ScenarioEvent event : events) {
+                    event.replay(sink);
+                }
+            }
+            ((Formatter) sink).eof();
+        }
+        ((Formatter) sink).done();
+        ((Formatter) sink).close();
+        return failures;
+    }
+
+    /**
+     * Returns the formatters of the runtime options, that cucumber only lists inside its package.
+     *
+     * @param runtimeOptions runtime options with the formatters
+     * @return the formatters, created if they were not yet
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Formatter> formatters(RuntimeOptions runtimeOptions) {
+        try {
+            Method getFormatters = RuntimeOptions.class.getDeclaredMethod("getFormatters");
+            getFormatters.setAccessible(true);
+            return (List<Formatter>) getFormatters.invoke(runtimeOptions);
+        } catch (ReflectiveOperationException e) {
+            throw new CucumberException(e);
+        }
+    }
+
+    /**
+     * Thread of the pool, owner of a scenario executor.
+     */
+    private final class Worker extends ForkJoinWorkerThread {
+
+        private ScenarioExecutor executor;
+
+        private Worker(ForkJoinPool pool) {
+            super(pool);
+            setName("gingerspec-worker-" + workerCount.incrementAndGet());
+            setContextClassLoader(classLoader);
+        }
+
+        private List<ScenarioEvent> execute(CucumberFeature feature, CucumberTagStatement statement) {
+            if (executor == null) {
+                executor = new ScenarioExecutor(resourceLoader, classFinder, classLoader, runtimeOptions, liveFormatters, threadVariables);
+                executors.add(executor);
+            }
+            return executor.execute(feature, statement);
+        }
+    }
+}
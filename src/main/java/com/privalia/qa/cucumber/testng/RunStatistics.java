@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.cucumber.testng;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of the scenarios reported by a {@link CucumberReporter}, updated as each one finishes.
+ * <p>
+ * Every reporter has its own statistics ({@link CucumberReporter#getStatistics()}), and they are also added to
+ * the ones of the whole JVM ({@link #suite()}), so formatters and listeners can show the progress of the run.
+ * Scenarios skipped by an environment condition are not counted, but their duration is.
+ */
+public final class RunStatistics {
+
+    public static final String PASS = "PASS";
+
+    public static final String FAIL = "FAIL";
+
+    public static final String SKIP = "SKIP";
+
+    private static final RunStatistics SUITE = new RunStatistics(null);
+
+    private static final double NANOS_PER_MS = 1_000_000d;
+
+    private final RunStatistics parent;
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAdder passed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder durationNanos = new LongAdder();
+
+    RunStatistics() {
+        this(SUITE);
+    }
+
+    private RunStatistics(RunStatistics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * @return the statistics of every reporter of this JVM
+     */
+    public static RunStatistics suite() {
+        return SUITE;
+    }
+
+    /**
+     * Counts a finished scenario.
+     *
+     * @param status        PASS, FAIL, SKIP, or null if the scenario is not reported
+     * @param durationNanos duration of the steps and hooks
+     */
+    void record(String status, long durationNanos) {
+        this.durationNanos.add(durationNanos);
+        if (status != null) {
+            total.increment();
+            if (PASS.equals(status)) {
+                passed.increment();
+            } else if (FAIL.equals(status)) {
+                failed.increment();
+            } else if (SKIP.equals(status)) {
+                skipped.increment();
+            }
+        }
+        if (parent != null) {
+            parent.record(status, durationNanos);
+        }
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getPassed() {
+        return passed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getDurationNanos() {
+        return durationNanos.sum();
+    }
+
+    /**
+     * @return the duration in ms, as written in the reports
+     */
+    public double getDurationMs() {
+        return getDurationNanos() / NANOS_PER_MS;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d scenarios (%d passed, %d failed, %d skipped) in %.3f s", getTotal(), getPassed(),
+                getFailed(), getSkipped(), getDurationMs() / 1000);
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.cucumber.testng;
+
+import cucumber.runtime.CucumberException;
+import gherkin.formatter.Argument;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Mappable;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Match;
+import gherkin.formatter.model.Result;
+import gherkin.formatter.model.Step;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link Formatter} or {@link Reporter} call, recorded while a scenario runs in a worker to be replayed later
+ * in the formatters that are not thread safe.
+ * <p>
+ * Events can be sent to another JVM: {@link #portable()} replaces the step definition matches, that hold
+ * references to the glue, and the steps of the examples of an outline by plain {@link Match}es and
+ * {@link Step}s, and keeps a copy of the errors of the results, that gherkin does not serialize.
+ * <p>
+ * Each event keeps the time it happened: while it is replayed, {@link #currentTimeMillis()} returns that time,
+ * so the reports show when the scenarios ran and not when they were replayed.
+ */
+final class ScenarioEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final Class<?>[] EVENT_INTERFACES = {Formatter.class, Reporter.class};
+
+    /**
+     * Nesting of the objects received from a worker. The events are a few levels deep.
+     */
+    static final int MAX_DEPTH = 64;
+
+    /**
+     * Elements of the arrays and collections received from a worker, i.e. the frames of a stack trace.
+     */
+    static final int MAX_ARRAY_LENGTH = 100_000;
+
+    /**
+     * Elements of the arrays of primitives received from a worker, i.e. the bytes of a screenshot.
+     */
+    static final int MAX_PRIMITIVE_ARRAY_LENGTH = 64 * 1024 * 1024;
+
+    private static final int MAX_CAUSES = 16;
+
+    private static final Set<Class<?>> TRANSFERABLE = new HashSet<>(Arrays.asList(
+            Object.class, String.class, Boolean.class, Character.class, Number.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class, StackTraceElement.class,
+            Throwable.class, Exception.class, RuntimeException.class, CucumberException.class,
+            ArrayList.class, HashMap.class, LinkedHashMap.class, Argument.class, Mappable.class, Formatter.class, Reporter.class));
+
+    private static final ThreadLocal<Long> REPLAYED_AT = new ThreadLocal<>();
+
+    private final Class<?> type;
+
+    private final String name;
+
+    private final String[] parameterTypes;
+
+    private final Object[] args;
+
+    private final long timestamp;
+
+    private transient Method method;
+
+    ScenarioEvent(Method method, Object[] args) {
+        this(method, args, System.currentTimeMillis());
+    }
+
+    private ScenarioEvent(Method method, Object[] args, long timestamp) {
+        this.timestamp = timestamp;
+        this.method = method;
+        this.type = method.getDeclaringClass();
+        this.name = method.getName();
+        this.parameterTypes = names(method.getParameterTypes());
+        this.args = args == null ? new Object[0] : args;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the time of the event being replayed in the current thread, or the current time
+     */
+    static long currentTimeMillis() {
+        Long replayedAt = REPLAYED_AT.get();
+        return replayedAt == null ? System.currentTimeMillis() : replayedAt;
+    }
+
+    /**
+     * Calls the same method on the given formatter/reporter.
+     *
+     * @param sink formatter, reporter or both
+     */
+    void replay(Object sink) {
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            values[i] = args[i] instanceof PortableResult ? ((PortableResult) args[i]).toResult() : args[i];
+        }
+        REPLAYED_AT.set(timestamp);
+        try {
+            invoke(method(), sink, values);
+        } finally {
+            REPLAYED_AT.remove();
+        }
+    }
+
+    /**
+     * Returns a copy of the event that can be serialized.
+     *
+     * @return the event
+     */
+    ScenarioEvent portable() {
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg instanceof Match && arg.getClass() != Match.class) {
+                Match match = (Match) arg;
+                arg = new Match(match.getArguments(), match.getLocation());
+            } else if (arg instanceof Step && arg.getClass() != Step.class) {
+                Step step = (Step) arg;
+                arg = new Step(step.getComments(), step.getKeyword(), step.getName(), step.getLine(), step.getRows(),
+                        step.getDocString());
+            } else if (arg instanceof Result) {
+                arg = new PortableResult((Result) arg);
+            }
+            values[i] = arg;
+        }
+        return new ScenarioEvent(method(), values, timestamp);
+    }
+
+    private Method method() {
+        if (method == null) {
+            for (Method candidate : type.getMethods()) {
+                if (candidate.getName().equals(name) && Arrays.equals(names(candidate.getParameterTypes()), parameterTypes)) {
+                    method = candidate;
+                    return method;
+                }
+            }
+            throw new CucumberException("No method " + name + Arrays.toString(parameterTypes) + " in " + type.getName());
+        }
+        return method;
+    }
+
+    /**
+     * Parameter types are sent by name: the classes would take the descriptors of List, Integer... to the stream.
+     */
+    private static String[] names(Class<?>[] types) {
+        String[] names = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            names[i] = types[i].getName();
+        }
+        return names;
+    }
+
+    /**
+     * Returns a formatter and reporter that forwards every call to the targets that implement the called method.
+     *
+     * @param targets formatters and reporters
+     * @return the proxy, that implements both {@link Formatter} and {@link Reporter}
+     */
+    static Object broadcast(List<?> targets) {
+        return Proxy.newProxyInstance(ScenarioEvent.class.getClassLoader(), EVENT_INTERFACES, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(targets, args);
+            }
+            for (Object target : targets) {
+                if (method.getDeclaringClass().isInstance(target)) {
+                    invoke(method, target, args);
+                }
+            }
+            return null;
+        });
+    }
+
+    static void invoke(Method method, Object target, Object[] args) {
+        try {
+            method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new CucumberException(e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CucumberException(cause);
+        }
+    }
+
+    /**
+     * Tells whether objects of a class can be received from a worker: the events themselves, the gherkin
+     * model, the copies of the errors (see {@link #portable(Throwable)}) and the plain values and collections
+     * they hold. Anything else in the stream of a worker is rejected before it is deserialized.
+     *
+     * @param type class of an object in the stream
+     * @return whether it is allowed
+     */
+    static boolean isTransferable(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive() || TRANSFERABLE.contains(type) || type == ScenarioEvent.class
+                || type.getEnclosingClass() == ScenarioEvent.class) {
+            return true;
+        }
+        String name = type.getName();
+        return name.startsWith("gherkin.formatter.model.") || name.startsWith("java.util.Collections$Unmodifiable")
+                || name.startsWith("java.util.Collections$Empty") || name.startsWith("java.util.Collections$Singleton");
+    }
+
+    /**
+     * Returns a copy of a throwable, and of its causes, that the coordinator accepts: a {@link CucumberException}
+     * with the class name, message and stack trace of the original. The throwables themselves are not sent, as
+     * they can hold any class.
+     *
+     * @param error the throwable
+     * @return a serializable throwable
+     */
+    static Throwable portable(Throwable error) {
+        if (error == null) {
+            return null;
+        }
+        CucumberException copy = copy(error);
+        CucumberException last = copy;
+        Throwable cause = error.getCause();
+        for (int i = 0; i < MAX_CAUSES && cause != null && cause != error; i++) {
+            CucumberException next = copy(cause);
+            last.initCause(next);
+            last = next;
+            cause = cause.getCause();
+        }
+        return copy;
+    }
+
+    private static CucumberException copy(Throwable error) {
+        CucumberException copy = new CucumberException(error.getClass().getName() + ": " + error.getMessage());
+        copy.setStackTrace(error.getStackTrace());
+        return copy;
+    }
+
+    /**
+     * A result with its error, that gherkin marks as transient.
+     */
+    private static final class PortableResult implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String status;
+
+        private final Long duration;
+
+        private final Throwable error;
+
+        private final String errorMessage;
+
+        private PortableResult(Result result) {
+            this.status = result.getStatus();
+            this.duration = result.getDuration();
+            this.error = portable(result.getError());
+            this.errorMessage = result.getErrorMessage();
+        }
+
+        private Result toResult() {
+            if (error != null) {
+                return new Result(status, duration, error, null);
+            }
+            return new Result(status, duration, errorMessage);
+        }
+    }
+
+    /**
+     * Stream that deserializes only the classes of the events (see {@link #isTransferable(Class)}), nested up
+     * to {@link #MAX_DEPTH} levels, and arrays and collections up to {@link #MAX_ARRAY_LENGTH} elements
+     * ({@link #MAX_PRIMITIVE_ARRAY_LENGTH} for primitives). The limits are checked by the serialization filter
+     * of the JVM (java.io.ObjectInputFilter, or sun.misc.ObjectInputFilter before Java 9), that sees the objects
+     * being read and the length of the arrays before they are created. Java 8 before 8u121 has no filter, and
+     * only the classes are checked.
+     */
+    static final class EventInputStream extends ObjectInputStream {
+
+        private static final String[] FILTER_APIS = {"java.io.ObjectInputFilter", "sun.misc.ObjectInputFilter"};
+
+        EventInputStream(InputStream in) throws IOException {
+            super(in);
+            limitDepthAndArrays();
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void limitDepthAndArrays() {
+            for (String api : FILTER_APIS) {
+                Class<?> filterType;
+                try {
+                    filterType = Class.forName(api);
+                } catch (ClassNotFoundException e) {
+                    continue;
+                }
+                try {
+                    Class<?> infoType = Class.forName(api + "$FilterInfo");
+                    Class<? extends Enum> statusType = (Class<? extends Enum>) Class.forName(api + "$Status");
+                    Method serialClass = infoType.getMethod("serialClass");
+                    Method arrayLength = infoType.getMethod("arrayLength");
+                    Method depth = infoType.getMethod("depth");
+                    InvocationHandler checkInput = (proxy, method, args) -> {
+                        if (method.getDeclaringClass() == Object.class) {
+                            return method.invoke(FILTER_APIS, args);
+                        }
+                        boolean rejected = isTooLarge((Class<?>) serialClass.invoke(args[0]),
+                                (Long) arrayLength.invoke(args[0]), (Long) depth.invoke(args[0]));
+                        return Enum.valueOf(statusType, rejected ? "REJECTED" : "UNDECIDED");
+                    };
+                    Object filter = Proxy.newProxyInstance(ScenarioEvent.class.getClassLoader(), new Class<?>[]{filterType},
+                            checkInput);
+                    if (api.startsWith("java.io.")) {
+                        ObjectInputStream.class.getMethod("setObjectInputFilter", filterType).invoke(this, filter);
+                    } else {
+                        Class.forName(api + "$Config").getMethod("setObjectInputFilter", ObjectInputStream.class, filterType)
+                                .invoke(null, this, filter);
+                    }
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Unable to limit the objects received from the workers", e);
+                }
+                return;
+            }
+        }
+
+        private static boolean isTooLarge(Class<?> serialClass, long arrayLength, long depth) {
+            if (depth > MAX_DEPTH) {
+                return true;
+            }
+            if (serialClass == null || !serialClass.isArray() || arrayLength < 0) {
+                return false;
+            }
+            return arrayLength > (serialClass.getComponentType().isPrimitive() ? MAX_PRIMITIVE_ARRAY_LENGTH : MAX_ARRAY_LENGTH);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> type = super.resolveClass(desc);
+            if (!ScenarioEvent.isTransferable(type)) {
+                throw new InvalidClassException(desc.getName(), "not accepted from a worker");
+            }
+            return type;
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws InvalidClassException {
+            throw new InvalidClassException(String.join(",", interfaces), "not accepted from a worker");
+        }
+    }
+}
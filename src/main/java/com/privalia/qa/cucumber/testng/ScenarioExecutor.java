@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.cucumber.testng;
+
+import com.privalia.qa.utils.ThreadProperty;
+import com.privalia.qa.utils.VariableStore;
+import cucumber.runtime.ClassFinder;
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.ExamplesTableRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs scenarios in the current thread with its own cucumber {@link Runtime} (so its own picocontainer world)
+ * and its own instances of the {@link ICucumberFormatter}s, that receive the events live. The events are also
+ * recorded and returned, to be replayed in the rest of the formatters.
+ * <p>
+ * It must be created and used in the same thread.
+ */
+final class ScenarioExecutor {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
+
+    private final Runtime runtime;
+
+    private final Object live;
+
+    private final List<Throwable> errors = new ArrayList<>();
+
+    private CucumberFeature currentFeature;
+
+    private int reportedErrors;
+
+    private int reportedRuntimeErrors;
+
+    /**
+     * @param resourceLoader  resource loader of the features
+     * @param classFinder     class finder of the glue
+     * @param classLoader     class loader
+     * @param runtimeOptions  runtime options
+     * @param liveFormatters  formatters instantiated for this executor
+     * @param threadVariables thread variables to copy to the current thread
+     */
+    ScenarioExecutor(ResourceLoader resourceLoader, ClassFinder classFinder, ClassLoader classLoader, RuntimeOptions runtimeOptions,
+                     Collection<Class<? extends ICucumberFormatter>> liveFormatters, Map<String, String> threadVariables) {
+        threadVariables.forEach((key, value) -> VariableStore.set(VariableStore.Scope.THREAD, key, value));
+
+        List<Object> formatters = new ArrayList<>();
+        for (Class<? extends ICucumberFormatter> formatterClass : liveFormatters) {
+            try {
+                formatters.add(formatterClass.getConstructor().newInstance());
+            } catch (ReflectiveOperationException e) {
+                throw new CucumberException("Could not create " + formatterClass.getName(), e);
+            }
+        }
+        live = ScenarioEvent.broadcast(formatters);
+        runtime = new Runtime(resourceLoader, classFinder, classLoader, runtimeOptions);
+    }
+
+    /**
+     * Runs a scenario or scenario outline.
+     *
+     * @param feature   feature of the scenario
+     * @param statement the scenario
+     * @return the formatter and reporter events
+     */
+    List<ScenarioEvent> execute(CucumberFeature feature, CucumberTagStatement statement) {
+        if (feature != currentFeature) {
+            ((Formatter) live).uri(feature.getPath());
+            ((Formatter) live).feature(feature.getGherkinFeature());
+            currentFeature = feature;
+        }
+
+        Recorder recorder = new Recorder(live);
+        Object events = Proxy.newProxyInstance(ScenarioExecutor.class.getClassLoader(), ScenarioEvent.EVENT_INTERFACES, recorder);
+        try {
+            statement.run((Formatter) events, (Reporter) events, runtime);
+        } catch (Throwable e) {
+            logger.error("Error running '{}' in {}", statement.getVisualName(), Thread.currentThread().getName(), e);
+            errors.add(e);
+        }
+        return recorder.events;
+    }
+
+    /**
+     * @return the errors of every scenario run so far
+     */
+    List<Throwable> getErrors() {
+        List<Throwable> result = new ArrayList<>(errors);
+        result.addAll(runtime.getErrors());
+        return result;
+    }
+
+    /**
+     * The errors of the executor and the ones of the runtime are kept apart, and both lists only grow, so
+     * the new errors of each are the ones after the last call.
+     *
+     * @return the errors of the scenarios run since the last call
+     */
+    List<Throwable> getNewErrors() {
+        List<Throwable> runtimeErrors = runtime.getErrors();
+        List<Throwable> result = new ArrayList<>(errors.subList(reportedErrors, errors.size()));
+        result.addAll(runtimeErrors.subList(reportedRuntimeErrors, runtimeErrors.size()));
+        reportedErrors = errors.size();
+        reportedRuntimeErrors = runtimeErrors.size();
+        return result;
+    }
+
+    /**
+     * Formatter and reporter of a single unit of work: forwards every call to the live formatters and
+     * records it for the rest.
+     */
+    private static final class Recorder implements InvocationHandler {
+
+        private final Object live;
+
+        private final List<ScenarioEvent> events = new ArrayList<>();
+
+        private Examples examples;
+
+        private int iteration;
+
+        private Recorder(Object live) {
+            this.live = live;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            trackDataSet(method.getName(), args);
+            events.add(new ScenarioEvent(method, args));
+            ScenarioEvent.invoke(method, live, args);
+            return null;
+        }
+
+        /**
+         * The CucumberReporter publishes the examples row of the running scenario in the dataSet variable, that
+         * is used to name the evidences. As it runs in another thread, do the same for the worker.
+         */
+        private void trackDataSet(String event, Object[] args) {
+            switch (event) {
+                case "scenarioOutline":
+                    iteration = 1;
+                    break;
+                case "examples":
+                    examples = (Examples) args[0];
+                    break;
+                case "startOfScenarioLifeCycle":
+                    List<ExamplesTableRow> rows = examples == null ? null : examples.getRows();
+                    if (rows == null || iteration >= rows.size()) {
+                        ThreadProperty.set("dataSet", "");
+                    } else {
+                        ThreadProperty.set("dataSet", rows.get(iteration).getCells().toString().replaceAll("\"", "¨"));
+                    }
+                    iteration++;
+                    break;
+                case "endOfScenarioLifeCycle":
+                    if (examples != null && iteration >= examples.getRows().size()) {
+                        examples = null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
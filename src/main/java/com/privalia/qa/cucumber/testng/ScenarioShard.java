@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.cucumber.testng;
+
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Subset of the scenarios to run in this JVM when the execution is split in several ones (-Dgingerspec.shard=i/N,
+ * with i from 1 to N).
+ * <p>
+ * Scenarios (and whole scenario outlines) are identified by feature path and line. With -Dgingerspec.shard.history,
+ * a folder shared by every shard, the durations of previous executions found there (the *DURATIONS.properties files
+ * that {@link CucumberReporter} of each shard writes to it) are distributed longest first, each one to the shard with
+ * less accumulated time. Scenarios without history are given the average duration. Otherwise, the shard is chosen by
+ * a hash of the feature path and line. Every shard must see the same history to get disjoint subsets, so the folder
+ * must not change while the shards of an execution start: each shard logs the size and hash of the history it read.
+ */
+final class ScenarioShard {
+
+    public static final String SHARD_PROPERTY = "gingerspec.shard";
+
+    public static final String HISTORY_PROPERTY = "gingerspec.shard.history";
+
+    public static final String HISTORY_SUFFIX = "DURATIONS.properties";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScenarioShard.class.getCanonicalName());
+
+    private final int index;
+
+    private final int total;
+
+    ScenarioShard(int index, int total) {
+        if (total < 1 || index < 1 || index > total) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + total + ", expected i/N with 1 <= i <= N");
+        }
+        this.index = index;
+        this.total = total;
+    }
+
+    /**
+     * Returns the shard given in -Dgingerspec.shard.
+     *
+     * @return the shard, or null if the execution is not split
+     */
+    static ScenarioShard fromSystemProperty() {
+        String shard = System.getProperty(SHARD_PROPERTY);
+        if (shard == null || shard.isEmpty()) {
+            return null;
+        }
+        return parse(shard);
+    }
+
+    /**
+     * Parses a shard definition.
+     *
+     * @param shard shard, as i/N
+     * @return the shard
+     */
+    static ScenarioShard parse(String shard) {
+        String[] parts = shard.trim().split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid shard " + shard + ", expected i/N");
+        }
+        try {
+            return new ScenarioShard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shard " + shard + ", expected i/N", e);
+        }
+    }
+
+    /**
+     * @return name of the shard in the files it writes, i.e. shard1of3
+     */
+    String getName() {
+        return "shard" + index + "of" + total;
+    }
+
+    /**
+     * Identifier of a scenario or scenario outline in the history.
+     *
+     * @param featurePath path of the feature
+     * @param line        line of the scenario
+     * @return the key
+     */
+    static String key(String featurePath, int line) {
+        return featurePath.replace('\\', '/') + ":" + line;
+    }
+
+    /**
+     * Removes from the features the scenarios that belong to other shards, and the features that are left empty.
+     *
+     * @param features features to run
+     * @param history  durations of previous executions, in ms
+     */
+    void filter(List<CucumberFeature> features, Map<String, Double> history) {
+        List<String> keys = new ArrayList<>();
+        for (CucumberFeature feature : features) {
+            for (CucumberTagStatement statement : feature.getFeatureElements()) {
+                keys.add(key(feature.getPath(), statement.getGherkinModel().getLine()));
+            }
+        }
+        Set<String> selected = select(keys, history);
+
+        int count = 0;
+        for (Iterator<CucumberFeature> it = features.iterator(); it.hasNext(); ) {
+            CucumberFeature feature = it.next();
+            feature.getFeatureElements().removeIf(statement -> !selected.contains(key(feature.getPath(), statement.getGherkinModel().getLine())));
+            if (feature.getFeatureElements().isEmpty()) {
+                it.remove();
+            }
+            count += feature.getFeatureElements().size();
+        }
+        // shards whose history differs do not get disjoint subsets: compare these lines to find them
+        LOGGER.info("Shard {}/{} runs {} of {} scenarios (history of {} scenarios, hash {})", index, total, count,
+                keys.size(), history.size(), Integer.toHexString(new TreeMap<>(history).hashCode()));
+    }
+
+    /**
+     * Returns the keys of the scenarios assigned to this shard.
+     *
+     * @param keys    keys of every scenario
+     * @param history durations of previous executions, in ms
+     * @return keys of this shard
+     */
+    Set<String> select(Collection<String> keys, Map<String, Double> history) {
+        Set<String> selected = new HashSet<>();
+        double known = 0;
+        int knownCount = 0;
+        for (String key : keys) {
+            Double duration = history.get(key);
+            if (duration != null) {
+                known += duration;
+                knownCount++;
+            }
+        }
+
+        if (knownCount == 0) {
+            for (String key : keys) {
+                if (Math.floorMod(key.hashCode(), total) == index - 1) {
+                    selected.add(key);
+                }
+            }
+            return selected;
+        }
+
+        double average = known / knownCount;
+        List<String> sorted = new ArrayList<>(new HashSet<>(keys));
+        sorted.sort(Comparator.comparingDouble((String key) -> history.getOrDefault(key, average)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+
+        double[] load = new double[total];
+        for (String key : sorted) {
+            int bin = 0;
+            for (int i = 1; i < total; i++) {
+                if (load[i] < load[bin]) {
+                    bin = i;
+                }
+            }
+            load[bin] += history.getOrDefault(key, average);
+            if (bin == index - 1) {
+                selected.add(key);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Reads the durations of every *DURATIONS.properties file of a folder. If a scenario appears in several
+     * files, the one that comes last by name wins, so every shard reading the same files gets the same history.
+     *
+     * @param folder history folder
+     * @return duration in ms of each scenario
+     */
+    static Map<String, Double> loadHistory(File folder) {
+        Map<String, Double> history = new TreeMap<>();
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(HISTORY_SUFFIX));
+        if (files == null) {
+            return history;
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (File file : files) {
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                LOGGER.warn("Could not read durations from {}: {}", file, e.getMessage());
+                continue;
+            }
+            for (String key : properties.stringPropertyNames()) {
+                try {
+                    history.put(key, Double.parseDouble(properties.getProperty(key)));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Invalid duration of {} in {}", key, file);
+                }
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Writes the durations of the scenarios of an execution.
+     *
+     * @param file      destination file
+     * @param durations duration in ms of each scenario
+     * @throws IOException exception
+     */
+    static void saveHistory(File file, Map<String, Double> durations) throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Double> entry : durations.entrySet()) {
+            properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, "Scenario durations in ms, used by -D" + SHARD_PROPERTY);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.cucumber.testng;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the *TESTNG.xml and *JUNIT.xml reports written by the {@link CucumberReporter} of each shard
+ * (-Dgingerspec.shard=i/N) into a single suite report.
+ * <p>
+ * Usage: ShardReportMerger &lt;output folder&gt; &lt;report folder or file&gt;... The folders are searched
+ * recursively, and the result is written to MERGEDTESTNG.xml and MERGEDJUNIT.xml in the output folder.
+ * <p>
+ * The reports of a shard are named after the runner class, so shards that run in the same working directory
+ * must each be given a -DTESTSUFFIX (i.e. -DTESTSUFFIX=shard1), to write them to target/executions/TESTSUFFIX/.
+ * Otherwise they overwrite each other's reports.
+ */
+public final class ShardReportMerger {
+
+    public static final String MERGED_PREFIX = "MERGED";
+
+    private static final String TESTNG_SUFFIX = "TESTNG.xml";
+
+    private static final String JUNIT_SUFFIX = "JUNIT.xml";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardReportMerger.class.getCanonicalName());
+
+    private ShardReportMerger() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ShardReportMerger <output folder> <report folder or file>...");
+            System.exit(1);
+        }
+        File output = new File(args[0]);
+        if (!output.isDirectory() && !output.mkdirs()) {
+            throw new IOException("Could not create " + output);
+        }
+
+        List<File> testNG = new ArrayList<>();
+        List<File> jUnit = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            collect(new File(args[i]), testNG, jUnit);
+        }
+
+        mergeTestNG(testNG, new File(output, MERGED_PREFIX + TESTNG_SUFFIX));
+        mergeJUnit(jUnit, new File(output, MERGED_PREFIX + JUNIT_SUFFIX));
+        LOGGER.info("Merged {} TestNG and {} JUnit reports into {}", testNG.size(), jUnit.size(), output);
+    }
+
+    /**
+     * Merges TestNG reports: every class of every report is added to a single suite and test.
+     *
+     * @param reports reports to merge
+     * @param output  destination file
+     * @throws IOException                  exception
+     * @throws SAXException                 exception
+     * @throws ParserConfigurationException exception
+     * @throws TransformerException         exception
+     */
+    public static void mergeTestNG(List<File> reports, File output)
+            throws IOException, SAXException, ParserConfigurationException, TransformerException {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Document document = builder.newDocument();
+        Element results = document.createElement("testng-results");
+        Element suite = document.createElement("suite");
+        Element test = document.createElement("test");
+        document.appendChild(results);
+        results.appendChild(suite);
+        suite.appendChild(test);
+
+        long total = 0;
+        long passed = 0;
+        long failed = 0;
+        long skipped = 0;
+        double duration = 0;
+        for (File report : reports) {
+            Element root = builder.parse(report).getDocumentElement();
+            total += longAttribute(root, "total");
+            passed += longAttribute(root, "passed");
+            failed += longAttribute(root, "failed");
+            skipped += longAttribute(root, "skipped");
+
+            NodeList suites = root.getElementsByTagName("suite");
+            for (int i = 0; i < suites.getLength(); i++) {
+                duration += doubleAttribute((Element) suites.item(i), "duration-ms");
+            }
+            NodeList classes = root.getElementsByTagName("class");
+            for (int i = 0; i < classes.getLength(); i++) {
+                test.appendChild(document.importNode(classes.item(i), true));
+            }
+        }
+
+        results.setAttribute("total", String.valueOf(total));
+        results.setAttribute("passed", String.valueOf(passed));
+        results.setAttribute("failed", String.valueOf(failed));
+        results.setAttribute("skipped", String.valueOf(skipped));
+        suite.setAttribute("name", CucumberReporter.class.getName());
+        suite.setAttribute("duration-ms", String.valueOf(duration));
+        test.setAttribute("name", CucumberReporter.class.getName());
+        test.setAttribute("duration-ms", String.valueOf(duration));
+        write(document, output);
+    }
+
+    /**
+     * Merges JUnit reports: every testsuite of every report is added to a single testsuites element.
+     *
+     * @param reports reports to merge
+     * @param output  destination file
+     * @throws IOException                  exception
+     * @throws SAXException                 exception
+     * @throws ParserConfigurationException exception
+     * @throws TransformerException         exception
+     */
+    public static void mergeJUnit(List<File> reports, File output)
+            throws IOException, SAXException, ParserConfigurationException, TransformerException {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Document document = builder.newDocument();
+        Element testSuites = document.createElement("testsuites");
+        document.appendChild(testSuites);
+
+        long tests = 0;
+        long failures = 0;
+        long skipped = 0;
+        double time = 0;
+        for (File report : reports) {
+            NodeList suites = builder.parse(report).getDocumentElement().getElementsByTagName("testsuite");
+            for (int i = 0; i < suites.getLength(); i++) {
+                Element suite = (Element) suites.item(i);
+                tests += longAttribute(suite, "tests");
+                failures += longAttribute(suite, "failures");
+                skipped += longAttribute(suite, "skipped");
+                time += doubleAttribute(suite, "time");
+                testSuites.appendChild(document.importNode(suite, true));
+            }
+        }
+
+        testSuites.setAttribute("tests", String.valueOf(tests));
+        testSuites.setAttribute("failures", String.valueOf(failures));
+        testSuites.setAttribute("skipped", String.valueOf(skipped));
+        testSuites.setAttribute("time", String.valueOf(time));
+        write(document, output);
+    }
+
+    private static void collect(File file, List<File> testNG, List<File> jUnit) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collect(child, testNG, jUnit);
+                }
+            }
+        } else if (!file.getName().startsWith(MERGED_PREFIX)) {
+            if (file.getName().endsWith(TESTNG_SUFFIX)) {
+                testNG.add(file);
+            } else if (file.getName().endsWith(JUNIT_SUFFIX)) {
+                jUnit.add(file);
+            }
+        }
+    }
+
+    private static long longAttribute(Element element, String name) {
+        return (long) doubleAttribute(element, name);
+    }
+
+    private static double doubleAttribute(Element element, String name) {
+        String value = element.getAttribute(name);
+        if (value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid {} attribute: {}", name, value);
+            return 0;
+        }
+    }
+
+    private static void write(Document document, File output) throws TransformerException {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.transform(new DOMSource(document), new StreamResult(output));
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.cucumber.testng;
+
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the scenarios of a list of features to worker JVMs (-Dgingerspec.coordinator=PORT), that pull
+ * the next one as soon as they finish the previous one (see {@link WorkQueueWorker}).
+ * <p>
+ * Scenarios are identified by feature path and line, and served longest first when there are durations of
+ * previous executions. The events of each scenario are sent back by the worker and replayed here, in the
+ * original order, so this JVM writes the only TESTNG/JUNIT reports. If a worker disconnects in the middle of
+ * a scenario, it is served again once. The scenarios not finished -Dgingerspec.coordinator.timeout seconds
+ * after the coordinator starts (7200 by default), i.e. because no worker connected, are errors.
+ * <p>
+ * Workers send serialized objects, so the socket listens only in the loopback interface unless another
+ * address is given with -Dgingerspec.coordinator.bind, and only the classes of the events are accepted
+ * from the stream (see {@link ScenarioEvent#isTransferable(Class)}).
+ */
+final class WorkQueueCoordinator {
+
+    public static final String PORT_PROPERTY = "gingerspec.coordinator";
+
+    public static final String BIND_PROPERTY = "gingerspec.coordinator.bind";
+
+    public static final String TIMEOUT_PROPERTY = "gingerspec.coordinator.timeout";
+
+    public static final long DEFAULT_TIMEOUT_SECONDS = 7200;
+
+    static final String NO_MORE_WORK = "";
+
+    private static final int MAX_ATTEMPTS = 2;
+
+    private static final long POLL_MS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
+
+    private final RuntimeOptions runtimeOptions;
+
+    private final int port;
+
+    private final LinkedBlockingDeque<String> queue = new LinkedBlockingDeque<>();
+
+    private final Map<String, CompletableFuture<List<ScenarioEvent>>> results = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicInteger workerCount = new AtomicInteger();
+
+    private final CompletableFuture<Integer> localPort = new CompletableFuture<>();
+
+    /**
+     * @param runtimeOptions runtime options with the formatters
+     * @param port           port to listen to
+     */
+    WorkQueueCoordinator(RuntimeOptions runtimeOptions, int port) {
+        this.runtimeOptions = runtimeOptions;
+        this.port = port;
+    }
+
+    /**
+     * Serves every scenario of the features to the workers and writes the reports.
+     *
+     * @param features features to run
+     * @param history  durations of previous executions, in ms
+     * @return the errors sent by the workers
+     * @throws IOException if the socket can not be opened
+     */
+    List<Throwable> run(List<CucumberFeature> features, Map<String, Double> history) throws IOException {
+        List<List<CompletableFuture<List<ScenarioEvent>>>> scheduled = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (CucumberFeature feature : features) {
+            List<CompletableFuture<List<ScenarioEvent>>> units = new ArrayList<>();
+            for (CucumberTagStatement statement : feature.getFeatureElements()) {
+                String id = ScenarioShard.key(feature.getPath(), statement.getGherkinModel().getLine());
+                CompletableFuture<List<ScenarioEvent>> unit = new CompletableFuture<>();
+                results.put(id, unit);
+                attempts.put(id, new AtomicInteger());
+                units.add(unit);
+                ids.add(id);
+            }
+            scheduled.add(units);
+        }
+        queue.addAll(longestFirst(ids, history));
+        pending.set(ids.size());
+
+        String bind = System.getProperty(BIND_PROPERTY);
+        InetAddress address = bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+        long timeout = Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_SECONDS);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gingerspec-coordinator-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ServerSocket server = new ServerSocket(port, 50, address)) {
+            Thread acceptor = new Thread(() -> accept(server), "gingerspec-coordinator");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            timer.schedule(() -> expire(timeout), timeout, TimeUnit.SECONDS);
+
+            logger.info("Serving {} scenarios on {}:{}", ids.size(), address.getHostAddress(), server.getLocalPort());
+            localPort.complete(server.getLocalPort());
+            errors.addAll(ParallelRuntime.report(runtimeOptions, features, scheduled));
+        } catch (IOException e) {
+            localPort.completeExceptionally(e);
+            throw e;
+        } finally {
+            timer.shutdownNow();
+        }
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * @return the port the coordinator listens to, once it is listening (i.e. when started on port 0)
+     * @throws InterruptedException exception
+     * @throws ExecutionException   if the socket could not be opened
+     */
+    int awaitLocalPort() throws InterruptedException, ExecutionException {
+        return localPort.get();
+    }
+
+    private void expire(long timeout) {
+        results.forEach((id, unit) -> {
+            if (unit.completeExceptionally(new CucumberException("Scenario " + id + " was not finished by any worker in "
+                    + timeout + " s"))) {
+                logger.error("Scenario {} was not finished by any worker in {} s", id, timeout);
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    private static List<String> longestFirst(List<String> ids, Map<String, Double> history) {
+        List<String> sorted = new ArrayList<>(ids);
+        if (!Collections.disjoint(history.keySet(), ids)) {
+            sorted.sort(Comparator.comparingDouble((String id) -> history.getOrDefault(id, 0.0)).reversed());
+        }
+        return sorted;
+    }
+
+    private void accept(ServerSocket server) {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread handler = new Thread(() -> serve(socket), "gingerspec-coordinator-" + workerCount.incrementAndGet());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (SocketException e) {
+                // closed when every scenario has finished
+            } catch (IOException e) {
+                logger.error("Error accepting a worker: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Conversation with a worker: it sends the id and events of the scenario it has just finished (or an
+     * empty id the first time), and gets the id of the next one, or an empty id when there is no more work.
+     */
+    @SuppressWarnings("unchecked")
+    private void serve(Socket socket) {
+        String inFlight = null;
+        try (Socket s = socket;
+             ObjectOutputStream out = new ObjectOutputStream(s.getOutputStream())) {
+            out.flush();
+            ObjectInputStream in = new ScenarioEvent.EventInputStream(s.getInputStream());
+            logger.info("Worker connected from {}", s.getRemoteSocketAddress());
+
+            while (true) {
+                String finished = in.readUTF();
+                if (!finished.isEmpty()) {
+                    List<ScenarioEvent> events = (List<ScenarioEvent>) in.readObject();
+                    errors.addAll((List<Throwable>) in.readObject());
+                    complete(finished, events);
+                    inFlight = null;
+                }
+
+                String next = next();
+                out.writeUTF(next);
+                out.flush();
+                if (NO_MORE_WORK.equals(next)) {
+                    return;
+                }
+                inFlight = next;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            logger.warn("Worker {} disconnected: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (inFlight != null) {
+            retry(inFlight);
+        }
+    }
+
+    private String next() throws InterruptedException {
+        while (pending.get() > 0) {
+            String id = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            if (id != null) {
+                return id;
+            }
+        }
+        return NO_MORE_WORK;
+    }
+
+    private void complete(String id, List<ScenarioEvent> events) {
+        CompletableFuture<List<ScenarioEvent>> unit = results.get(id);
+        if (unit == null) {
+            logger.error("A worker sent the result of an unknown scenario: {}", id);
+        } else if (unit.complete(events)) {
+            pending.decrementAndGet();
+        }
+    }
+
+    private void retry(String id) {
+        if (attempts.get(id).incrementAndGet() < MAX_ATTEMPTS) {
+            logger.warn("Scenario {} will be run again", id);
+            queue.addFirst(id);
+        } else {
+            errors.add(new CucumberException("Scenario " + id + " was not finished by any worker"));
+            complete(id, Collections.emptyList());
+        }
+    }
+}
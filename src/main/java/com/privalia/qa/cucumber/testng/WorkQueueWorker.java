@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.cucumber.testng;
+
+import com.privalia.qa.utils.VariableStore;
+import cucumber.runtime.ClassFinder;
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs the scenarios served by a {@link WorkQueueCoordinator} (-Dgingerspec.worker=HOST:PORT), pulling the next
+ * one as soon as the previous one has finished, and sends back its events. The reports are written only by the
+ * coordinator.
+ * <p>
+ * The worker must load the same features as the coordinator. With -Dgingerspec.parallel=N, it opens N connections,
+ * each one with its own thread and world.
+ */
+final class WorkQueueWorker {
+
+    public static final String COORDINATOR_PROPERTY = "gingerspec.worker";
+
+    private static final int CONNECT_ATTEMPTS = 60;
+
+    private static final long CONNECT_RETRY_MS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
+
+    private final ResourceLoader resourceLoader;
+
+    private final ClassFinder classFinder;
+
+    private final ClassLoader classLoader;
+
+    private final RuntimeOptions runtimeOptions;
+
+    private final Collection<Class<? extends ICucumberFormatter>> liveFormatters;
+
+    private final String host;
+
+    private final int port;
+
+    private final Map<String, String> threadVariables;
+
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param resourceLoader resource loader of the features
+     * @param classFinder    class finder of the glue
+     * @param classLoader    class loader
+     * @param runtimeOptions runtime options
+     * @param liveFormatters formatters instantiated in every connection
+     * @param coordinator    address of the coordinator, as HOST:PORT
+     */
+    WorkQueueWorker(ResourceLoader resourceLoader, ClassFinder classFinder, ClassLoader classLoader, RuntimeOptions runtimeOptions,
+                    Collection<Class<? extends ICucumberFormatter>> liveFormatters, String coordinator) {
+        this.resourceLoader = resourceLoader;
+        this.classFinder = classFinder;
+        this.classLoader = classLoader;
+        this.runtimeOptions = runtimeOptions;
+        this.liveFormatters = liveFormatters;
+        int separator = coordinator.lastIndexOf(':');
+        if (separator == -1) {
+            throw new IllegalArgumentException("Invalid coordinator " + coordinator + ", expected HOST:PORT");
+        }
+        this.host = coordinator.substring(0, separator);
+        this.port = Integer.parseInt(coordinator.substring(separator + 1));
+        this.threadVariables = VariableStore.snapshot(VariableStore.Scope.THREAD);
+    }
+
+    /**
+     * Runs scenarios until the coordinator has no more work.
+     *
+     * @param features features to run, the same ones as in the coordinator
+     * @param threads  number of connections
+     * @return errors communicating with the coordinator. The errors of the scenarios are reported by the coordinator
+     * @throws InterruptedException exception
+     */
+    List<Throwable> run(List<CucumberFeature> features, int threads) throws InterruptedException {
+        Map<String, CucumberFeature> featureById = new HashMap<>();
+        Map<String, CucumberTagStatement> statementById = new HashMap<>();
+        for (CucumberFeature feature : features) {
+            for (CucumberTagStatement statement : feature.getFeatureElements()) {
+                String id = ScenarioShard.key(feature.getPath(), statement.getGherkinModel().getLine());
+                featureById.put(id, feature);
+                statementById.put(id, statement);
+            }
+        }
+
+        List<Thread> connections = new ArrayList<>();
+        for (int i = 1; i <= threads; i++) {
+            Thread connection = new Thread(() -> work(featureById, statementById), "gingerspec-worker-" + i);
+            connection.setContextClassLoader(classLoader);
+            connection.start();
+            connections.add(connection);
+        }
+        for (Thread connection : connections) {
+            connection.join();
+        }
+        return new ArrayList<>(errors);
+    }
+
+    private void work(Map<String, CucumberFeature> featureById, Map<String, CucumberTagStatement> statementById) {
+        try (Socket socket = connect();
+             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+            ScenarioExecutor executor = new ScenarioExecutor(resourceLoader, classFinder, classLoader, runtimeOptions,
+                    liveFormatters, threadVariables);
+
+            out.writeUTF(WorkQueueCoordinator.NO_MORE_WORK);
+            out.flush();
+            String id;
+            while (!WorkQueueCoordinator.NO_MORE_WORK.equals(id = in.readUTF())) {
+                ArrayList<ScenarioEvent> events = new ArrayList<>();
+                ArrayList<Throwable> scenarioErrors = new ArrayList<>();
+                CucumberTagStatement statement = statementById.get(id);
+                if (statement == null) {
+                    scenarioErrors.add(new CucumberException("Scenario " + id + " is not in the features of the worker"));
+                } else {
+                    for (ScenarioEvent event : executor.execute(featureById.get(id), statement)) {
+                        events.add(event.portable());
+                    }
+                    for (Throwable error : executor.getNewErrors()) {
+                        scenarioErrors.add(ScenarioEvent.portable(error));
+                    }
+                }
+
+                // reset before the message, not after it: the coordinator would close the socket with the reset
+                // marker unread after the last one, and the connection would be reset
+                out.reset();
+                out.writeUTF(id);
+                out.writeObject(events);
+                out.writeObject(scenarioErrors);
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            logger.error("Error talking to the coordinator {}:{}", host, port, e);
+            errors.add(e);
+        }
+    }
+
+    private Socket connect() throws IOException, InterruptedException {
+        int attempt = 1;
+        while (true) {
+            try {
+                return new Socket(host, port);
+            } catch (ConnectException e) {
+                if (attempt++ >= CONNECT_ATTEMPTS) {
+                    throw e;
+                }
+                Thread.sleep(CONNECT_RETRY_MS);
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.cucumber.testng;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes an xml report to disk as it is produced, instead of keeping the whole document in memory.
+ * <p>
+ * The root elements (i.e. testng-results, suite and test) are written first with room for their attributes,
+ * because counts and totals are only known at the end: {@link #close(Map[])} writes them in that room, or
+ * rewrites the header if they do not fit. The output is the same as the one of a DOM {@link
+ * javax.xml.transform.Transformer}: attributes in alphabetical order, line breaks and tabs in attribute values
+ * escaped, and CDATA sections split around "]]&gt;". The JDK StAX writer does neither of the last two, so it is
+ * not used.
+ */
+final class XmlReportWriter {
+
+    static final int RESERVED_BYTES = 512;
+
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
+    private final File file;
+
+    private final String[] roots;
+
+    private final long[] rootOffsets;
+
+    private final long headerLength;
+
+    private final Writer writer;
+
+    private final Deque<String> open = new ArrayDeque<>();
+
+    private Map<String, String> pendingAttributes;
+
+    private boolean childElements;
+
+    /**
+     * Creates the file and writes the root elements.
+     *
+     * @param file  report file
+     * @param roots names of the root elements, outermost first
+     * @throws IOException exception
+     */
+    XmlReportWriter(File file, String... roots) throws IOException {
+        this.file = file;
+        this.roots = roots.clone();
+        this.rootOffsets = new long[roots.length];
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(DECLARATION.getBytes(StandardCharsets.UTF_8));
+        byte[] room = new byte[RESERVED_BYTES];
+        Arrays.fill(room, (byte) ' ');
+        for (int i = 0; i < roots.length; i++) {
+            header.write(("\n<" + roots[i]).getBytes(StandardCharsets.UTF_8));
+            rootOffsets[i] = header.size();
+            header.write(room);
+            header.write('>');
+        }
+        headerLength = header.size();
+
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            header.writeTo(stream);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Starts an element inside the current one. Its attributes can be added until its content is written.
+     *
+     * @param name element name
+     * @return this writer
+     * @throws IOException exception
+     */
+    XmlReportWriter startElement(String name) throws IOException {
+        closeStartTag();
+        writer.write('\n');
+        writer.write('<');
+        writer.write(name);
+        open.push(name);
+        pendingAttributes = new TreeMap<>();
+        childElements = false;
+        return this;
+    }
+
+    /**
+     * Sets an attribute of the element that has just been started.
+     *
+     * @param name  attribute name
+     * @param value attribute value
+     * @return this writer
+     */
+    XmlReportWriter attribute(String name, String value) {
+        if (pendingAttributes == null) {
+            throw new IllegalStateException("Attribute " + name + " set after the content of <" + open.peek() + ">");
+        }
+        pendingAttributes.put(name, value);
+        return this;
+    }
+
+    /**
+     * Writes a CDATA section in the current element.
+     *
+     * @param text text
+     * @return this writer
+     * @throws IOException exception
+     */
+    XmlReportWriter cdata(String text) throws IOException {
+        closeStartTag();
+        writer.write("<![CDATA[");
+        writer.write(text.replace("]]>", "]]]]><![CDATA[>"));
+        writer.write("]]>");
+        return this;
+    }
+
+    /**
+     * Ends the current element.
+     *
+     * @return this writer
+     * @throws IOException exception
+     */
+    XmlReportWriter endElement() throws IOException {
+        String name = open.pop();
+        if (pendingAttributes != null) {
+            writeAttributes(writer, pendingAttributes);
+            pendingAttributes = null;
+            writer.write("/>");
+        } else {
+            if (childElements) {
+                writer.write('\n');
+            }
+            writer.write("</");
+            writer.write(name);
+            writer.write('>');
+        }
+        childElements = true;
+        return this;
+    }
+
+    /**
+     * Ends every open element and the root elements, and writes the attributes of the root elements.
+     *
+     * @param rootAttributes attributes of each root element, outermost first
+     * @throws IOException exception
+     */
+    @SafeVarargs
+    final void close(Map<String, String>... rootAttributes) throws IOException {
+        try {
+            while (!open.isEmpty()) {
+                endElement();
+            }
+            for (int i = roots.length - 1; i >= 0; i--) {
+                writer.write("\n</" + roots[i] + ">");
+            }
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+
+        byte[][] attributes = new byte[roots.length][];
+        boolean fits = true;
+        for (int i = 0; i < roots.length; i++) {
+            StringBuilder text = new StringBuilder();
+            writeAttributes(text, i < rootAttributes.length ? new TreeMap<>(rootAttributes[i]) : new TreeMap<>());
+            attributes[i] = text.toString().getBytes(StandardCharsets.UTF_8);
+            fits &= attributes[i].length <= RESERVED_BYTES;
+        }
+
+        if (fits) {
+            try (RandomAccessFile report = new RandomAccessFile(file, "rw")) {
+                for (int i = 0; i < roots.length; i++) {
+                    report.seek(rootOffsets[i]);
+                    report.write(attributes[i]);
+                }
+            }
+        } else {
+            rewriteHeader(attributes);
+        }
+    }
+
+    private void rewriteHeader(byte[][] attributes) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp);
+             FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            out.write(DECLARATION.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < roots.length; i++) {
+                out.write(("\n<" + roots[i]).getBytes(StandardCharsets.UTF_8));
+                out.write(attributes[i]);
+                out.write('>');
+            }
+            FileChannel channel = out.getChannel();
+            long position = headerLength;
+            long size = in.size();
+            while (position < size) {
+                position += in.transferTo(position, size - position, channel);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void closeStartTag() throws IOException {
+        if (pendingAttributes != null) {
+            writeAttributes(writer, pendingAttributes);
+            pendingAttributes = null;
+            writer.write('>');
+        }
+    }
+
+    private static void writeAttributes(Appendable out, Map<String, String> attributes) throws IOException {
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            out.append(' ').append(attribute.getKey()).append("=\"");
+            String value = String.valueOf(attribute.getValue());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '&':
+                        out.append("&amp;");
+                        break;
+                    case '<':
+                        out.append("&lt;");
+                        break;
+                    case '>':
+                        out.append("&gt;");
+                        break;
+                    case '"':
+                        out.append("&quot;");
+                        break;
+                    case '\r':
+                        out.append("&#13;");
+                        break;
+                    case '\n':
+                        out.append("&#10;");
+                        break;
+                    case '\t':
+                        out.append("&#9;");
+                        break;
+                    default:
+                        out.append(c);
+                }
+            }
+            out.append('"');
+        }
+    }
+}
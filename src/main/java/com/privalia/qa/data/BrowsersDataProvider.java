@@ -17,20 +17,13 @@
 package com.privalia.qa.data;
 
 import com.google.common.collect.Lists;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.ITestContext;
 import org.testng.annotations.DataProvider;
 
-import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 public final class BrowsersDataProvider {
@@ -124,6 +117,19 @@ public final class BrowsersDataProvider {
         return buildIterator(browsers);
     }
 
+    /**
+     * Get the number of slots of a browser in a selenium grid, free or busy.
+     *
+     * @param browser browser and version, as given by the data providers (i.e. chrome_70)
+     * @return number of slots, 0 if the grid is not available
+     */
+    public static int gridCapacity(String browser) {
+        String grid = System.getProperty("SELENIUM_GRID");
+        GridInventory inventory = grid == null ? null : GridInventory.of(grid);
+        GridInventory.Capacity capacity = inventory == null ? null : inventory.capacity().get(browser);
+        return capacity == null ? 0 : capacity.getTotal();
+    }
+
     /**
      * Build an String Iterator from String List.
      *
@@ -147,71 +153,16 @@ public final class BrowsersDataProvider {
 
     /**
      * Return available grid browsers applying filter defined by Map content.
-     * Filter -> Regexp as: "filter.key()=filter.value(key)[,|}]"
+     * Filter -> Regexp that the value of the capability filter.key() must match: filter.value(key)
      *
      * @param filter browser selected for test execution
      * @return browsers list
      */
     private static List<String> gridBrowsers(Map<String, String> filter) {
-
-        ArrayList<String> response = new ArrayList<String>();
         LOGGER.debug("Trying to get a list of Selenium-available browsers");
 
         String grid = System.getProperty("SELENIUM_GRID");
-
-        if (grid != null) {
-            grid = "http://" + grid + "/grid/console";
-            Document doc;
-            try {
-                doc = Jsoup.connect(grid).timeout(DEFAULT_TIMEOUT).get();
-            } catch (IOException e) {
-                LOGGER.debug("Exception on connecting to Selenium grid: {}", e.getMessage());
-                return response;
-            }
-
-            Elements slaves = (Elements) doc.select("div.proxy");
-
-            for (Element slave : slaves) {
-                String slaveStatus = slave.select("p.proxyname").first().text();
-                if (!slaveStatus.contains("Connection") && !slaveStatus.contains("Conexión")) {
-                    Integer iBusy = 0;
-                    Elements browserList = slave.select("div.content_detail").select("*[title]");
-                    Elements busyBrowserList = slave.select("div.content_detail").select("p > .busy");
-                    for (Element browserDetails : browserList) {
-                        if (browserDetails.attr("title").startsWith("{")) {
-                            boolean filterCheck = true;
-                            for (Map.Entry<String, String> f : filter.entrySet()) {
-                                String stringFilter = f.getKey() + "=" + f.getValue() + "[,|}]";
-                                Pattern patFilter = Pattern.compile(stringFilter);
-                                Matcher mFilter = patFilter.matcher(browserDetails.attr("title"));
-                                filterCheck = filterCheck & mFilter.find();
-                            }
-                            if (filterCheck) {
-                                Pattern pat = Pattern.compile("browserName=(.*?),.*?(version=(.*?)[,|}])");
-                                Matcher m = pat.matcher(browserDetails.attr("title"));
-                                while (m.find()) {
-                                    response.add(m.group(1) + "_" + m.group(3));
-                                }
-                            }
-                        } else {
-                            String version = busyBrowserList.get(iBusy).parent().text();
-                            String browser = busyBrowserList.get(iBusy).text();
-                            version = version.substring(2);
-                            version = version.replace(browser, "");
-                            String browserSrc = busyBrowserList.get(iBusy).select("img").attr("src");
-                            if (!browserSrc.equals("")) {
-                                browser = browserSrc.substring(browserSrc.lastIndexOf('/') + 1, browserSrc.length()
-                                        - DEFAULT_LESS_LENGTH);
-                            }
-                            response.add(browser + "_" + version);
-                            iBusy++;
-                        }
-                    }
-                }
-            }
-        }
-        // Sort response
-        Collections.sort(response);
-        return response;
+        GridInventory inventory = grid == null ? null : GridInventory.of(grid);
+        return inventory == null ? new ArrayList<String>() : inventory.browsers(filter);
     }
 }
\ No newline at end of file
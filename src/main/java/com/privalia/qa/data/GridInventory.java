@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The browser slots of a Selenium grid, free or busy.
+ * <p>
+ * The inventory is read from the JSON status of the grid (/status), in a single request. Grids that do not
+ * have it (i.e. Selenium 3 hubs, whose /grid/api endpoints do not list the nodes) are read from the HTML
+ * console (/grid/console), as before. Each grid is read again when its inventory is older than
+ * -Dgingerspec.grid.ttl seconds (60 by default), so the data providers of every test class share it.
+ */
+public final class GridInventory {
+
+    public static final String TTL_PROPERTY = "gingerspec.grid.ttl";
+
+    public static final long DEFAULT_TTL_SECONDS = 60;
+
+    public static final int DEFAULT_TIMEOUT = 20000;
+
+    public static final int DEFAULT_LESS_LENGTH = 4;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GridInventory.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Pattern BROWSER = Pattern.compile("browserName=(.*?),.*?(version=(.*?)[,|}])");
+
+    private static final Map<String, GridInventory> INVENTORIES = new ConcurrentHashMap<>();
+
+    private final List<Slot> slots;
+
+    private final long readAt;
+
+    /**
+     * A browser slot of a node.
+     */
+    public static final class Slot {
+
+        private final String browser;
+
+        private final String version;
+
+        private final boolean busy;
+
+        private final Map<String, String> capabilities;
+
+        private final String description;
+
+        Slot(String browser, String version, boolean busy, Map<String, String> capabilities, String description) {
+            this.browser = browser;
+            this.version = version;
+            this.busy = busy;
+            this.capabilities = capabilities;
+            this.description = description;
+        }
+
+        public String getBrowser() {
+            return browser;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public boolean isBusy() {
+            return busy;
+        }
+
+        /**
+         * @return browser and version, as given by the data providers (i.e. chrome_70)
+         */
+        public String getKey() {
+            return browser + "_" + version;
+        }
+
+        /**
+         * @param values       regular expressions that the capabilities must match, by capability name
+         * @param descriptions the same filter, to find in the description of the slots of the console
+         * @return whether the slot has those capabilities
+         */
+        boolean matches(Map<String, Pattern> values, Map<String, Pattern> descriptions) {
+            if (capabilities != null) {
+                for (Map.Entry<String, Pattern> f : values.entrySet()) {
+                    String value = capabilities.get(f.getKey());
+                    if (value == null || !f.getValue().matcher(value).matches()) {
+                        return false;
+                    }
+                }
+            } else if (description != null) {
+                for (Pattern pattern : descriptions.values()) {
+                    if (!pattern.matcher(description).find()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Free and busy slots of a browser.
+     */
+    public static final class Capacity {
+
+        private int free;
+
+        private int busy;
+
+        public int getFree() {
+            return free;
+        }
+
+        public int getBusy() {
+            return busy;
+        }
+
+        public int getTotal() {
+            return free + busy;
+        }
+
+        @Override
+        public String toString() {
+            return "Capacity{free=" + free + ", busy=" + busy + "}";
+        }
+    }
+
+    GridInventory(List<Slot> slots) {
+        this.slots = Collections.unmodifiableList(slots);
+        this.readAt = System.nanoTime();
+    }
+
+    /**
+     * Returns the inventory of a grid, read again if it is older than the TTL.
+     *
+     * @param grid host and port of the grid (i.e. the value of SELENIUM_GRID)
+     * @return the inventory, or null if the grid is not available
+     */
+    public static GridInventory of(String grid) {
+        long ttl = TimeUnit.SECONDS.toNanos(Long.getLong(TTL_PROPERTY, DEFAULT_TTL_SECONDS));
+        GridInventory inventory = INVENTORIES.get(grid);
+        if (inventory != null && System.nanoTime() - inventory.readAt < ttl) {
+            return inventory;
+        }
+
+        inventory = read(grid);
+        if (inventory != null) {
+            INVENTORIES.put(grid, inventory);
+        }
+        return inventory;
+    }
+
+    private static GridInventory read(String grid) {
+        long start = System.nanoTime();
+        GridInventory inventory;
+        try {
+            String status = Jsoup.connect("http://" + grid + "/status").ignoreContentType(true)
+                    .timeout(DEFAULT_TIMEOUT).execute().body();
+            inventory = fromStatus(MAPPER.readTree(status));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("No JSON status in the Selenium grid ({}), reading its console", e.getMessage());
+            inventory = null;
+        }
+
+        if (inventory == null) {
+            try {
+                inventory = fromConsole(Jsoup.connect("http://" + grid + "/grid/console").timeout(DEFAULT_TIMEOUT).get());
+            } catch (IOException e) {
+                LOGGER.debug("Exception on connecting to Selenium grid: {}", e.getMessage());
+                return null;
+            }
+        }
+        LOGGER.debug("Read {} slots of the Selenium grid in {} ms", inventory.slots.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return inventory;
+    }
+
+    /**
+     * Reads the slots of the nodes that are up from the status of a Selenium 4 grid.
+     *
+     * @param status JSON status
+     * @return the inventory, or null if it is not the status of a grid
+     */
+    static GridInventory fromStatus(JsonNode status) {
+        JsonNode nodes = status.path("value").path("nodes");
+        if (!nodes.isArray()) {
+            return null;
+        }
+        List<Slot> slots = new ArrayList<>();
+        for (JsonNode node : nodes) {
+            if (!"UP".equalsIgnoreCase(node.path("availability").asText("UP"))) {
+                continue;
+            }
+            for (JsonNode slot : node.path("slots")) {
+                Map<String, String> capabilities = new HashMap<>();
+                for (Iterator<Map.Entry<String, JsonNode>> it = slot.path("stereotype").fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> capability = it.next();
+                    if (capability.getValue().isValueNode()) {
+                        capabilities.put(capability.getKey(), capability.getValue().asText());
+                    }
+                }
+                String version = capabilities.containsKey("browserVersion") ? capabilities.get("browserVersion")
+                        : capabilities.getOrDefault("version", "");
+                capabilities.putIfAbsent("version", version);
+                boolean busy = !slot.path("session").isMissingNode() && !slot.path("session").isNull();
+                slots.add(new Slot(capabilities.get("browserName"), version, busy, capabilities, null));
+            }
+        }
+        return new GridInventory(slots);
+    }
+
+    /**
+     * Reads the slots of the nodes that are connected from the HTML console of a Selenium 3 grid.
+     *
+     * @param doc console
+     * @return the inventory
+     */
+    static GridInventory fromConsole(Document doc) {
+        List<Slot> slots = new ArrayList<>();
+        Elements proxies = doc.select("div.proxy");
+
+        for (Element proxy : proxies) {
+            String proxyStatus = proxy.select("p.proxyname").first().text();
+            if (proxyStatus.contains("Connection") || proxyStatus.contains("Conexión")) {
+                continue;
+            }
+            int iBusy = 0;
+            Elements browserList = proxy.select("div.content_detail").select("*[title]");
+            Elements busyBrowserList = proxy.select("div.content_detail").select("p > .busy");
+            for (Element browserDetails : browserList) {
+                String title = browserDetails.attr("title");
+                if (title.startsWith("{")) {
+                    Matcher m = BROWSER.matcher(title);
+                    while (m.find()) {
+                        slots.add(new Slot(m.group(1), m.group(3), false, null, title));
+                    }
+                } else {
+                    String version = busyBrowserList.get(iBusy).parent().text();
+                    String browser = busyBrowserList.get(iBusy).text();
+                    version = version.substring(2);
+                    version = version.replace(browser, "");
+                    String browserSrc = busyBrowserList.get(iBusy).select("img").attr("src");
+                    if (!browserSrc.equals("")) {
+                        browser = browserSrc.substring(browserSrc.lastIndexOf('/') + 1, browserSrc.length()
+                                - DEFAULT_LESS_LENGTH);
+                    }
+                    slots.add(new Slot(browser, version, true, null, null));
+                    iBusy++;
+                }
+            }
+        }
+        return new GridInventory(slots);
+    }
+
+    public List<Slot> getSlots() {
+        return slots;
+    }
+
+    /**
+     * Returns the browsers of the slots that have some capabilities.
+     *
+     * @param filter regular expressions that the capabilities must match, by capability name
+     * @return browser and version of each slot (i.e. chrome_70), sorted
+     */
+    public List<String> browsers(Map<String, String> filter) {
+        Map<String, Pattern> values = new HashMap<>();
+        Map<String, Pattern> descriptions = new HashMap<>();
+        for (Map.Entry<String, String> f : filter.entrySet()) {
+            values.put(f.getKey(), Pattern.compile(f.getValue()));
+            // console: "{browserName=chrome, platformName=Android, version=70}"
+            descriptions.put(f.getKey(), Pattern.compile(f.getKey() + "=" + f.getValue() + "[,|}]"));
+        }
+
+        List<String> browsers = new ArrayList<>();
+        for (Slot slot : slots) {
+            if (slot.matches(values, descriptions)) {
+                browsers.add(slot.getKey());
+            }
+        }
+        Collections.sort(browsers);
+        return browsers;
+    }
+
+    /**
+     * @return free and busy slots of each browser and version (i.e. chrome_70)
+     */
+    public Map<String, Capacity> capacity() {
+        Map<String, Capacity> capacity = new TreeMap<>();
+        for (Slot slot : slots) {
+            Capacity browser = capacity.computeIfAbsent(slot.getKey(), k -> new Capacity());
+            if (slot.isBusy()) {
+                browser.busy++;
+            } else {
+                browser.free++;
+            }
+        }
+        return capacity;
+    }
+}
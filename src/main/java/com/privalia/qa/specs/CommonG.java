@@ -19,6 +19,8 @@ package com.privalia.qa.specs;
 import com.datastax.driver.core.ColumnDefinitions;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
@@ -37,7 +39,6 @@ import com.privalia.qa.utils.*;
 import cucumber.api.DataTable;
 import io.restassured.specification.RequestSpecification;
 import org.apache.commons.collections.IteratorUtils;
-import org.apache.commons.io.FileUtils;
 import org.assertj.core.api.Assertions;
 import org.assertj.core.api.Condition;
 import org.hjson.JsonValue;
@@ -51,7 +52,6 @@ import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.FluentWait;
 import org.openqa.selenium.support.ui.Wait;
-import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.yandex.qatools.ashot.AShot;
@@ -59,7 +59,6 @@ import ru.yandex.qatools.ashot.Screenshot;
 import ru.yandex.qatools.ashot.shooting.ShootingStrategies;
 import ru.yandex.qatools.ashot.shooting.cutter.CutStrategy;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.lang.reflect.Field;
@@ -76,10 +75,21 @@ import static org.testng.Assert.fail;
 
 public class CommonG {
 
-    private static final long DEFAULT_CURRENT_TIME = 1000L;
-
     private static final int DEFAULT_SLEEP_TIME = 1500;
 
+    public static final String JSONPATH_CACHE_PROPERTY = "gingerspec.jsonpath.cache.size";
+
+    private static final Pattern KEYS_EXPRESSION = Pattern.compile("^(.*?).~(.*?)$");
+
+    private static final Pattern KEY_INDEX = Pattern.compile("^\\[(-?\\d+)\\]$");
+
+    /**
+     * Compiled jsonpath expressions, by expression (LRU, -Dgingerspec.jsonpath.cache.size, 1024 by default)
+     */
+    private static final Cache<String, JsonPath> JSON_PATHS = CacheBuilder.newBuilder()
+            .maximumSize(Long.getLong(JSONPATH_CACHE_PROPERTY, 1024))
+            .build();
+
     private final Logger logger = LoggerFactory.getLogger(ThreadProperty.get("class"));
 
     private RemoteWebDriver driver = null;
@@ -138,6 +148,10 @@ public class CommonG {
 
     private io.restassured.response.Response RestResponse;
 
+    private LoadGenerator.Result loadResult;
+
+    private final List<RequestTiming> requestLog = new ArrayList<>();
+
     private List<Map<String, String>> lastFileParseResult;
 
     private Map<String, String> lastFileParseRecord;
@@ -258,6 +272,30 @@ public class CommonG {
         this.RestRequest = restRequest;
     }
 
+    /**
+     * Get the measures of the last requests sent as load
+     * @return  measures of the requests
+     */
+    public LoadGenerator.Result getLoadResult() {
+        return loadResult;
+    }
+
+    /**
+     * Sets the measures of the last requests sent as load
+     * @param loadResult    measures of the requests
+     */
+    public void setLoadResult(LoadGenerator.Result loadResult) {
+        this.loadResult = loadResult;
+    }
+
+    /**
+     * Get the timings of the Rest requests (restassured) sent in the scenario
+     * @return  timings of the requests, in order
+     */
+    public List<RequestTiming> getRequestLog() {
+        return requestLog;
+    }
+
     /**
      * Get the SQL result from the last step
      * @return  SQL result
@@ -549,6 +587,8 @@ public class CommonG {
      * but with a wait condition. Instead of returning immediately a fail if the element is not found, the method waits a
      * maximum time (poolMaxTime) in which the condition is checked in intervals (poolingInterval).
      * The method also verify if the required elements are of the type specified.
+     * When the browser can run it, the condition is checked inside the page as soon as it changes (see {@link DomWait}),
+     * and the pooling interval is only used by the browsers that can not.
      *
      * @param poolingInterval   Time between consecutive condition evaluations
      * @param poolMaxTime       Maximum time to wait for the condition to be true
@@ -573,6 +613,14 @@ public class CommonG {
         logger.debug("Waiting for {} elements by xpath to be {}", expectedCount, type);
 
         try {
+            if (DomWait.isEnabled() && driver instanceof JavascriptExecutor) {
+                List<WebElement> found = DomWait.await((JavascriptExecutor) driver, method, element, expectedCount, type,
+                        SECONDS.toMillis(poolMaxTime));
+                if (found != null) {
+                    return found;
+                }
+            }
+
             List<WebElement> wel = (List<WebElement>) wait.until(new ElementCountByMethod(method, element, expectedCount));
 
             if ("visible".matches(type)) {
@@ -668,12 +716,13 @@ public class CommonG {
     }
 
     /**
-     * Capture a snapshot or an evidence in the driver
+     * Capture a snapshot or an evidence in the driver. The data is taken from the driver in the current
+     * thread, and written to disk by the {@link EvidenceWriter}.
      *
      * @param driver driver used for testing
      * @param type type
      * @param suffix suffix
-     * @return String
+     * @return the path of the evidence, that may still be being written
      */
     public String captureEvidence(WebDriver driver, String type, String suffix) {
 
@@ -720,24 +769,11 @@ public class CommonG {
 
             if (!outputFile.equals("")) {
                 String source = ((RemoteWebDriver) driver).getPageSource();
-
-                File fout = new File(outputFile);
-                boolean dirs = fout.getParentFile().mkdirs();
-
-                try (FileOutputStream fos = new FileOutputStream(fout, true)) {
-                    Writer out = new OutputStreamWriter(fos, "UTF8");
-                    PrintWriter writer = new PrintWriter(out, false);
-                    writer.append(source);
-                    writer.close();
-                    out.close();
-                } catch (IOException e) {
-                    logger.error("Exception on evidence capture", e);
-                }
+                EvidenceWriter.INSTANCE.writeText(new File(outputFile), source);
             }
 
         } else if ("screenCapture".equals(type)) {
             outputFile = outputFile + ".png";
-            File file = null;
             driver.switchTo().defaultContent();
             ((Locatable) driver.findElement(By.tagName("body")))
                     .getCoordinates().inViewPort();
@@ -748,22 +784,13 @@ public class CommonG {
                 actions.keyDown(Keys.CONTROL).sendKeys(Keys.HOME).perform();
                 actions.keyUp(Keys.CONTROL).perform();
 
-                file = chromeFullScreenCapture(driver);
+                BufferedImage page = chromeFullScreenCapture(driver);
+                if (page != null) {
+                    EvidenceWriter.INSTANCE.writePng(new File(outputFile), page);
+                }
             } else {
-
                 Screenshot screenshot = new AShot().shootingStrategy(ShootingStrategies.viewportPasting(500)).takeScreenshot(driver);
-                try {
-                    file = new File("target/temp");
-                    ImageIO.write(screenshot.getImage(), "PNG",  file);
-                } catch (IOException e) {
-                    logger.error("Exception on taking screenshot", e);
-                }
-            }
-            try {
-                FileUtils.copyFile(file, new File(outputFile));
-                file.delete();
-            } catch (IOException e) {
-                logger.error("Exception on copying browser screen capture", e);
+                EvidenceWriter.INSTANCE.writePng(new File(outputFile), screenshot.getImage());
             }
         }
 
@@ -771,98 +798,46 @@ public class CommonG {
 
     }
 
-    private File adjustLastCapture(Integer newTrailingImageHeight,
-                                   List<File> capture) {
-        // cuts last image just in case it dupes information
-        Integer finalHeight = 0;
-        Integer finalWidth = 0;
-
-        File trailingImage = capture.get(capture.size() - 1);
-        capture.remove(capture.size() - 1);
-
-        BufferedImage oldTrailingImage;
-        File temp = null;
-        try {
-            oldTrailingImage = ImageIO.read(trailingImage);
-            BufferedImage newTrailingImage = new BufferedImage(
-                    oldTrailingImage.getWidth(), oldTrailingImage.getHeight()
-                    - newTrailingImageHeight,
-                    BufferedImage.TYPE_INT_RGB);
-
-            newTrailingImage.createGraphics().drawImage(oldTrailingImage, 0,
-                    0 - newTrailingImageHeight, null);
-
-            File newTrailingImageF = File.createTempFile("tmpnewTrailingImage",
-                    ".png");
-            newTrailingImageF.deleteOnExit();
-
-            ImageIO.write(newTrailingImage, "png", newTrailingImageF);
-
-            capture.add(newTrailingImageF);
-
-            finalWidth = ImageIO.read(capture.get(0)).getWidth();
-            for (File cap : capture) {
-                finalHeight += ImageIO.read(cap).getHeight();
-            }
-
-            BufferedImage img = new BufferedImage(finalWidth, finalHeight,
-                    BufferedImage.TYPE_INT_RGB);
-
-            Integer y = 0;
-            BufferedImage tmpImg = null;
-            for (File cap : capture) {
-                tmpImg = ImageIO.read(cap);
-                img.createGraphics().drawImage(tmpImg, 0, y, null);
-                y += tmpImg.getHeight();
-            }
-
-            long ts = System.currentTimeMillis() / DEFAULT_CURRENT_TIME;
-
-            temp = File.createTempFile("chromecap" + Long.toString(ts), ".png");
-            temp.deleteOnExit();
-            ImageIO.write(img, "png", temp);
-
-        } catch (IOException e) {
-            logger.error("Cant read image", e);
-        }
-        return temp;
-    }
-
-    private File chromeFullScreenCapture(WebDriver driver) {
+    private BufferedImage chromeFullScreenCapture(WebDriver driver) {
         driver.switchTo().defaultContent();
-        // scroll loop n times to get the whole page if browser is chrome
-        ArrayList<File> capture = new ArrayList<File>();
-
-        Boolean atBottom = false;
+        // scroll n times to get the whole page if browser is chrome
         Integer windowSize = ((Long) ((JavascriptExecutor) driver)
                 .executeScript("return document.documentElement.clientHeight"))
                 .intValue();
-
-        Integer accuScroll = 0;
-        Integer newTrailingImageHeight = 0;
+        ScreenshotStitcher stitcher = new ScreenshotStitcher(windowSize, getDocumentHeight(driver));
 
         try {
-            while (!atBottom) {
-
-                Thread.sleep(DEFAULT_SLEEP_TIME);
-                capture.add(((TakesScreenshot) driver)
-                        .getScreenshotAs(OutputType.FILE));
-
-                ((JavascriptExecutor) driver).executeScript("if(window.screen)"
-                        + " {window.scrollBy(0," + windowSize + ");};");
-
-                accuScroll += windowSize;
-                if (getDocumentHeight(driver) <= accuScroll) {
-                    atBottom = true;
-                }
+            for (int i = 0; i < stitcher.getViewports(); i++) {
+                scrollAndWaitForPaint(driver, i == 0 ? 0 : windowSize);
+                stitcher.add(((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES));
             }
-
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             logger.error("Interrupted waits among scrolls", e);
+        } catch (IOException e) {
+            logger.error("Cant read image", e);
         }
+        return stitcher.getImage();
+    }
 
-        newTrailingImageHeight = accuScroll - getDocumentHeight(driver);
-        return adjustLastCapture(newTrailingImageHeight, capture);
+    /**
+     * Scrolls the page and waits until the browser has painted it: the script returns in the second animation
+     * frame after the scroll. Drivers that can not run async scripts wait a fixed time instead.
+     *
+     * @param driver driver used for testing
+     * @param pixels pixels to scroll down
+     * @throws InterruptedException exception
+     */
+    private void scrollAndWaitForPaint(WebDriver driver, int pixels) throws InterruptedException {
+        ((JavascriptExecutor) driver).executeScript("if(window.screen)"
+                + " {window.scrollBy(0," + pixels + ");};");
+        try {
+            ((JavascriptExecutor) driver).executeAsyncScript("var done = arguments[arguments.length - 1];"
+                    + " window.requestAnimationFrame(function() {window.requestAnimationFrame(done);});");
+        } catch (WebDriverException e) {
+            logger.debug("Waiting {} ms for the page to be painted: {}", DEFAULT_SLEEP_TIME, e.getMessage());
+            Thread.sleep(DEFAULT_SLEEP_TIME);
+        }
     }
 
     private Integer getDocumentHeight(WebDriver driver) {
@@ -880,12 +855,16 @@ public class CommonG {
     }
 
     /**
-     * Set the previous webElement
+     * Set the previous webElement. Their state can then be checked from a snapshot, see
+     * {@link PreviousWebElements#track(RemoteWebDriver)}.
      *
      * @param previousWebElements   webElement
      */
     public void setPreviousWebElements(PreviousWebElements previousWebElements) {
         this.previousWebElements = previousWebElements;
+        if (previousWebElements != null) {
+            previousWebElements.track(driver);
+        }
     }
 
     /**
@@ -949,45 +928,7 @@ public class CommonG {
      * @return String
      */
     public String retrieveData(String baseData, String type, String charset) {
-        String result;
-
-        InputStream stream = getClass().getClassLoader().getResourceAsStream(baseData);
-
-        Writer writer = new StringWriter();
-        char[] buffer = new char[1024];
-        Reader reader;
-
-        if (stream == null) {
-            this.getLogger().error("File does not exist: {}", baseData);
-            return "ERR! File not found: " + baseData;
-        }
-
-        try {
-            reader = new BufferedReader(new InputStreamReader(stream, charset));
-            int n;
-            while ((n = reader.read(buffer)) != -1) {
-                writer.write(buffer, 0, n);
-            }
-        } catch (Exception readerexception) {
-            this.getLogger().error(readerexception.getMessage());
-        } finally {
-            try {
-                stream.close();
-            } catch (Exception closeException) {
-                this.getLogger().error(closeException.getMessage());
-            }
-        }
-        String text = writer.toString();
-
-        String std = text.replace("\r", "").replace("\n", ""); // make sure we have unix style text regardless of the input
-
-
-        if ("json".equals(type)) {
-            result = JsonValue.readHjson(std).asObject().toString();
-        } else {
-            result = std;
-        }
-        return result;
+        return ResourceCache.INSTANCE.retrieveData(baseData, type, charset);
     }
 
 
@@ -1386,30 +1327,50 @@ public class CommonG {
      */
     public void generateRestRequest(String requestType, String endPoint) throws Exception {
 
-        this.getRestRequest().basePath(endPoint);
-
         this.getLogger().debug("Generating " + requestType + " reauest to " + endPoint);
 
+        String url = this.getRestHost() == null ? endPoint
+                : this.getRestProtocol() + this.getRestHost() + ":" + this.getRestPort() + endPoint;
+        RequestTiming timing = RequestTiming.start(requestType, url);
+        io.restassured.response.Response response = null;
+        try {
+            response = sendRestRequest(this.getRestRequest(), requestType, endPoint);
+        } finally {
+            this.requestLog.add(timing.stop(response == null ? 0 : response.getStatusCode()));
+        }
+        this.setRestResponse(response);
+
+    }
+
+    /**
+     * Sends a REST request of the type specified to the indicated endpoint
+     *
+     * @param request     request, with the base uri, headers, cookies, body, etc
+     * @param requestType HTTP verb (type of request): POST, GET, PUT, PATCH, DELETE
+     * @param endPoint    Endpoint (i.e /user/1)
+     * @return the response
+     * @throws Exception exception
+     */
+    public static io.restassured.response.Response sendRestRequest(RequestSpecification request, String requestType,
+                                                                 String endPoint) throws Exception {
+
+        request.basePath(endPoint);
+
         switch (requestType) {
             case "GET":
-                this.setRestResponse(this.getRestRequest().when().get());
-                break;
+                return request.when().get();
 
             case "POST":
-                this.setRestResponse(this.getRestRequest().when().post());
-                break;
+                return request.when().post();
 
             case "PUT":
-                this.setRestResponse(this.getRestRequest().when().put());
-                break;
+                return request.when().put();
 
             case "DELETE":
-                this.setRestResponse(this.getRestRequest().when().delete());
-                break;
+                return request.when().delete();
 
             case "PATCH":
-                this.setRestResponse(this.getRestRequest().when().patch());
-                break;
+                return request.when().patch();
 
             default:
                 throw new Exception("Operation not implemented: " + requestType);
@@ -1435,12 +1396,12 @@ public class CommonG {
      */
 
     public void setPreviousElement(String element, String value) throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException, InstantiationException, ClassNotFoundException, NoSuchMethodException, InvocationTargetException {
-        Reflections reflections = new Reflections("com.privalia");
-        Set classes = reflections.getSubTypesOf(CommonG.class);
-
-        Object pp = (classes.toArray())[0];
-        String qq = (pp.toString().split(" "))[1];
-        Class<?> c = Class.forName(qq.toString());
+        Set<Class<? extends CommonG>> classes = ClassIndex.subTypesOf(CommonG.class, "com.privalia", CommonG.class.getClassLoader());
+        if (classes.isEmpty()) {
+            throw new ClassNotFoundException("No subclass of CommonG in " + ClassIndex.INDEX_LOCATION + CommonG.class.getName()
+                    + ", add it there or run with -D" + ClassIndex.SCAN_PROPERTY + "=true");
+        }
+        Class<?> c = classes.iterator().next();
 
         Field ff = c.getDeclaredField(element);
         ff.setAccessible(true);
@@ -1871,6 +1832,9 @@ public class CommonG {
     /**
      * Parse jsonpath expression from a given string.
      * <p>
+     * To evaluate several expressions on the same string, parse it once with {@link #parseJSON(String)}
+     * and use {@link #getJSONPathString(DocumentContext, String, String)}.
+     * <p>
      * If the string is json we can obtain its keys using ~ symbol.
      * <p>
      * If position is not null and the result of jsonpath expression is an array,
@@ -1884,20 +1848,42 @@ public class CommonG {
      * @return the resulting element as string
      */
     public String getJSONPathString(String jsonString, String expr, String position) {
+        return getJSONPathString(parseJSON(jsonString), expr, position);
+    }
+
+    /**
+     * Parses a json (or Hjson) string, to evaluate jsonpath expressions on it.
+     *
+     * @param jsonString string to be parsed
+     * @return the parsed document
+     */
+    public static DocumentContext parseJSON(String jsonString) {
+        return JsonPath.parse(JsonValue.readHjson(jsonString).toString());
+    }
+
+    /**
+     * Parse jsonpath expression from a document parsed with {@link #parseJSON(String)}, as
+     * {@link #getJSONPathString(String, String, String)} does. The expressions are compiled once and cached.
+     *
+     * @param document   parsed document
+     * @param expr       jsonpath expression
+     * @param position   position from a search result
+     * @return the resulting element as string
+     */
+    public String getJSONPathString(DocumentContext document, String expr, String position) {
 
         String value;
 
         if (expr.contains(".~")) {
             this.getLogger().debug("Expression referred to json keys");
-            Pattern pattern = Pattern.compile("^(.*?).~(.*?)$");
-            Matcher matcher = pattern.matcher(expr);
+            Matcher matcher = KEYS_EXPRESSION.matcher(expr);
             String aux = null;
             String op = null;
             if (matcher.find()) {
                 aux = matcher.group(1);
                 op = matcher.group(2);
             }
-            LinkedHashMap auxData = JsonPath.parse(jsonString).read(aux);
+            LinkedHashMap auxData = document.read(compileJSONPath(aux));
             JSONObject json = new JSONObject(auxData);
             List<String> keys = IteratorUtils.toList(json.keys());
             List<String> stringKeys = new ArrayList<String>();
@@ -1907,8 +1893,7 @@ public class CommonG {
                 }
                 value = stringKeys.toString();
             } else {
-                Pattern patternOp = Pattern.compile("^\\[(-?\\d+)\\]$");
-                Matcher matcherOp = patternOp.matcher(op);
+                Matcher matcherOp = KEY_INDEX.matcher(op);
                 Integer index = null;
                 Boolean isNegative = false;
                 if (matcherOp.find()) {
@@ -1925,8 +1910,7 @@ public class CommonG {
 
             }
         } else {
-            String result = JsonValue.readHjson(jsonString).toString();
-            Object data = JsonPath.parse(result).read(expr);
+            Object data = document.read(compileJSONPath(expr));
             if (position != null) {
                 JSONArray jsonArray = new JSONArray(data.toString());
                 value = jsonArray.get(Integer.parseInt(position)).toString();
@@ -1942,6 +1926,15 @@ public class CommonG {
     }
 
 
+    private static JsonPath compileJSONPath(String expr) {
+        JsonPath path = JSON_PATHS.getIfPresent(expr);
+        if (path == null) {
+            path = JsonPath.compile(expr);
+            JSON_PATHS.put(expr, path);
+        }
+        return path;
+    }
+
     /**
      * Remove a subelement in a JsonPath
      *
@@ -20,6 +20,7 @@ import com.jayway.jsonpath.PathNotFoundException;
 import com.ning.http.client.cookie.Cookie;
 import com.privalia.qa.utils.RemoteSSHConnection;
 import com.privalia.qa.utils.ThreadProperty;
+import com.privalia.qa.utils.VariableStore;
 import cucumber.api.DataTable;
 import cucumber.api.java.en.Given;
 import org.openqa.selenium.WebElement;
@@ -127,6 +128,19 @@ public class GivenGSpec extends BaseGSpec {
         ThreadProperty.set(envVar, value);
     }
 
+    /**
+     * Save value for future use, in the given scope. Suite variables are visible from every thread
+     * of the execution, feature and scenario variables are discarded when a new feature or scenario starts.
+     *
+     * @param value  value to be saved
+     * @param scope  scope of the variable: scenario|feature|suite
+     * @param envVar variable where to store the value
+     */
+    @Given("^I save \'(.+?)\' in (scenario|feature|suite) variable \'(.+?)\'$")
+    public void saveInScope(String value, String scope, String envVar) {
+        VariableStore.set(VariableStore.Scope.valueOf(scope.toUpperCase()), envVar, value);
+    }
+
     /**
      * Browse to {@code url} using the current browser.
      *
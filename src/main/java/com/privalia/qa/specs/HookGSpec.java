@@ -16,9 +16,13 @@
 
 package com.privalia.qa.specs;
 
-import com.ning.http.client.AsyncHttpClient;
-import com.ning.http.client.AsyncHttpClientConfig;
+import com.privalia.qa.utils.RequestTiming;
+import com.privalia.qa.utils.RestClients;
 import com.privalia.qa.utils.ThreadProperty;
+import com.privalia.qa.utils.TrackingCommandExecutor;
+import com.privalia.qa.utils.WebDriverPool;
+import com.privalia.qa.utils.WebDriverTransport;
+import cucumber.api.Scenario;
 import cucumber.api.java.After;
 import cucumber.api.java.Before;
 import io.restassured.http.ContentType;
@@ -29,17 +33,16 @@ import org.openqa.selenium.remote.CommandInfo;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.HttpCommandExecutor;
 import org.openqa.selenium.remote.RemoteWebDriver;
-import org.openqa.selenium.remote.http.HttpClient;
-import org.openqa.selenium.remote.internal.ApacheHttpClient;
-import org.openqa.selenium.remote.internal.HttpClientFactory;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import static io.restassured.RestAssured.given;
+import static com.privalia.qa.utils.RestClients.given;
 import static org.testng.Assert.fail;
 
 public class HookGSpec extends BaseGSpec {
@@ -73,12 +76,13 @@ public class HookGSpec extends BaseGSpec {
 
 
     /**
-     * Connect to selenium.
+     * Connect to selenium. With -Dgingerspec.webdriver.pool=true, the session of a previous scenario with the
+     * same browser may be reused, see {@link WebDriverPool}.
      *
-     * @throws MalformedURLException    MalformedURLException
+     * @throws Exception    Exception
      */
     @Before(order = ORDER_10, value = {"@mobile,@web"})
-    public void seleniumSetup() throws MalformedURLException {
+    public void seleniumSetup() throws Exception {
         String grid = System.getProperty("SELENIUM_GRID");
         if (grid == null) {
             fail("Selenium grid not available");
@@ -132,9 +136,10 @@ public class HookGSpec extends BaseGSpec {
         capabilities.setVersion(version);
 
         grid = "http://" + grid + "/wd/hub";
-        HttpClient.Factory factory = new ApacheHttpClient.Factory(new HttpClientFactory(60000, 60000));
-        HttpCommandExecutor executor = new HttpCommandExecutor(new HashMap<String, CommandInfo>(), new URL(grid), factory);
-        commonspec.setDriver(new RemoteWebDriver(executor, capabilities));
+        HttpCommandExecutor executor = new TrackingCommandExecutor(new HashMap<String, CommandInfo>(), new URL(grid),
+                WebDriverTransport.INSTANCE);
+        DesiredCapabilities desiredCapabilities = capabilities;
+        commonspec.setDriver(WebDriverPool.INSTANCE.acquire(b, () -> new RemoteWebDriver(executor, desiredCapabilities)));
         commonspec.getDriver().manage().timeouts().pageLoadTimeout(PAGE_LOAD_TIMEOUT, TimeUnit.SECONDS);
         commonspec.getDriver().manage().timeouts().implicitlyWait(IMPLICITLY_WAIT, TimeUnit.SECONDS);
         commonspec.getDriver().manage().timeouts().setScriptTimeout(SCRIPT_TIMEOUT, TimeUnit.SECONDS);
@@ -149,14 +154,16 @@ public class HookGSpec extends BaseGSpec {
 
 
     /**
-     * Close selenium web driver.
+     * Close selenium web driver, or return it to the {@link WebDriverPool}.
+     *
+     * @param scenario scenario
      */
     @After(order = ORDER_20, value = {"@mobile,@web"})
-    public void seleniumTeardown() {
+    public void seleniumTeardown(Scenario scenario) {
         if (commonspec.getDriver() != null) {
             commonspec.getLogger().debug("Shutdown Selenium client");
             //commonspec.getDriver().close(); //causes the driver instance when using firefox
-            commonspec.getDriver().quit();
+            WebDriverPool.INSTANCE.release(ThreadProperty.get("browser"), commonspec.getDriver(), scenario.isFailed());
         }
     }
 
@@ -171,17 +178,33 @@ public class HookGSpec extends BaseGSpec {
     public void restClientSetup() throws Exception {
         commonspec.getLogger().debug("Starting a REST client");
 
-        commonspec.setClient(new AsyncHttpClient(new AsyncHttpClientConfig.Builder().setAcceptAnyCertificate(true).setAllowPoolingConnections(false)
-                .build()));
+        commonspec.setClient(RestClients.INSTANCE.getAsyncClient());
 
         commonspec.setRestRequest(given().contentType(ContentType.JSON));
 
     }
 
+    /**
+     * Releases the REST clients, and appends the timings of the requests of the scenario to
+     * target/executions/requests.jsonl (see {@link RequestTiming}).
+     *
+     * @throws IOException exception
+     */
     @After(order = 10, value = "@rest")
     public void restClientTeardown() throws IOException {
-        commonspec.getLogger().debug("Shutting down REST client");
-        commonspec.getClient().close();
+        // the clients are shared by the suite, and closed on exit
+        commonspec.getLogger().debug("Releasing REST client: {}", RestClients.INSTANCE);
+        commonspec.setClient(null);
+
+        String testSuffix = System.getProperty("TESTSUFFIX");
+        String dir = "./target/executions/";
+        if (testSuffix != null) {
+            dir = dir + testSuffix + "/";
+        }
+        Map<String, String> context = new LinkedHashMap<>();
+        context.put("class", ThreadProperty.get("class"));
+        context.put("dataSet", ThreadProperty.get("dataSet"));
+        RequestTiming.appendLog(new File(dir, RequestTiming.LOG_NAME), commonspec.getRequestLog(), context);
 
     }
 
@@ -1,5 +1,6 @@
 package com.privalia.qa.specs;
 
+import com.jayway.jsonpath.DocumentContext;
 import com.privalia.qa.utils.ThreadProperty;
 import cucumber.api.DataTable;
 import cucumber.api.PendingException;
@@ -500,14 +501,14 @@ public class KafkaGSpec extends BaseGSpec {
             if (result instanceof GenericRecord) {
                 GenericRecord avroMessage = (GenericRecord) result;
 
-                String jsonString = avroMessage.toString();
+                DocumentContext document = CommonG.parseJSON(avroMessage.toString());
 
                 for (DataTableRow row : datatable.getGherkinRows()) {
                     String expression = row.getCells().get(0);
                     String condition = row.getCells().get(1);
                     String expectedResult = row.getCells().get(2);
 
-                    String value = commonspec.getJSONPathString(jsonString, expression, null);
+                    String value = commonspec.getJSONPathString(document, expression, null);
                     try {
                         commonspec.evaluateJSONElementOperation(value, condition, expectedResult);
                     } catch (AssertionError e) {
@@ -16,7 +16,12 @@
 
 package com.privalia.qa.specs;
 
+import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.PathNotFoundException;
+import com.privalia.qa.utils.LoadGenerator;
+import com.privalia.qa.utils.RequestTiming;
+import com.privalia.qa.utils.RestClients;
+import com.privalia.qa.utils.StreamingBody;
 import com.privalia.qa.utils.ThreadProperty;
 import cucumber.api.DataTable;
 import cucumber.api.PendingException;
@@ -29,6 +34,7 @@ import io.restassured.builder.RequestSpecBuilder;
 import io.restassured.http.ContentType;
 
 import io.restassured.path.json.JsonPath;
+import io.restassured.response.Response;
 import io.restassured.response.ResponseBody;
 import io.restassured.specification.RequestSpecification;
 
@@ -36,13 +42,16 @@ import java.io.File;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import static io.restassured.RestAssured.given;
+import static com.privalia.qa.utils.RestClients.given;
 import static io.restassured.module.jsv.JsonSchemaValidator.matchesJsonSchema;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -94,7 +103,7 @@ public class RestSpec extends BaseGSpec {
         commonspec.setRestProtocol(restProtocol);
 
         if (restProtocol.matches("https://")) {
-            commonspec.getRestRequest().relaxedHTTPSValidation();
+            RestClients.relaxedHTTPSValidation(commonspec.getRestRequest());
         }
 
         commonspec.getRestRequest().baseUri(restProtocol + restHost).port(Integer.parseInt(restPort));
@@ -114,6 +123,7 @@ public class RestSpec extends BaseGSpec {
 
         assertThat(jsonString).as("The variable '" + envVar + "' was not set correctly previously").isNotNull();
 
+        DocumentContext document = CommonG.parseJSON(jsonString);
         for (DataTableRow row : table.getGherkinRows()) {
             String expression = row.getCells().get(0);
             String condition = row.getCells().get(1);
@@ -123,7 +133,7 @@ public class RestSpec extends BaseGSpec {
             //but requires more testing for every possible corner case
             //Object value = new JsonPath(jsonString).get(expression.replace("$.", ""));
 
-            String value = commonspec.getJSONPathString(jsonString, expression, null);
+            String value = commonspec.getJSONPathString(document, expression, null);
             commonspec.evaluateJSONElementOperation(value, condition, result);
         }
     }
@@ -248,24 +258,87 @@ public class RestSpec extends BaseGSpec {
         }
 
         if (foo.contains("length")) {
-            assertThat(commonspec.getRestResponse().getBody().asString().length()).as("The returned body does not have the expected length").isEqualTo(expectedLength);
+            Response response = commonspec.getRestResponse();
+            long length = StreamingBody.isLarge(response) ? StreamingBody.length(response) : response.getBody().asString().length();
+            assertThat(length).as("The returned body does not have the expected length").isEqualTo(expectedLength.longValue());
         }
 
     }
 
     /**
-     * Verifies if the response body contains an specific string
+     * Verifies if the response body contains an specific string. Large bodies are searched as a stream
+     * (see {@link StreamingBody})
      * @param expectedText                  String to find in the response body
      * @throws SecurityException            SecurityException
      * @throws IllegalArgumentException     IllegalArgumentException
      */
     @Then("^the service response must contain the text '(.*?)'$")
     public void assertResponseMessage(String expectedText) throws SecurityException, IllegalArgumentException {
-        ResponseBody body = commonspec.getRestResponse().getBody();
+        Response response = commonspec.getRestResponse();
+        if (StreamingBody.isLarge(response)) {
+            assertThat(StreamingBody.contains(response, expectedText)).as("Text '" + expectedText + "' was not found in response body").isTrue();
+            return;
+        }
+        ResponseBody body = response.getBody();
         String bodyAsString = body.asString();
         assertThat(bodyAsString).as("Text '" + expectedText + "' was not found in response body").contains(expectedText);
     }
 
+    /**
+     * Check if expressions defined by JSOPath (http://goessner.net/articles/JsonPath/index.html)
+     * match in the last response. The expressions of large bodies are evaluated in a single pass
+     * (see {@link StreamingBody})
+     *
+     * @param table         data table in which each row stores one expression
+     * @throws Exception    Exception
+     */
+    @Then("^the service response matches the following cases:$")
+    public void matchResponseWithExpressions(DataTable table) throws Exception {
+        Response response = commonspec.getRestResponse();
+        assertThat(response).as("No response was received. Did you forget to send a request in a previous step?").isNotNull();
+
+        List<DataTableRow> rows = table.getGherkinRows();
+        Map<String, String> values = new HashMap<>();
+        if (StreamingBody.isLarge(response)) {
+            List<String> expressions = new ArrayList<>();
+            for (DataTableRow row : rows) {
+                if (StreamingBody.isSupported(row.getCells().get(0))) {
+                    expressions.add(row.getCells().get(0));
+                }
+            }
+            values = StreamingBody.read(response, expressions);
+            for (String expression : expressions) {
+                values.putIfAbsent(expression, null);
+            }
+        }
+
+        DocumentContext document = null;
+        for (DataTableRow row : rows) {
+            String expression = row.getCells().get(0);
+            String condition = row.getCells().get(1);
+            String result = row.getCells().get(2);
+
+            String value;
+            if (values.containsKey(expression)) {
+                value = values.get(expression);
+            } else {
+                if (document == null) {
+                    document = CommonG.parseJSON(response.getBody().asString());
+                }
+                try {
+                    value = commonspec.getJSONPathString(document, expression, null);
+                } catch (PathNotFoundException pe) {
+                    value = null;
+                }
+            }
+            if (value == null) {
+                assertThat(condition).as("No results for path " + expression).isEqualTo("does not exists");
+                continue;
+            }
+            commonspec.evaluateJSONElementOperation(value, condition, result);
+        }
+    }
+
 
     /**
      * Save value for future use.
@@ -303,7 +376,18 @@ public class RestSpec extends BaseGSpec {
             json = matcher.group(2);
             parsedElement = matcher.group(4);
         } else {
-            json = commonspec.getRestResponse().getBody().asString();
+            Response response = commonspec.getRestResponse();
+            String path = position == null ? element : element + "[" + position.trim() + "]";
+            if (StreamingBody.isLarge(response) && StreamingBody.isSupported(path)) {
+                String value = StreamingBody.read(response, Collections.singletonList(path)).get(path);
+                if (value == null) {
+                    commonspec.getLogger().error("No results for path: " + path);
+                }
+                assertThat(value).as("json result is empty").isNotNull().isNotEqualTo("");
+                ThreadProperty.set(envVar, value);
+                return;
+            }
+            json = response.getBody().asString();
             parsedElement = element;
         }
 
@@ -466,16 +550,24 @@ public class RestSpec extends BaseGSpec {
             commonspec.generateRestRequest(requestType, endPoint);
             commonspec.getLogger().debug("Checking response value");
 
-            ResponseBody body = commonspec.getRestResponse().getBody();
-            String bodyAsString = body.asString();
+            Response response = commonspec.getRestResponse();
+            boolean streamed = StreamingBody.isLarge(response);
 
             try {
                 if (searchUntilContains) {
-                    assertThat(bodyAsString).containsPattern(pattern);
+                    if (streamed && !responseVal.startsWith("regex:")) {
+                        assertThat(StreamingBody.contains(response, responseVal)).as("Text '" + responseVal + "' was not found in response body").isTrue();
+                    } else {
+                        assertThat(response.getBody().asString()).containsPattern(pattern);
+                    }
                     found = true;
                     timeout = i;
                 } else {
-                    assertThat(bodyAsString).doesNotContain(responseVal);
+                    if (streamed) {
+                        assertThat(StreamingBody.contains(response, responseVal)).as("Text '" + responseVal + "' was found in response body").isFalse();
+                    } else {
+                        assertThat(response.getBody().asString()).doesNotContain(responseVal);
+                    }
                     found = false;
                     timeout = i;
                 }
@@ -673,4 +765,108 @@ public class RestSpec extends BaseGSpec {
 
         this.getCommonSpec().getRestRequest().multiPart(file);
     }
+
+    /**
+     * Sends a number of requests of the type specified to the indicated endpoint, at a constant rate, and
+     * measures their latency, throughput and errors (see {@link LoadGenerator}). Each request is a copy of
+     * the one built by the previous steps (host, headers, cookies, url parameters, body, etc). A request fails
+     * if it can not be sent or its status is 400 or higher.
+     * <p>
+     * The latency of each request is measured from the time it should have started, so it grows when the
+     * service can not keep up with the rate, or all the requests allowed by the concurrency are in flight.
+     * The connections of the pool to each host are raised to the concurrency if needed (see {@link RestClients}).
+     *
+     * @param requests      number of requests
+     * @param requestType   HTTP verb (type of request): POST, GET, PUT, PATCH, DELETE
+     * @param endPoint      Endpoint (i.e /user/1)
+     * @param concurrency   maximum number of requests in flight
+     * @param rate          requests started per second
+     * @throws Exception    Exception
+     */
+    @When("^I send '(\\d+)' '(GET|POST|PUT|DELETE|PATCH)' requests to '(.+?)' with concurrency '(\\d+)' at '(\\d+(?:\\.\\d+)?)' requests per second$")
+    public void sendLoad(int requests, String requestType, String endPoint, int concurrency, double rate) throws Exception {
+        assertThat(commonspec.getRestRequest()).as("No rest client initialized. Did you forget to use @rest annotation in your feature?").isNotNull();
+        RequestSpecification template = commonspec.getRestRequest();
+
+        commonspec.getLogger().debug("Sending {} {} requests to {}", requests, requestType, endPoint);
+        RestClients.INSTANCE.ensureMaxPerHost(concurrency);
+        LoadGenerator.Result result = new LoadGenerator(requests, concurrency, rate).run(() ->
+                CommonG.sendRestRequest(given().spec(template), requestType, endPoint).getStatusCode() < 400);
+        commonspec.setLoadResult(result);
+    }
+
+    /**
+     * Verifies a percentile of the latency of the requests sent by
+     * {@link #sendLoad(int, String, String, int, double)}
+     *
+     * @param percentile    p50, p90, p95, p99, p999 (99.9) or max
+     * @param maxLatency    maximum latency, in milliseconds
+     */
+    @Then("^the '(p50|p90|p95|p99|p999|max)' latency of the requests is lower than '(\\d+)' milliseconds$")
+    public void assertLoadLatency(String percentile, int maxLatency) {
+        LoadGenerator.Result result = getLoadResult();
+        double value = "max".equals(percentile) ? 100 : "p999".equals(percentile) ? 99.9 : Double.parseDouble(percentile.substring(1));
+        assertThat(result.getLatency(value)).as("The " + percentile + " latency of the requests (" + result + ")").isLessThan(maxLatency);
+    }
+
+    /**
+     * Verifies the throughput of the requests sent by {@link #sendLoad(int, String, String, int, double)}
+     *
+     * @param minThroughput minimum finished requests per second
+     */
+    @Then("^the throughput of the requests is higher than '(\\d+(?:\\.\\d+)?)' requests per second$")
+    public void assertLoadThroughput(double minThroughput) {
+        LoadGenerator.Result result = getLoadResult();
+        assertThat(result.getThroughput()).as("The throughput of the requests (" + result + ")").isGreaterThan(minThroughput);
+    }
+
+    /**
+     * Verifies the errors of the requests sent by {@link #sendLoad(int, String, String, int, double)}
+     *
+     * @param maxErrorRate  maximum requests that failed, in percent
+     */
+    @Then("^the error rate of the requests is lower than '(\\d+(?:\\.\\d+)?)' percent$")
+    public void assertLoadErrorRate(double maxErrorRate) {
+        LoadGenerator.Result result = getLoadResult();
+        assertThat(result.getErrorRate()).as("The error rate of the requests (" + result + ")").isLessThanOrEqualTo(maxErrorRate);
+    }
+
+    /**
+     * Verifies the time the last request took, from the moment it was sent to the whole response (or to the
+     * first byte of the response), as measured by {@link RequestTiming}
+     *
+     * @param firstByte     parameter generated by cucumber because of the optional expression
+     * @param maxTime       maximum time, in milliseconds
+     */
+    @Then("^the service response time( to first byte)? is less than '(\\d+)' milliseconds$")
+    public void assertResponseTime(String firstByte, int maxTime) {
+        RequestTiming timing = getLastTiming();
+        double time = firstByte == null ? timing.getTotal() : timing.getTimeToFirstByte();
+        assertThat(time).as("The response time" + (firstByte == null ? "" : firstByte) + " of " + timing.getMethod()
+                + " " + timing.getUrl()).isLessThan(maxTime);
+    }
+
+    /**
+     * Saves the time the last request took, in milliseconds, in an environment variable
+     *
+     * @param firstByte     parameter generated by cucumber because of the optional expression
+     * @param envVar        environment variable where to store the time
+     */
+    @Given("^I save the response time( to first byte)? in environment variable '(.+?)'$")
+    public void saveResponseTime(String firstByte, String envVar) {
+        RequestTiming timing = getLastTiming();
+        double time = firstByte == null ? timing.getTotal() : timing.getTimeToFirstByte();
+        ThreadProperty.set(envVar, String.valueOf(Math.round(time)));
+    }
+
+    private RequestTiming getLastTiming() {
+        List<RequestTiming> log = commonspec.getRequestLog();
+        assertThat(log).as("No request was sent. Did you forget to send one in a previous step?").isNotEmpty();
+        return log.get(log.size() - 1);
+    }
+
+    private LoadGenerator.Result getLoadResult() {
+        assertThat(commonspec.getLoadResult()).as("No requests were sent as load. Did you forget to send them in a previous step?").isNotNull();
+        return commonspec.getLoadResult();
+    }
 }
@@ -46,6 +46,16 @@ public class SeleniumGSpec extends BaseGSpec {
         commonspec.setPreviousWebElements(pwel);
     }
 
+    /**
+     * Takes a new snapshot of the state of the elements found by the last step that looked for them, in a single
+     * call to the driver, so the next steps check them from it (see {@link PreviousWebElements}). Useful when
+     * the page has changed since they were found.
+     */
+    @Then("^I refresh the state of the elements found$")
+    public void refreshPreviousWebElements() {
+        commonspec.getPreviousWebElements().refresh();
+    }
+
     /**
      * Checks if an alert message is open in the current page. The function implements a pooling interval to check if the condition is true
      * @param poolingInterval   Time between consecutive condition evaluations
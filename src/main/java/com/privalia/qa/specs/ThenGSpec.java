@@ -16,6 +16,9 @@
 
 package com.privalia.qa.specs;
 
+import com.jayway.jsonpath.DocumentContext;
+import com.privalia.qa.utils.DomWait;
+import com.privalia.qa.utils.ElementSnapshot;
 import com.privalia.qa.utils.PreviousWebElements;
 import com.privalia.qa.utils.ThreadProperty;
 import cucumber.api.DataTable;
@@ -24,10 +27,14 @@ import gherkin.formatter.model.DataTableRow;
 import org.assertj.core.api.Fail;
 import org.assertj.core.api.WritableAssertionInfo;
 import org.junit.Assert;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import static com.jayway.restassured.module.jsv.JsonSchemaValidator.matchesJsonSchema;
@@ -95,7 +102,12 @@ public class ThenGSpec extends BaseGSpec {
     public void assertSeleniumTextOnElementPresent(Integer index, String text) {
         assertThat(commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        assertThat(commonspec.getPreviousWebElements().getPreviousWebElements().get(index)).contains(text);
+        ElementSnapshot snapshot = commonspec.getPreviousWebElements().getSnapshot(index);
+        if (snapshot != null) {
+            assertThat(this.commonspec, snapshot.getText()).contains(text);
+        } else {
+            assertThat(commonspec.getPreviousWebElements().getPreviousWebElements().get(index)).contains(text);
+        }
     }
 
     /**
@@ -148,7 +160,18 @@ public class ThenGSpec extends BaseGSpec {
     public void assertSeleniumNElementExistsOnTimeOut(Integer timeout, Integer wait, Integer expectedCount,
                                                       String method, String element) throws InterruptedException, ClassNotFoundException, NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
         List<WebElement> wel = null;
-        for (int i = 0; i < timeout; i += wait) {
+        boolean waited = false;
+        WebDriver driver = commonspec.getDriver();
+        if (DomWait.isEnabled() && driver instanceof JavascriptExecutor) {
+            try {
+                wel = DomWait.await((JavascriptExecutor) driver, method, element, expectedCount, null,
+                        TimeUnit.SECONDS.toMillis(timeout));
+            } catch (TimeoutException e) {
+                wel = commonspec.locateElement(method, element, -1);
+            }
+            waited = wel != null;
+        }
+        for (int i = 0; !waited && i < timeout; i += wait) {
             wel = commonspec.locateElement(method, element, -1);
             if (wel.size() == expectedCount) {
                 break;
@@ -218,7 +241,10 @@ public class ThenGSpec extends BaseGSpec {
 
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        assertThat(this.commonspec, commonspec.getPreviousWebElements().getPreviousWebElements().get(index).isDisplayed()).as(
+        ElementSnapshot snapshot = commonspec.getPreviousWebElements().getSnapshot(index);
+        boolean displayed = snapshot != null ? snapshot.isDisplayed()
+                : commonspec.getPreviousWebElements().getPreviousWebElements().get(index).isDisplayed();
+        assertThat(this.commonspec, displayed).as(
                 "Unexpected element display property").isEqualTo(isDisplayed);
     }
 
@@ -238,7 +264,10 @@ public class ThenGSpec extends BaseGSpec {
 
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        assertThat(this.commonspec, commonspec.getPreviousWebElements().getPreviousWebElements().get(index).isEnabled())
+        ElementSnapshot snapshot = commonspec.getPreviousWebElements().getSnapshot(index);
+        boolean enabled = snapshot != null ? snapshot.isEnabled()
+                : commonspec.getPreviousWebElements().getPreviousWebElements().get(index).isEnabled();
+        assertThat(this.commonspec, enabled)
                 .as("Unexpected element enabled property").isEqualTo(isEnabled);
     }
 
@@ -258,7 +287,10 @@ public class ThenGSpec extends BaseGSpec {
 
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        assertThat(this.commonspec, commonspec.getPreviousWebElements().getPreviousWebElements().get(index).isSelected()).as(
+        ElementSnapshot snapshot = commonspec.getPreviousWebElements().getSnapshot(index);
+        boolean selected = snapshot != null ? snapshot.isSelected()
+                : commonspec.getPreviousWebElements().getPreviousWebElements().get(index).isSelected();
+        assertThat(this.commonspec, selected).as(
                 "Unexpected element selected property").isEqualTo(isSelected);
     }
 
@@ -273,7 +305,9 @@ public class ThenGSpec extends BaseGSpec {
     public void assertSeleniumHasAttributeValue(Integer index, String attribute, String value) {
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        String val = commonspec.getPreviousWebElements().getPreviousWebElements().get(index).getAttribute(attribute);
+        ElementSnapshot snapshot = commonspec.getPreviousWebElements().getSnapshot(index);
+        String val = snapshot != null && snapshot.hasAttribute(attribute) ? snapshot.getAttribute(attribute)
+                : commonspec.getPreviousWebElements().getPreviousWebElements().get(index).getAttribute(attribute);
         assertThat(this.commonspec, val).as("Attribute not found").isNotNull();
         assertThat(this.commonspec, val).as("Unexpected value for specified attribute").matches(value);
     }
@@ -462,12 +496,13 @@ public class ThenGSpec extends BaseGSpec {
     public void matchWithExpresion(String envVar, DataTable table) throws Exception {
         String jsonString = ThreadProperty.get(envVar);
 
+        DocumentContext document = CommonG.parseJSON(jsonString);
         for (DataTableRow row : table.getGherkinRows()) {
             String expression = row.getCells().get(0);
             String condition = row.getCells().get(1);
             String result = row.getCells().get(2);
 
-            String value = commonspec.getJSONPathString(jsonString, expression, null);
+            String value = commonspec.getJSONPathString(document, expression, null);
             commonspec.evaluateJSONElementOperation(value, condition, result);
         }
     }
@@ -524,7 +559,9 @@ public class ThenGSpec extends BaseGSpec {
     public void saveContentWebElementInEnvVar(Integer index, String envVar) {
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        String text = commonspec.getPreviousWebElements().getPreviousWebElements().get(index).getText();
+        ElementSnapshot snapshot = commonspec.getPreviousWebElements().getSnapshot(index);
+        String text = snapshot != null ? snapshot.getText()
+                : commonspec.getPreviousWebElements().getPreviousWebElements().get(index).getText();
         ThreadProperty.set(envVar, text);
     }
 
@@ -555,7 +592,9 @@ public class ThenGSpec extends BaseGSpec {
         List<WebElement> wel = commonspec.getPreviousWebElements().getPreviousWebElements();
         assertThat(wel.size()).as("The last step did not find elements").isNotZero();
 
-        String value = wel.get(index) .getAttribute(customProperty);
+        ElementSnapshot snapshot = commonspec.getPreviousWebElements().getSnapshot(index);
+        String value = snapshot != null && snapshot.hasAttribute(customProperty) ? snapshot.getAttribute(customProperty)
+                : wel.get(index).getAttribute(customProperty);
         assertThat(value).as("The element doesn't have the property '%s'", customProperty).isNotEmpty().isNotNull();
 
         assertThat(value).as("The property '%s' doesn't have the text '%s'", customProperty, textValue).isEqualToIgnoringCase(textValue);
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import org.reflections.Reflections;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the subclasses of a type in the index files of the classpath, instead of scanning every class of
+ * a package.
+ * <p>
+ * The index of a type is the file META-INF/services/&lt;type name&gt;, in the {@link java.util.ServiceLoader}
+ * format: one class name per line, and comments starting with #. Every index file in the classpath is read,
+ * so projects that use GingerSpec can add their own classes. With -Dgingerspec.scan=true the package is
+ * scanned instead, as before. Results are cached for the life of the JVM.
+ */
+public final class ClassIndex {
+
+    public static final String SCAN_PROPERTY = "gingerspec.scan";
+
+    public static final String INDEX_LOCATION = "META-INF/services/";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassIndex.class);
+
+    private static final Map<List<Object>, Set<?>> CACHE = new ConcurrentHashMap<>();
+
+    private ClassIndex() {
+    }
+
+    /**
+     * Returns the subclasses of a type, from the index or, with -Dgingerspec.scan=true, scanning a package.
+     *
+     * @param type        superclass or interface
+     * @param scanPackage package to scan with -Dgingerspec.scan=true
+     * @param classLoader class loader of the index files and classes
+     * @param <T>         type
+     * @return the subclasses, in index order
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Set<Class<? extends T>> subTypesOf(Class<T> type, String scanPackage, ClassLoader classLoader) {
+        boolean scan = Boolean.getBoolean(SCAN_PROPERTY);
+        List<Object> key = Arrays.asList(type, scan ? scanPackage : null, classLoader);
+        return (Set<Class<? extends T>>) CACHE.computeIfAbsent(key, k -> {
+            long start = System.nanoTime();
+            Set<Class<? extends T>> classes = scan ? new Reflections(scanPackage).getSubTypesOf(type) : load(type, classLoader);
+            LOGGER.debug("Found {} subclasses of {} in {} ms ({})", classes.size(), type.getSimpleName(),
+                    (System.nanoTime() - start) / 1_000_000, scan ? "scan of " + scanPackage : "index");
+            if (classes.isEmpty() && !scan) {
+                LOGGER.warn("No subclass of {} listed in {}{}. The classpath is no longer scanned: list them there, "
+                        + "or run with -D{}=true", type.getName(), INDEX_LOCATION, type.getName(), SCAN_PROPERTY);
+            }
+            return Collections.unmodifiableSet(classes);
+        });
+    }
+
+    /**
+     * Reads the subclasses of a type listed in the index files.
+     *
+     * @param type        superclass or interface
+     * @param classLoader class loader of the index files and classes
+     * @param <T>         type
+     * @return the subclasses, in index order
+     */
+    static <T> Set<Class<? extends T>> load(Class<T> type, ClassLoader classLoader) {
+        Set<Class<? extends T>> classes = new LinkedHashSet<>();
+        try {
+            Enumeration<URL> indexes = classLoader.getResources(INDEX_LOCATION + type.getName());
+            while (indexes.hasMoreElements()) {
+                URL index = indexes.nextElement();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        int comment = line.indexOf('#');
+                        String name = (comment == -1 ? line : line.substring(0, comment)).trim();
+                        if (!name.isEmpty()) {
+                            classes.add(loadClass(type, name, classLoader, index));
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the index of " + type.getName(), e);
+        }
+        return classes;
+    }
+
+    private static <T> Class<? extends T> loadClass(Class<T> type, String name, ClassLoader classLoader, URL index) {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(name, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Class " + name + " listed in " + index + " does not exist", e);
+        }
+        if (!type.isAssignableFrom(clazz)) {
+            throw new IllegalStateException("Class " + name + " listed in " + index + " is not a " + type.getName());
+        }
+        return clazz.asSubclass(type);
+    }
+}
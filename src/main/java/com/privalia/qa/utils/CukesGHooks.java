@@ -51,6 +51,7 @@ public class CukesGHooks extends BaseGSpec implements ICucumberReporter, ICucumb
 
     @Override
     public void startOfScenarioLifeCycle(Scenario scenario) {
+        VariableStore.clear(VariableStore.Scope.SCENARIO);
     }
 
     @Override
@@ -76,14 +77,15 @@ public class CukesGHooks extends BaseGSpec implements ICucumberReporter, ICucumb
         logger.info("");
         logger.info("Feature: {}", feature.getName());
         logger.info("");
-        ThreadProperty.set("feature", feature.getName());
+        VariableStore.clear(VariableStore.Scope.FEATURE);
+        VariableStore.set(VariableStore.Scope.FEATURE, "feature", feature.getName());
     }
 
     @Override
     public void scenario(Scenario scenario) {
         this.scenario = scenario;
         logger.info("Scenario: {}", scenario.getName());
-        ThreadProperty.set("scenario", scenario.getName());
+        VariableStore.set(VariableStore.Scope.SCENARIO, "scenario", scenario.getName());
     }
 
     @Override
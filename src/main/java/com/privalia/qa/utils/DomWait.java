@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Waits for elements inside the browser, instead of looking for them from the driver at fixed intervals.
+ * <p>
+ * A single asynchronous script looks for the elements and checks the condition (count, visible, clickable,
+ * present or hidden) when the page is loaded and every time the DOM changes (MutationObserver), in the next
+ * animation frame. It checks it again every {@link #RECHECK_MILLIS} ms too, for changes that are not mutations
+ * (i.e. css animations). The script returns as soon as the condition holds, so the step does not wait for the
+ * rest of the polling interval. Long waits are split in scripts of {@link #CHUNK_MILLIS} ms, shorter than the
+ * script timeout of the driver.
+ * <p>
+ * Browsers that can not run the script (i.e. native contexts of Appium) are waited for by polling, as before.
+ * Disabled with -Dgingerspec.selenium.domwait=false.
+ */
+public final class DomWait {
+
+    public static final String DOMWAIT_PROPERTY = "gingerspec.selenium.domwait";
+
+    public static final long CHUNK_MILLIS = 10000;
+
+    public static final long RECHECK_MILLIS = 250;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DomWait.class);
+
+    private static final List<String> METHODS = Arrays.asList("id", "name", "class", "xpath", "css");
+
+    private static final List<String> TYPES = Arrays.asList("visible", "clickable", "present", "hidden");
+
+    private static final String IS_DISPLAYED = ElementSnapshot.atom("isDisplayed");
+
+    private static final String SCRIPT = "var args = arguments, callback = args[args.length - 1];"
+            + "var method = args[0], value = args[1], count = args[2], type = args[3], timeout = args[4];"
+            + "var isDisplayed = " + (IS_DISPLAYED == null ? "null" : "(" + IS_DISPLAYED + ")") + ";"
+            + "function quote(v) { return '\"' + v.replace(/([\"\\\\])/g, '\\\\$1') + '\"'; }"
+            + "function find() {"
+            + "  if (method === 'id') { return document.querySelectorAll('[id=' + quote(value) + ']'); }"
+            + "  if (method === 'name') { return document.querySelectorAll('[name=' + quote(value) + ']'); }"
+            + "  if (method === 'class') { return document.getElementsByClassName(value); }"
+            + "  if (method === 'css') { return document.querySelectorAll(value); }"
+            + "  var found = [], result = document.evaluate(value, document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+            + "  for (var i = 0; i < result.snapshotLength; i++) {"
+            + "    if (result.snapshotItem(i).nodeType === 1) { found.push(result.snapshotItem(i)); }"
+            + "  }"
+            + "  return found;"
+            + "}"
+            + "function check() {"
+            + "  var elements = Array.prototype.slice.call(find());"
+            + "  if (count >= 0 && elements.length !== count) { return null; }"
+            + "  if (type === 'present' && elements.length === 0) { return null; }"
+            + "  if (type === 'visible' && (elements.length === 0 || !elements.every(isDisplayed))) { return null; }"
+            + "  if (type === 'clickable' && (elements.length === 0 || !isDisplayed(elements[0])"
+            + "      || (elements[0].matches && elements[0].matches(':disabled')))) { return null; }"
+            + "  if (type === 'hidden' && elements.length > 0 && isDisplayed(elements[0])) { return null; }"
+            + "  return elements;"
+            + "}"
+            + "var done = false, scheduled = false, observer = null, timers = [];"
+            + "function finish(elements) {"
+            + "  if (done) { return; }"
+            + "  done = true;"
+            + "  if (observer) { observer.disconnect(); }"
+            + "  clearTimeout(timers[0]); clearInterval(timers[1]);"
+            + "  callback({done: elements !== null, elements: elements || []});"
+            + "}"
+            + "function run() {"
+            + "  scheduled = false;"
+            + "  if (!done) { var elements = check(); if (elements) { finish(elements); } }"
+            + "}"
+            + "function schedule() {"
+            + "  if (scheduled || done) { return; }"
+            + "  scheduled = true;"
+            + "  if (window.requestAnimationFrame) { requestAnimationFrame(run); }"
+            // background windows do not paint, so animation frames may never come
+            + "  setTimeout(run, 50);"
+            + "}"
+            + "run();"
+            + "if (!done) {"
+            + "  timers.push(setTimeout(function() { finish(null); }, timeout));"
+            + "  timers.push(setInterval(run, " + RECHECK_MILLIS + "));"
+            + "  if (window.MutationObserver) {"
+            + "    observer = new MutationObserver(schedule);"
+            + "    observer.observe(document, {childList: true, subtree: true, attributes: true, characterData: true});"
+            + "  }"
+            + "}";
+
+    private DomWait() {
+    }
+
+    /**
+     * @return whether waits are done in the browser (-Dgingerspec.selenium.domwait, true by default)
+     */
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(DOMWAIT_PROPERTY, "true").trim());
+    }
+
+    /**
+     * Waits until the elements located by a method have a count and a state.
+     *
+     * @param driver        driver
+     * @param method        class of element to be searched (id, name, class, xpath, css)
+     * @param element       webElement searched
+     * @param expectedCount expected number of elements, or -1 for any
+     * @param type          expected state of the elements: visible, clickable, present, hidden, or null for any
+     * @param timeoutMillis maximum time to wait
+     * @return the elements, or null if the browser can not wait for them and they have to be polled
+     * @throws TimeoutException if the condition does not hold before the timeout
+     */
+    public static List<WebElement> await(JavascriptExecutor driver, String method, String element, int expectedCount,
+                                         String type, long timeoutMillis) {
+        if (!METHODS.contains(method) || (type != null && !TYPES.contains(type))) {
+            return null;
+        }
+        if (type != null && !"present".equals(type) && IS_DISPLAYED == null) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + timeoutMillis * 1000000L;
+        boolean first = true;
+        while (true) {
+            long remaining = Math.max(0, (deadline - System.nanoTime()) / 1000000L);
+            Object result;
+            try {
+                result = driver.executeAsyncScript(SCRIPT, method, element, expectedCount, type,
+                        Math.min(remaining, CHUNK_MILLIS));
+            } catch (WebDriverException e) {
+                if (first) {
+                    LOGGER.debug("The browser can not wait for {}:{}, polling it: {}", method, element, e.getMessage());
+                    return null;
+                }
+                // i.e. the page was unloaded while waiting, look for the elements in the new one
+                LOGGER.debug("Waiting for {}:{} again: {}", method, element, e.getMessage());
+                result = null;
+            }
+            first = false;
+
+            if (result instanceof Map && Boolean.TRUE.equals(((Map<?, ?>) result).get("done"))) {
+                List<WebElement> elements = new ArrayList<>();
+                for (Object e : (List<?>) ((Map<?, ?>) result).get("elements")) {
+                    elements.add((WebElement) e);
+                }
+                LOGGER.debug("Found {} elements by {}:{} in {} ms", elements.size(), method, element,
+                        (System.nanoTime() - start) / 1000000L);
+                return elements;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                throw new TimeoutException("Expected condition failed: waiting for "
+                        + (expectedCount >= 0 ? expectedCount + " " : "") + "elements by " + method + ":" + element
+                        + (type != null ? " to be " + type : "") + " (tried for " + timeoutMillis + " ms)");
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import com.google.common.io.Resources;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The properties of a web element that the steps usually check: text, displayed, enabled, selected and
+ * attributes, read together with the ones of the other elements found in a single script.
+ * <p>
+ * Displayed and the attributes are computed with the same atoms that the remote driver uses for
+ * {@link WebElement#isDisplayed()} and {@link WebElement#getAttribute(String)}. The text is the rendered text
+ * (innerText) of the displayed elements, that is the same as {@link WebElement#getText()} but for some
+ * whitespace.
+ */
+public final class ElementSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElementSnapshot.class);
+
+    private static final String SCRIPT = script();
+
+    private final String text;
+
+    private final boolean displayed;
+
+    private final boolean enabled;
+
+    private final boolean selected;
+
+    private final Map<String, String> attributes;
+
+    ElementSnapshot(String text, boolean displayed, boolean enabled, boolean selected, Map<String, String> attributes) {
+        this.text = text;
+        this.displayed = displayed;
+        this.enabled = enabled;
+        this.selected = selected;
+        this.attributes = Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * Reads the properties of some elements.
+     *
+     * @param driver   driver
+     * @param elements elements
+     * @return one snapshot per element, or null if they can not be read (i.e. the atoms are not available)
+     */
+    public static List<ElementSnapshot> take(JavascriptExecutor driver, List<WebElement> elements) {
+        if (SCRIPT == null) {
+            return null;
+        }
+        try {
+            Object result = driver.executeScript(SCRIPT, elements);
+            if (!(result instanceof List)) {
+                return null;
+            }
+            List<ElementSnapshot> snapshots = new ArrayList<>();
+            for (Object element : (List<?>) result) {
+                snapshots.add(from((Map<?, ?>) element));
+            }
+            return snapshots;
+        } catch (WebDriverException | ClassCastException e) {
+            LOGGER.debug("Could not take a snapshot of the elements: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    static ElementSnapshot from(Map<?, ?> element) {
+        Map<String, String> attributes = new HashMap<>();
+        Object values = element.get("attributes");
+        if (values instanceof Map) {
+            for (Map.Entry<?, ?> attribute : ((Map<?, ?>) values).entrySet()) {
+                attributes.put(String.valueOf(attribute.getKey()),
+                        attribute.getValue() == null ? null : String.valueOf(attribute.getValue()));
+            }
+        }
+        return new ElementSnapshot(String.valueOf(element.get("text")), Boolean.TRUE.equals(element.get("displayed")),
+                Boolean.TRUE.equals(element.get("enabled")), Boolean.TRUE.equals(element.get("selected")), attributes);
+    }
+
+    private static String script() {
+        String isDisplayed = atom("isDisplayed");
+        String getAttribute = atom("getAttribute");
+        if (isDisplayed == null || getAttribute == null) {
+            return null;
+        }
+        return "var isDisplayed = (" + isDisplayed + ");"
+                + "var getAttribute = (" + getAttribute + ");"
+                + "return arguments[0].map(function(e) {"
+                + "  var attributes = {};"
+                + "  for (var i = 0; i < e.attributes.length; i++) {"
+                + "    attributes[e.attributes[i].name] = getAttribute(e, e.attributes[i].name);"
+                + "  }"
+                + "  attributes['value'] = getAttribute(e, 'value');"
+                + "  var displayed = isDisplayed(e);"
+                + "  return {"
+                + "    text: displayed ? (e.innerText || e.textContent || '').trim() : '',"
+                + "    displayed: displayed,"
+                + "    enabled: !(e.matches && e.matches(':disabled')),"
+                + "    selected: !!(e.selected || e.checked),"
+                + "    attributes: attributes"
+                + "  };"
+                + "});";
+    }
+
+    /**
+     * Reads one of the atoms that the remote driver sends to the browser.
+     *
+     * @param name name of the atom (i.e. isDisplayed)
+     * @return the source of the function, or null if the atom is not available
+     */
+    static String atom(String name) {
+        URL url = ElementSnapshot.class.getResource("/org/openqa/selenium/remote/" + name + ".js");
+        if (url == null) {
+            LOGGER.debug("Selenium atom {} not found", name);
+            return null;
+        }
+        try {
+            return Resources.toString(url, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.debug("Selenium atom {} can not be read: {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isDisplayed() {
+        return displayed;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isSelected() {
+        return selected;
+    }
+
+    /**
+     * @param name attribute name
+     * @return whether the attribute was read (i.e. it was present in the element)
+     */
+    public boolean hasAttribute(String name) {
+        return attributes.containsKey(name);
+    }
+
+    /**
+     * @param name attribute name
+     * @return the value, as returned by {@link WebElement#getAttribute(String)}
+     */
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+}
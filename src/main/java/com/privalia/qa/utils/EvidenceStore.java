@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import com.google.common.hash.Hashing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the evidences of the tests are stored.
+ * <p>
+ * With -Dgingerspec.evidence.store=files (the default), every evidence is a file in target/executions, as
+ * usual. Retried and looped scenarios capture the same page sources and screenshots again and again, so the
+ * other modes name the content by its SHA-256 and store it only once:
+ * <ul>
+ * <li>blobs: each different content is a file in target/executions/blobs</li>
+ * <li>tar: each different content is an entry of a single target/executions/evidences.tar, that is valid
+ * after every write</li>
+ * </ul>
+ * In both modes, target/executions/evidences.index has a line for every evidence written, with the hash of
+ * its content, its size and the path it would have had in the files mode. A text written several times to
+ * the same path (i.e. appended) has one line per part, in order. The index and the archive are created again
+ * by every JVM, so only one JVM can use each executions folder at the same time.
+ */
+public final class EvidenceStore implements Closeable {
+
+    public static final String STORE_PROPERTY = "gingerspec.evidence.store";
+
+    public static final String INDEX_NAME = "evidences.index";
+
+    public static final String ARCHIVE_NAME = "evidences.tar";
+
+    public static final String BLOBS_DIR = "blobs";
+
+    private static final int BLOCK = 512;
+
+    /**
+     * Storage modes.
+     */
+    public enum Mode {
+        FILES, BLOBS, TAR
+    }
+
+    private final Mode mode;
+
+    private final File root;
+
+    private final Set<String> blobs = ConcurrentHashMap.newKeySet();
+
+    private final Map<File, String> locations = new ConcurrentHashMap<>();
+
+    private final LongAdder references = new LongAdder();
+
+    private final LongAdder referencedBytes = new LongAdder();
+
+    private final LongAdder storedBytes = new LongAdder();
+
+    private FileChannel index;
+
+    private FileChannel archive;
+
+    private long archiveEnd;
+
+    /**
+     * @param mode storage mode
+     * @param root executions folder, the one that contains the evidences in the files mode
+     */
+    public EvidenceStore(Mode mode, File root) {
+        this.mode = mode;
+        this.root = root;
+    }
+
+    /**
+     * @return the store of target/executions (or target/executions/TESTSUFFIX), in the mode of
+     * -Dgingerspec.evidence.store
+     */
+    public static EvidenceStore fromSystemProperties() {
+        String testSuffix = System.getProperty("TESTSUFFIX");
+        String dir = "./target/executions/";
+        if (testSuffix != null) {
+            dir = dir + testSuffix + "/";
+        }
+        Mode mode = Mode.valueOf(System.getProperty(STORE_PROPERTY, "files").trim().toUpperCase(Locale.ROOT));
+        return new EvidenceStore(mode, new File(dir));
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the index of the evidences, or null in the files mode
+     */
+    public File getIndex() {
+        return mode == Mode.FILES ? null : new File(root, INDEX_NAME);
+    }
+
+    /**
+     * Writes an evidence.
+     *
+     * @param file    path of the evidence in the files mode
+     * @param content content
+     * @param append  whether the content is added to the one already written to the same path
+     * @throws IOException exception
+     */
+    public void write(File file, byte[] content, boolean append) throws IOException {
+        if (mode == Mode.FILES) {
+            createParent(file);
+            Files.write(file.toPath(), content, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+            return;
+        }
+
+        String hash = Hashing.sha256().hashBytes(content).toString();
+        String name = file.getName();
+        String blob = BLOBS_DIR + "/" + hash + (name.lastIndexOf('.') > 0 ? name.substring(name.lastIndexOf('.')) : "");
+        synchronized (this) {
+            // added once written, so the content is written again if this write fails
+            if (!blobs.contains(blob)) {
+                if (mode == Mode.BLOBS) {
+                    writeBlob(new File(root, blob), content);
+                } else {
+                    writeEntry(blob, content);
+                }
+                blobs.add(blob);
+                storedBytes.add(content.length);
+            }
+            writeIndex(hash + "\t" + content.length + "\t" + relativePath(file) + "\n");
+        }
+        references.increment();
+        referencedBytes.add(content.length);
+        locations.put(file, mode == Mode.BLOBS ? new File(root, blob).toString() : new File(root, ARCHIVE_NAME) + "!/" + blob);
+    }
+
+    /**
+     * @return the evidences written, by their path in the files mode
+     */
+    public Collection<File> getFiles() {
+        return new ArrayList<>(locations.keySet());
+    }
+
+    /**
+     * Returns where the content of an evidence is.
+     *
+     * @param file path of the evidence in the files mode
+     * @return the file itself in the files mode, the blob in the blobs mode, and the archive followed by
+     * "!/" and the entry in the tar mode. Null if it has not been written
+     */
+    public String locate(File file) {
+        return mode == Mode.FILES ? file.toString() : locations.get(file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (index != null) {
+                index.close();
+            }
+        } finally {
+            if (archive != null) {
+                archive.close();
+            }
+        }
+    }
+
+    /**
+     * @return how many evidences were written, and the disk and files (inodes) saved by storing each
+     * content once
+     */
+    @Override
+    public String toString() {
+        long written = references.sum();
+        long files = mode == Mode.BLOBS ? blobs.size() + 1 : 2;
+        return "EvidenceStore{mode=" + mode + ", evidences=" + written + ", blobs=" + blobs.size()
+                + ", bytesSaved=" + (referencedBytes.sum() - storedBytes.sum())
+                + ", filesSaved=" + (mode == Mode.FILES || written == 0 ? 0 : written - files) + "}";
+    }
+
+    private String relativePath(File file) {
+        String path = root.getAbsoluteFile().toPath().normalize()
+                .relativize(file.getAbsoluteFile().toPath().normalize()).toString();
+        return path.replace(File.separatorChar, '/');
+    }
+
+    private void writeIndex(String line) throws IOException {
+        if (index == null) {
+            File file = getIndex();
+            createParent(file);
+            index = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            index.write(buffer);
+        }
+    }
+
+    private static void writeBlob(File file, byte[] content) throws IOException {
+        if (file.isFile() && file.length() == content.length) {
+            // stored by a previous run
+            return;
+        }
+        createParent(file);
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.write(tmp.toPath(), content);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Appends a ustar entry to the archive, followed by the two empty blocks that end it.
+     */
+    private void writeEntry(String name, byte[] content) throws IOException {
+        if (archive == null) {
+            File file = new File(root, ARCHIVE_NAME);
+            createParent(file);
+            archive = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        byte[] header = new byte[BLOCK];
+        put(header, 0, 100, name);
+        put(header, 100, 8, "0000644");
+        put(header, 108, 8, "0000000");
+        put(header, 116, 8, "0000000");
+        put(header, 124, 12, String.format("%011o", content.length));
+        put(header, 136, 12, String.format("%011o", System.currentTimeMillis() / 1000));
+        put(header, 148, 8, "        ");
+        header[156] = '0';
+        put(header, 257, 6, "ustar");
+        put(header, 263, 2, "00");
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        put(header, 148, 8, String.format("%06o", checksum));
+        header[154] = 0;
+        header[155] = ' ';
+
+        int padding = (BLOCK - content.length % BLOCK) % BLOCK;
+        long position = archiveEnd;
+        position = writeFully(ByteBuffer.wrap(header), position);
+        position = writeFully(ByteBuffer.wrap(content), position);
+        position = writeFully(ByteBuffer.allocate(padding), position);
+        writeFully(ByteBuffer.allocate(2 * BLOCK), position);
+        archiveEnd = position;
+    }
+
+    private long writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += archive.write(buffer, position);
+        }
+        return position;
+    }
+
+    private static void put(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > length) {
+            throw new IllegalArgumentException("Too long for a tar header: " + value);
+        }
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private static void createParent(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Could not create " + parent);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the evidences of the tests (page sources and screenshots) in background threads (Singleton).
+ * <p>
+ * The test thread only gets the data from the driver; PNG encoding, folder creation and disk writes are done by
+ * a bounded pool (-Dgingerspec.evidence.threads, 2 by default). When its queue (-Dgingerspec.evidence.queue, 16
+ * by default) is full, the test thread writes the evidence itself, so a run with many failures can not use all
+ * the memory. {@link #flush()} waits for every pending evidence, and it is called at the end of every
+ * CucumberRunner and when the JVM exits. With -Dgingerspec.evidence.async=false, evidences are written
+ * in the test thread. The evidences are stored as configured with -Dgingerspec.evidence.store, see
+ * {@link EvidenceStore}.
+ */
+public enum EvidenceWriter {
+    INSTANCE;
+
+    public static final String ASYNC_PROPERTY = "gingerspec.evidence.async";
+
+    public static final String THREADS_PROPERTY = "gingerspec.evidence.threads";
+
+    public static final String QUEUE_PROPERTY = "gingerspec.evidence.queue";
+
+    public static final long FLUSH_TIMEOUT_SECONDS = 300;
+
+    private final Logger logger = LoggerFactory.getLogger(EvidenceWriter.class);
+
+    private final Map<Future<?>, File> pending = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final EvidenceStore store = EvidenceStore.fromSystemProperties();
+
+    /**
+     * A write of an evidence.
+     */
+    @FunctionalInterface
+    private interface Write {
+        void run() throws IOException;
+    }
+
+    EvidenceWriter() {
+        int threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, 2));
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "gingerspec-evidence-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(Math.max(1, Integer.getInteger(QUEUE_PROPERTY, 16))),
+                factory, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            flush();
+            try {
+                store.close();
+            } catch (IOException e) {
+                logger.error("Exception closing the evidences", e);
+            }
+        }, "gingerspec-evidence-flush"));
+    }
+
+    /**
+     * Appends a text (i.e. a page source) to a file, in UTF-8.
+     *
+     * @param file destination file
+     * @param text text
+     */
+    public void writeText(File file, String text) {
+        submit(file, () -> store.write(file, text.getBytes(StandardCharsets.UTF_8), true));
+    }
+
+    /**
+     * Encodes an image (i.e. a screenshot) as PNG and writes it to a file.
+     *
+     * @param file  destination file
+     * @param image image
+     */
+    public void writePng(File file, RenderedImage image) {
+        submit(file, () -> {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            if (!ImageIO.write(image, "PNG", png)) {
+                throw new IOException("No PNG writer available");
+            }
+            store.write(file, png.toByteArray(), false);
+        });
+    }
+
+    /**
+     * @return the evidences that are not written yet
+     */
+    public Collection<File> getPendingFiles() {
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * @return the evidences written by the store, by their path in the files mode (empty in that mode)
+     */
+    public Collection<File> getStoredFiles() {
+        return store.getFiles();
+    }
+
+    /**
+     * @param file path of an evidence
+     * @return where its content is, see {@link EvidenceStore#locate(File)}
+     */
+    public String locate(File file) {
+        return store.locate(file);
+    }
+
+    /**
+     * @return the index of the evidences, or null if they are stored as files
+     */
+    public File getIndex() {
+        return store.getIndex();
+    }
+
+    /**
+     * Waits until every pending evidence is written.
+     */
+    public void flush() {
+        List<Future<?>> writes = new ArrayList<>(pending.keySet());
+        for (Future<?> write : writes) {
+            try {
+                write.get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // already logged by the write
+            } catch (TimeoutException e) {
+                logger.error("Timeout writing evidences, {} pending", pending.size());
+                return;
+            }
+        }
+        if (store.getMode() != EvidenceStore.Mode.FILES) {
+            logger.info("{}, index at {}", store, store.getIndex());
+        }
+    }
+
+    private void submit(File file, Write write) {
+        Runnable task = () -> {
+            try {
+                write.run();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Exception on evidence capture", e);
+            }
+        };
+
+        if (!Boolean.parseBoolean(System.getProperty(ASYNC_PROPERTY, "true"))) {
+            task.run();
+            return;
+        }
+
+        FutureTask<Void> future = new FutureTask<Void>(task, null) {
+            // removed before the waiters of flush() are released
+
+            @Override
+            protected void set(Void result) {
+                pending.remove(this);
+                super.set(result);
+            }
+
+            @Override
+            protected void setException(Throwable t) {
+                pending.remove(this);
+                super.setException(t);
+            }
+        };
+        pending.put(future, file);
+        executor.execute(future);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a number of requests at a constant rate, with a maximum of requests in flight, and measures them.
+ * <p>
+ * The requests are started at their scheduled time whether the previous ones have finished or not (open
+ * model). When all the threads are busy, the next requests wait for one, and that wait is part of their
+ * latency: the latency of each request is measured from the time it should have started, so a slow
+ * service is not hidden by sending it fewer requests (coordinated omission). The time the service took to
+ * answer is recorded apart. Latencies are recorded in microseconds, in HdrHistograms.
+ */
+public final class LoadGenerator {
+
+    public static final String TIMEOUT_PROPERTY = "gingerspec.load.timeout";
+
+    public static final long DEFAULT_TIMEOUT_SECONDS = 300;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final int requests;
+
+    private final int concurrency;
+
+    private final double rate;
+
+    /**
+     * A request.
+     */
+    @FunctionalInterface
+    public interface Request {
+
+        /**
+         * Sends the request.
+         *
+         * @return whether the request succeeded
+         * @throws Exception if the request could not be sent (counted as an error)
+         */
+        boolean send() throws Exception;
+    }
+
+    /**
+     * What was measured while sending the requests.
+     */
+    public static final class Result {
+
+        private final Histogram latencies = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+
+        private final Histogram serviceTimes = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+
+        private final LongAdder errors = new LongAdder();
+
+        private final int requests;
+
+        private long timedOut;
+
+        private long durationNanos;
+
+        Result(int requests) {
+            this.requests = requests;
+        }
+
+        void record(long latencyNanos, long serviceNanos, boolean success) {
+            latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(0, latencyNanos)));
+            serviceTimes.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(0, serviceNanos)));
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        void recordTimeout(long latencyNanos) {
+            latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(0, latencyNanos)));
+            errors.increment();
+            timedOut++;
+        }
+
+        /**
+         * @return latencies, from the scheduled start of each request, in microseconds. The requests that had
+         * not finished by the timeout are recorded with the latency they had then
+         */
+        public Histogram getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * @return times the service took to answer each request, in microseconds
+         */
+        public Histogram getServiceTimes() {
+            return serviceTimes;
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return requests that did not finish before the timeout
+         */
+        public long getTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return requests that failed, or that did not finish before the timeout
+         */
+        public long getErrors() {
+            return errors.sum() + requests - latencies.getTotalCount();
+        }
+
+        /**
+         * @return errors, in percent of the requests
+         */
+        public double getErrorRate() {
+            return requests == 0 ? 0 : 100.0 * getErrors() / requests;
+        }
+
+        /**
+         * @return finished requests per second
+         */
+        public double getThroughput() {
+            return durationNanos == 0 ? 0 : (latencies.getTotalCount() - timedOut) * 1e9 / durationNanos;
+        }
+
+        /**
+         * @param percentile percentile (i.e. 99.9), or 100 for the maximum
+         * @return latency at the percentile, in milliseconds
+         */
+        public double getLatency(double percentile) {
+            long micros = percentile >= 100 ? latencies.getMaxValue() : latencies.getValueAtPercentile(percentile);
+            return micros / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests in %.1f s (%.1f req/s), %d errors (%.2f%%), latency p50=%.1f p95=%.1f "
+                            + "p99=%.1f max=%.1f ms, service time p50=%.1f p99=%.1f ms", requests, durationNanos / 1e9,
+                    getThroughput(), getErrors(), getErrorRate(), getLatency(50), getLatency(95), getLatency(99),
+                    getLatency(100), serviceTimes.getValueAtPercentile(50) / 1000.0,
+                    serviceTimes.getValueAtPercentile(99) / 1000.0);
+        }
+    }
+
+    /**
+     * @param requests    number of requests to send
+     * @param concurrency maximum number of requests in flight
+     * @param rate        requests started per second
+     */
+    public LoadGenerator(int requests, int concurrency, double rate) {
+        if (requests < 0 || concurrency <= 0 || rate <= 0) {
+            throw new IllegalArgumentException("Invalid load: " + requests + " requests, concurrency " + concurrency
+                    + ", " + rate + " requests per second");
+        }
+        this.requests = requests;
+        this.concurrency = concurrency;
+        this.rate = rate;
+    }
+
+    /**
+     * Sends the requests and waits for them, -Dgingerspec.load.timeout seconds (300 by default) at most after
+     * the last one is started. The requests that have not finished by then are errors, and their latency is the
+     * time since they were scheduled.
+     *
+     * @param request request to send
+     * @return what was measured
+     * @throws InterruptedException if interrupted while sending the requests
+     */
+    public Result run(Request request) throws InterruptedException {
+        Result result = new Result(requests);
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threads = runnable -> {
+            Thread thread = new Thread(runnable, "gingerspec-load-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, threads);
+        long[] schedule = new long[requests];
+        // 1 once the request is recorded, by its thread or by the timeout
+        AtomicIntegerArray recorded = new AtomicIntegerArray(requests);
+
+        double interval = 1e9 / rate;
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                schedule[index] = start + (long) (index * interval);
+                long wait;
+                while ((wait = schedule[index] - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                executor.execute(() -> {
+                    long sent = System.nanoTime();
+                    boolean success;
+                    try {
+                        success = request.send();
+                    } catch (Exception e) {
+                        LOGGER.debug("Request failed: {}", e.getMessage());
+                        success = false;
+                    }
+                    long end = System.nanoTime();
+                    if (recorded.compareAndSet(index, 0, 1)) {
+                        result.record(end - schedule[index], end - sent, success);
+                    }
+                });
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_SECONDS), TimeUnit.SECONDS)) {
+                long now = System.nanoTime();
+                for (int i = 0; i < requests; i++) {
+                    if (recorded.compareAndSet(i, 0, 1)) {
+                        result.recordTimeout(now - schedule[i]);
+                    }
+                }
+                LOGGER.warn("Timeout waiting for the requests, {} have not finished", result.getTimedOut());
+            }
+        } finally {
+            executor.shutdownNow();
+            result.durationNanos = System.nanoTime() - start;
+        }
+        LOGGER.info("{}", result);
+        return result;
+    }
+}
@@ -17,13 +17,30 @@
 package com.privalia.qa.utils;
 
 import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.RemoteWebDriver;
 
 import java.util.List;
 
+/**
+ * The web elements found by the last step that looked for them.
+ * <p>
+ * With -Dgingerspec.selenium.snapshot=true, the first check of their state takes a snapshot of all of them in a
+ * single script (see {@link ElementSnapshot}), and the next checks are answered from it. The snapshot is only
+ * used while no other command has been sent to the driver since it was taken, so a click, a navigation or any
+ * other change to the page makes the checks go to the driver again, until {@link #refresh()} is called.
+ */
 public final class PreviousWebElements {
 
+    public static final String SNAPSHOT_PROPERTY = "gingerspec.selenium.snapshot";
+
     private List<WebElement> previousWebElements;
 
+    private RemoteWebDriver driver;
+
+    private List<ElementSnapshot> snapshots;
+
+    private long commandCount;
+
     public PreviousWebElements(List<WebElement> previousWebElements) {
         this.previousWebElements = previousWebElements;
     }
@@ -34,6 +51,63 @@ public final class PreviousWebElements {
 
     public void setPreviousWebElements(List<WebElement> previousWebElements) {
         this.previousWebElements = previousWebElements;
+        this.snapshots = null;
+        this.driver = null;
+    }
+
+    /**
+     * Allows the snapshots of the elements, if they are enabled and the commands of the driver can be
+     * counted (see {@link TrackingCommandExecutor}).
+     *
+     * @param driver driver that found the elements
+     */
+    public void track(RemoteWebDriver driver) {
+        this.snapshots = null;
+        this.driver = null;
+        if (Boolean.getBoolean(SNAPSHOT_PROPERTY) && driver != null && previousWebElements != null
+                && driver.getCommandExecutor() instanceof TrackingCommandExecutor) {
+            this.driver = driver;
+            this.commandCount = commands();
+        }
+    }
+
+    /**
+     * Returns the state of an element, if nothing has been sent to the driver since it was found or since
+     * the last snapshot.
+     *
+     * @param index index of the element
+     * @return the snapshot, or null if the element must be checked in the driver
+     */
+    public ElementSnapshot getSnapshot(int index) {
+        if (driver == null || commands() != commandCount) {
+            return null;
+        }
+        if (snapshots == null) {
+            refresh();
+            if (snapshots == null) {
+                return null;
+            }
+        }
+        return index < snapshots.size() ? snapshots.get(index) : null;
     }
 
-}
\ No newline at end of file
+    /**
+     * Takes a new snapshot of the elements, i.e. after the page has changed.
+     */
+    public void refresh() {
+        if (driver == null) {
+            return;
+        }
+        snapshots = ElementSnapshot.take(driver, previousWebElements);
+        if (snapshots == null) {
+            // not supported by the driver, do not try again
+            driver = null;
+            return;
+        }
+        commandCount = commands();
+    }
+
+    private long commands() {
+        return ((TrackingCommandExecutor) driver.getCommandExecutor()).getCommandCount();
+    }
+}
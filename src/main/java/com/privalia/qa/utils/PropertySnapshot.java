@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import org.apache.commons.configuration2.CombinedConfiguration;
+import org.apache.commons.configuration2.FileBasedConfiguration;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.configuration2.builder.FileBasedConfigurationBuilder;
+import org.apache.commons.configuration2.builder.fluent.Parameters;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.configuration2.tree.OverrideCombiner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Immutable, process-wide view of the properties used by the #{} replacement.
+ * <p>
+ * The values of configuration/common.properties and, if -Denv is set, configuration/&lt;env&gt;.properties
+ * (which overrides the common file) are read once and flattened into an unmodifiable map that can be
+ * shared by any number of threads. The snapshot is rebuilt only when the environment changes or when
+ * the modification time of one of its source files changes. The modification times are checked at most
+ * once every {@link #MTIME_CHECK_INTERVAL} ms.
+ * <p>
+ * For long-running sessions, -Dgingerspec.properties.watch=true registers a file watcher over the
+ * configuration folder instead, so lookups never touch the filesystem and changes are picked up as
+ * soon as they are written.
+ */
+public final class PropertySnapshot {
+
+    public static final String WATCH_PROPERTY = "gingerspec.properties.watch";
+
+    public static final long MTIME_CHECK_INTERVAL = 1000L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertySnapshot.class);
+
+    private static final AtomicReference<PropertySnapshot> CURRENT = new AtomicReference<>();
+
+    private static final Object LOCK = new Object();
+
+    private static volatile Thread watcher;
+
+    private final String environment;
+
+    private final Map<String, String> values;
+
+    private final Map<File, Long> sources;
+
+    private volatile long lastCheck;
+
+    private PropertySnapshot(String environment, Map<String, String> values, Map<File, Long> sources) {
+        this.environment = environment;
+        this.values = Collections.unmodifiableMap(values);
+        this.sources = Collections.unmodifiableMap(sources);
+        this.lastCheck = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the current snapshot, loading it if this is the first call or if it became stale.
+     *
+     * @return the current snapshot
+     * @throws ConfigurationException ConfigurationException
+     * @throws URISyntaxException     URISyntaxException
+     * @throws FileNotFoundException  FileNotFoundException
+     */
+    public static PropertySnapshot get() throws ConfigurationException, URISyntaxException, FileNotFoundException {
+        String environment = System.getProperty("env", null);
+        PropertySnapshot snapshot = CURRENT.get();
+
+        if (snapshot != null && Objects.equals(snapshot.environment, environment) && !snapshot.isStale()) {
+            return snapshot;
+        }
+
+        synchronized (LOCK) {
+            snapshot = CURRENT.get();
+            if (snapshot == null || !Objects.equals(snapshot.environment, environment) || snapshot.isStale()) {
+                snapshot = load(environment);
+                CURRENT.set(snapshot);
+                if (Boolean.getBoolean(WATCH_PROPERTY)) {
+                    startWatcher(snapshot.sources.keySet());
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Discards the current snapshot, so the next call to {@link #get()} reads the files again.
+     */
+    public static void invalidate() {
+        CURRENT.set(null);
+    }
+
+    /**
+     * Returns the value of the given property.
+     *
+     * @param property property name
+     * @return the value, or null if the property is not defined
+     */
+    public String getString(String property) {
+        return values.get(property);
+    }
+
+    /**
+     * Returns all the properties in this snapshot.
+     *
+     * @return unmodifiable map of properties
+     */
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    private boolean isStale() {
+        if (watcher != null) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastCheck < MTIME_CHECK_INTERVAL) {
+            return false;
+        }
+        lastCheck = now;
+
+        for (Map.Entry<File, Long> source : sources.entrySet()) {
+            if (source.getKey().lastModified() != source.getValue()) {
+                LOGGER.debug("{} has changed, reloading properties", source.getKey());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PropertySnapshot load(String environment) throws ConfigurationException, URISyntaxException, FileNotFoundException {
+        Parameters params = new Parameters();
+        CombinedConfiguration config = new CombinedConfiguration(new OverrideCombiner());
+        Map<File, Long> sources = new LinkedHashMap<>();
+
+        /*If environment specific file is required, search it by its name and add it as a source of properties*/
+        if (environment != null) {
+            File envFile = getFile(environment);
+            sources.put(envFile, envFile.lastModified());
+            FileBasedConfigurationBuilder<FileBasedConfiguration> config2 = new FileBasedConfigurationBuilder<FileBasedConfiguration>(
+                    PropertiesConfiguration.class).configure(params.properties().setFile(envFile));
+            config.addConfiguration(config2.getConfiguration());
+        }
+
+        /*Add the file common.properties as a source of properties*/
+        File commonFile = getFile("common");
+        sources.put(commonFile, commonFile.lastModified());
+        FileBasedConfigurationBuilder<FileBasedConfiguration> config1 = new FileBasedConfigurationBuilder<FileBasedConfiguration>(
+                PropertiesConfiguration.class).configure(params.properties().setFile(commonFile));
+        config.addConfiguration(config1.getConfiguration());
+
+        Map<String, String> values = new HashMap<>();
+        Iterator<String> keys = config.getKeys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            values.put(key, config.getString(key));
+        }
+
+        LOGGER.debug("Loaded {} properties from {}", values.size(), sources.keySet());
+        return new PropertySnapshot(environment, values, sources);
+    }
+
+    private static File getFile(String environment) throws URISyntaxException, FileNotFoundException {
+
+        URL url = PropertySnapshot.class.getClassLoader().getResource("configuration/" + environment + ".properties");
+
+        if (url != null) {
+            return new File(url.toURI());
+        } else {
+            LOGGER.error("The configuration file {}.properties was not found", environment);
+            throw new FileNotFoundException("The configuration file " + environment + ".properties was not found");
+        }
+    }
+
+    private static void startWatcher(Set<File> files) {
+        if (watcher != null) {
+            return;
+        }
+
+        Set<Path> folders = new HashSet<>();
+        for (File file : files) {
+            folders.add(file.getAbsoluteFile().getParentFile().toPath());
+        }
+
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path folder : folders) {
+                folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not watch the configuration folder, falling back to modification time checks", e);
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                try {
+                    key = watchService.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (String.valueOf(event.context()).endsWith(".properties")) {
+                        LOGGER.debug("{} has changed, reloading properties", event.context());
+                        invalidate();
+                    }
+                }
+                key.reset();
+            }
+        }, "gingerspec-properties-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        watcher = thread;
+    }
+}
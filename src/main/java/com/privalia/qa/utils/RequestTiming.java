@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How long a REST request took, and in what.
+ * <p>
+ * A timing is started on the thread that sends the request, and the connections of {@link RestClients} add
+ * to it what they measure on that thread: the DNS resolution, the TCP connection and the TLS handshake (only
+ * when a new connection is opened), and the time to the first byte of the response. The TLS handshake is
+ * part of the connection when RestAssured uses its own https factory (i.e. with relaxed validation).
+ * Times not measured are -1.
+ */
+public final class RequestTiming {
+
+    public static final String LOG_NAME = "requests.jsonl";
+
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Object LOG_LOCK = new Object();
+
+    private final String method;
+
+    private final String url;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    private final long start = System.nanoTime();
+
+    private long dns = -1;
+
+    private long connect = -1;
+
+    private long tls = -1;
+
+    private long tlsStart;
+
+    private long firstByte = -1;
+
+    private long total = -1;
+
+    private int status;
+
+    RequestTiming(String method, String url) {
+        this.method = method;
+        this.url = url;
+    }
+
+    /**
+     * Starts the timing of a request sent by the current thread.
+     *
+     * @param method HTTP verb
+     * @param url    url of the request
+     * @return the timing
+     */
+    public static RequestTiming start(String method, String url) {
+        RequestTiming timing = new RequestTiming(method, url);
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    /**
+     * Ends the timing.
+     *
+     * @param status status of the response, or 0 if there is none
+     * @return the timing
+     */
+    public RequestTiming stop(int status) {
+        this.status = status;
+        total = System.nanoTime() - start;
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        return this;
+    }
+
+    static void dnsResolved(long nanos) {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.dns = Math.max(timing.dns, 0) + nanos;
+        }
+    }
+
+    static void tlsStarted() {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.tlsStart = System.nanoTime();
+        }
+    }
+
+    static void connectionOpened(long startNanos, long endNanos) {
+        RequestTiming timing = CURRENT.get();
+        if (timing == null) {
+            return;
+        }
+        long connected = endNanos;
+        if (timing.tlsStart > startNanos) {
+            timing.tls = endNanos - timing.tlsStart;
+            connected = timing.tlsStart;
+        }
+        timing.connect = Math.max(0, connected - startNanos - Math.max(timing.dns, 0));
+    }
+
+    static void firstByteReceived() {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null && timing.firstByte < 0) {
+            timing.firstByte = System.nanoTime() - timing.start;
+        }
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return DNS resolution, in ms
+     */
+    public double getDns() {
+        return millis(dns);
+    }
+
+    /**
+     * @return TCP connection, in ms
+     */
+    public double getConnect() {
+        return millis(connect);
+    }
+
+    /**
+     * @return TLS handshake, in ms
+     */
+    public double getTls() {
+        return millis(tls);
+    }
+
+    /**
+     * @return time from the start of the request to the first byte of the response, in ms
+     */
+    public double getTimeToFirstByte() {
+        return millis(firstByte);
+    }
+
+    /**
+     * @return time from the start of the request to the whole response, in ms
+     */
+    public double getTotal() {
+        return millis(total);
+    }
+
+    /**
+     * @return whether the request was sent through a connection opened before
+     */
+    public boolean isReused() {
+        return status > 0 && dns < 0 && connect < 0;
+    }
+
+    private static double millis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1e6;
+    }
+
+    /**
+     * @param context fields added before the times (i.e. the test class)
+     * @return the timing as a line of JSON
+     * @throws JsonProcessingException exception
+     */
+    public String toJson(Map<String, String> context) throws JsonProcessingException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("timestamp", timestamp);
+        line.putAll(context);
+        line.put("method", method);
+        line.put("url", url);
+        line.put("status", status);
+        line.put("reused", isReused());
+        line.put("dns", dns < 0 ? null : getDns());
+        line.put("connect", connect < 0 ? null : getConnect());
+        line.put("tls", tls < 0 ? null : getTls());
+        line.put("ttfb", firstByte < 0 ? null : getTimeToFirstByte());
+        line.put("total", getTotal());
+        return MAPPER.writeValueAsString(line);
+    }
+
+    /**
+     * Appends the timings of a scenario to a JSON lines file, shared by all the scenarios.
+     *
+     * @param file    file
+     * @param timings timings
+     * @param context fields added to every line (i.e. the test class)
+     * @throws IOException exception
+     */
+    public static void appendLog(File file, List<RequestTiming> timings, Map<String, String> context) throws IOException {
+        if (timings.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (RequestTiming timing : timings) {
+            lines.append(timing.toJson(context)).append('\n');
+        }
+        synchronized (LOG_LOCK) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Could not create " + parent);
+            }
+            Files.write(file.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import org.hjson.JsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of the classpath resources read by {@code CommonG.retrieveData} and the
+ * {@literal @}{JSON.x} / {@literal @}{FILE.x} replacements (Singleton).
+ * <p>
+ * Entries hold the normalized content (line breaks removed, Hjson already converted to json) and are
+ * keyed by resource path, charset and type. Resources that live in a folder (i.e. target/test-classes)
+ * are read again when their modification time changes. The maximum number of cached chars can be
+ * set with -Dgingerspec.resources.cache.chars (16M by default).
+ */
+public enum ResourceCache {
+    INSTANCE;
+
+    public static final String MAX_CHARS_PROPERTY = "gingerspec.resources.cache.chars";
+
+    public static final long DEFAULT_MAX_CHARS = 16_000_000L;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Logger logger = LoggerFactory.getLogger(ResourceCache.class);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final Cache<Key, Entry> cache = CacheBuilder.newBuilder()
+            .maximumWeight(Long.getLong(MAX_CHARS_PROPERTY, DEFAULT_MAX_CHARS))
+            .weigher((Key key, Entry entry) -> entry.content.length())
+            .removalListener(notification -> {
+                if (notification.getCause() == RemovalCause.SIZE) {
+                    evictions.increment();
+                }
+            })
+            .build();
+
+    /**
+     * Returns the normalized content of a classpath resource.
+     *
+     * @param path    path to the resource
+     * @param type    type of information, it can be: json|string
+     * @param charset charset to use when reading the resource
+     * @return the content, or null if the resource does not exist
+     * @throws IOException exception
+     */
+    public String get(String path, String type, String charset) throws IOException {
+        Key key = new Key(path, type, charset);
+        Entry entry = cache.getIfPresent(key);
+
+        if (entry != null && !entry.isModified()) {
+            hits.increment();
+            return entry.content;
+        }
+
+        misses.increment();
+        URL url = getClass().getClassLoader().getResource(path);
+        if (url == null) {
+            cache.invalidate(key);
+            return null;
+        }
+
+        File file = toFile(url);
+        long lastModified = file == null ? 0L : file.lastModified();
+
+        String content;
+        try (InputStream stream = url.openStream()) {
+            content = normalize(read(stream, charset), type);
+        }
+
+        cache.put(key, new Entry(content, file, lastModified));
+        return content;
+    }
+
+    /**
+     * Returns the normalized content of a classpath resource, or an error message in its place, as expected by
+     * the steps and the replacements.
+     *
+     * @param path    path to the resource
+     * @param type    type of information, it can be: json|string
+     * @param charset charset to use when reading the resource
+     * @return the content, or "ERR! ..." if the resource does not exist or could not be read
+     */
+    public String retrieveData(String path, String type, String charset) {
+        String result;
+
+        try {
+            result = get(path, type, charset);
+        } catch (IOException readerexception) {
+            logger.error(readerexception.getMessage());
+            return "ERR! File could not be read: " + path;
+        }
+
+        if (result == null) {
+            logger.error("File does not exist: {}", path);
+            return "ERR! File not found: " + path;
+        }
+        return result;
+    }
+
+    /**
+     * Discards every cached resource.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceCache{hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions()
+                + ", entries=" + cache.size() + "}";
+    }
+
+    private static String read(InputStream stream, String charset) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[BUFFER_SIZE];
+        Reader reader = new InputStreamReader(stream, charset);
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+            text.append(buffer, 0, n);
+        }
+        return text.toString();
+    }
+
+    private static String normalize(String text, String type) {
+        String std = text.replace("\r", "").replace("\n", ""); // make sure we have unix style text regardless of the input
+
+        if ("json".equals(type)) {
+            return JsonValue.readHjson(std).asObject().toString();
+        }
+        return std;
+    }
+
+    private File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            logger.debug("Modification time of {} will not be checked: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    private static final class Entry {
+
+        private final String content;
+
+        private final File file;
+
+        private final long lastModified;
+
+        private Entry(String content, File file, long lastModified) {
+            this.content = content;
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+
+        private boolean isModified() {
+            return file != null && file.lastModified() != lastModified;
+        }
+    }
+
+    private static final class Key {
+
+        private final String path;
+
+        private final String type;
+
+        private final String charset;
+
+        private Key(String path, String type, String charset) {
+            this.path = path;
+            this.type = type;
+            this.charset = charset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return path.equals(other.path) && Objects.equals(type, other.type) && Objects.equals(charset, other.charset);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, type, charset);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.filter.FilterContext;
+import com.ning.http.client.filter.RequestFilter;
+import io.restassured.RestAssured;
+import io.restassured.config.HttpClientConfig;
+import io.restassured.config.RestAssuredConfig;
+import io.restassured.response.Response;
+import io.restassured.specification.FilterableRequestSpecification;
+import io.restassured.specification.FilterableResponseSpecification;
+import io.restassured.specification.RequestSpecification;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.ssl.SSLContexts;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The HTTP clients of the {@literal @}rest scenarios, shared by the whole suite (Singleton).
+ * <p>
+ * Instead of a new client (and new connections) per scenario, the scenarios share:
+ * <ul>
+ * <li>an AsyncHttpClient with a connection pool, used by {@code CommonG.generateRequest}</li>
+ * <li>connection pools for RestAssured ({@link #given()}). Each request still has its own client, so the
+ * cookies and credentials of a scenario are not seen by the others, but the connections are taken from
+ * a pool. https certificates are validated, except for the requests passed to
+ * {@link #relaxedHTTPSValidation(RequestSpecification)}, which take their connections from a second pool that
+ * accepts any certificate and host name, as the AsyncHttpClient does</li>
+ * </ul>
+ * Each client gets a copy of the schemes of its pool, so a scenario cannot change them for the others. The
+ * requests that register their own socket factory (i.e. RestAssured keyStore, trustStore or
+ * relaxedHTTPSValidation) do not use the pools: their connections are opened with that factory, by a connection
+ * manager of their own.
+ * The connections to each host are limited by -Dgingerspec.rest.maxPerHost (twice the threads that can run
+ * scenarios by default, raised to the concurrency of the load tests), and idle connections are kept for -Dgingerspec.rest.keepAlive seconds (30 by default).
+ * <p>
+ * The RestAssured clients count the connections opened (each one a TCP handshake, and a TLS one for https)
+ * and the connections reused, and measure each request (see {@link RequestTiming}). AsyncHttpClient does
+ * not tell when it opens a connection, so only its requests are counted.
+ */
+public enum RestClients {
+    INSTANCE;
+
+    public static final String MAX_PER_HOST_PROPERTY = "gingerspec.rest.maxPerHost";
+
+    public static final String KEEP_ALIVE_PROPERTY = "gingerspec.rest.keepAlive";
+
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 30;
+
+    private final LongAdder asyncRequests = new LongAdder();
+
+    private final LongAdder handshakes = new LongAdder();
+
+    private final LongAdder tlsHandshakes = new LongAdder();
+
+    private final LongAdder leases = new LongAdder();
+
+    private final LongAdder connects = new LongAdder();
+
+    private final int maxPerHost;
+
+    private final long keepAlive;
+
+    private final PoolingClientConnectionManager manager;
+
+    private final PoolingClientConnectionManager relaxedManager;
+
+    private final RestAssuredConfig restAssuredConfig;
+
+    private final HttpClientConfig relaxedHttpClientConfig;
+
+    private AsyncHttpClient asyncClient;
+
+    RestClients() {
+        int parallelism = Math.max(Integer.getInteger("gingerspec.parallel", 1), WebDriverTransport.DEFAULT_DATA_PROVIDER_THREADS);
+        maxPerHost = Math.max(1, Integer.getInteger(MAX_PER_HOST_PROPERTY, 2 * parallelism));
+        keepAlive = TimeUnit.SECONDS.toMillis(Long.getLong(KEEP_ALIVE_PROPERTY, DEFAULT_KEEP_ALIVE_SECONDS));
+
+        manager = pool(false);
+        relaxedManager = pool(true);
+        restAssuredConfig = RestAssuredConfig.config().httpClient(httpClientConfig(manager));
+        relaxedHttpClientConfig = httpClientConfig(relaxedManager);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "gingerspec-rest-clients"));
+    }
+
+    private PoolingClientConnectionManager pool(boolean trustAll) {
+        SchemeRegistry schemes = new SchemeRegistry();
+        schemes.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+        schemes.register(new Scheme("https", 443, new TimedSSLSocketFactory(trustAll)));
+        PoolingClientConnectionManager pool = new TimedConnectionManager(schemes);
+        pool.setDefaultMaxPerRoute(maxPerHost);
+        pool.setMaxTotal(4 * maxPerHost);
+        return pool;
+    }
+
+    private HttpClientConfig httpClientConfig(PoolingClientConnectionManager pool) {
+        return HttpClientConfig.httpClientConfig().httpClientFactory(() -> {
+            DefaultHttpClient client = new TimedHttpClient(new SharedConnectionManager(pool));
+            HttpConnectionParams.setTcpNoDelay(client.getParams(), true);
+            client.setKeepAliveStrategy((response, context) -> {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+            });
+            return client;
+        });
+    }
+
+    /**
+     * @return a RestAssured request that takes its connections from the pool
+     */
+    public static RequestSpecification given() {
+        return RestAssured.given().config(INSTANCE.restAssuredConfig).filter(RestClients::readBody);
+    }
+
+    /**
+     * Reads the body of the response, so its connection goes back to the pool. RestAssured keeps the
+     * connection until the body is read, and the responses whose body is never read would hold a connection
+     * of the pool for ever.
+     */
+    private static Response readBody(FilterableRequestSpecification request, FilterableResponseSpecification response,
+                                     io.restassured.filter.FilterContext context) {
+        Response result = context.next(request, response);
+        result.asByteArray();
+        return result;
+    }
+
+    /**
+     * Makes a request accept any certificate and host name for https, taking its connections from the pool of
+     * such connections. Unlike {@link RequestSpecification#relaxedHTTPSValidation()}, whose connections are not
+     * pooled.
+     *
+     * @param request request created by {@link #given()}
+     * @return the request
+     */
+    public static RequestSpecification relaxedHTTPSValidation(RequestSpecification request) {
+        RestAssuredConfig config = ((FilterableRequestSpecification) request).getConfig();
+        return request.config((config == null ? RestAssuredConfig.config() : config).httpClient(INSTANCE.relaxedHttpClientConfig));
+    }
+
+    /**
+     * Raises the connections to each host of the RestAssured pool, if it allows fewer (i.e. for the requests of
+     * a load test, so their concurrency is not limited by the pool). The limit is not lowered afterwards.
+     *
+     * @param connections connections to each host
+     */
+    public synchronized void ensureMaxPerHost(int connections) {
+        for (PoolingClientConnectionManager pool : new PoolingClientConnectionManager[]{manager, relaxedManager}) {
+            if (connections > pool.getDefaultMaxPerRoute()) {
+                pool.setDefaultMaxPerRoute(connections);
+                pool.setMaxTotal(Math.max(pool.getMaxTotal(), 4 * connections));
+            }
+        }
+    }
+
+    /**
+     * @return the AsyncHttpClient of the suite. It must not be closed by the scenarios
+     */
+    public synchronized AsyncHttpClient getAsyncClient() {
+        if (asyncClient == null || asyncClient.isClosed()) {
+            asyncClient = new AsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                    .setAcceptAnyCertificate(true)
+                    .setAllowPoolingConnections(true)
+                    .setAllowPoolingSslConnections(true)
+                    .setMaxConnectionsPerHost(maxPerHost)
+                    .setMaxConnections(4 * maxPerHost)
+                    .setPooledConnectionIdleTimeout((int) keepAlive)
+                    .addRequestFilter(new RequestFilter() {
+                        @Override
+                        public <T> FilterContext<T> filter(FilterContext<T> ctx) {
+                            asyncRequests.increment();
+                            return ctx;
+                        }
+                    })
+                    .build());
+        }
+        return asyncClient;
+    }
+
+    /**
+     * @return requests sent with the AsyncHttpClient
+     */
+    public long getAsyncRequests() {
+        return asyncRequests.sum();
+    }
+
+    /**
+     * @return connections opened by RestAssured
+     */
+    public long getHandshakes() {
+        return handshakes.sum();
+    }
+
+    /**
+     * @return connections opened by RestAssured to https hosts
+     */
+    public long getTlsHandshakes() {
+        return tlsHandshakes.sum();
+    }
+
+    /**
+     * @return RestAssured requests sent through a connection opened by a previous one
+     */
+    public long getReused() {
+        // the leases that did not open a connection, whether it could be opened or not
+        return Math.max(0, leases.sum() - connects.sum());
+    }
+
+    @Override
+    public String toString() {
+        return "RestClients{handshakes=" + getHandshakes() + ", tlsHandshakes=" + getTlsHandshakes()
+                + ", reused=" + getReused() + ", asyncRequests=" + getAsyncRequests() + "}";
+    }
+
+    private synchronized void close() {
+        if (asyncClient != null) {
+            asyncClient.close();
+        }
+        manager.shutdown();
+        relaxedManager.shutdown();
+    }
+
+    /**
+     * Pool whose connections count the handshakes and measure the DNS resolution and the connection (see
+     * {@link RequestTiming}). A pooled connection found stale when it is leased is opened again, so the
+     * handshakes are counted here rather than when the connection is leased.
+     */
+    private final class TimedConnectionManager extends PoolingClientConnectionManager {
+
+        TimedConnectionManager(SchemeRegistry schemes) {
+            super(schemes);
+        }
+
+        @Override
+        protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schemes) {
+            return new DefaultClientConnectionOperator(schemes, new TimedDnsResolver()) {
+                @Override
+                public void openConnection(OperatedClientConnection connection, HttpHost target, InetAddress local,
+                                           HttpContext context, HttpParams params) throws IOException {
+                    long start = System.nanoTime();
+                    connects.increment();
+                    super.openConnection(connection, target, local, context, params);
+                    RequestTiming.connectionOpened(start, System.nanoTime());
+                    handshakes.increment();
+                    if ("https".equalsIgnoreCase(target.getSchemeName())) {
+                        tlsHandshakes.increment();
+                    }
+                }
+            };
+        }
+    }
+
+    private static final class TimedDnsResolver implements DnsResolver {
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            long start = System.nanoTime();
+            try {
+                return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+            } finally {
+                RequestTiming.dnsResolved(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * The https factory of a pool, telling when the TCP connection is done and the TLS handshake starts. It
+     * validates the certificates as a browser does, or accepts any certificate and host name (as the
+     * AsyncHttpClient does).
+     */
+    private static final class TimedSSLSocketFactory extends SSLSocketFactory {
+
+        TimedSSLSocketFactory(boolean trustAll) {
+            super(trustAll ? trustAll() : SSLContexts.createDefault(), trustAll
+                    ? SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER : SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
+        }
+
+        private static SSLContext trustAll() {
+            try {
+                return SSLContexts.custom().loadTrustMaterial((KeyStore) null, (chain, authType) -> true).build();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to create the https factory", e);
+            }
+        }
+
+        @Override
+        protected void prepareSocket(SSLSocket socket) throws IOException {
+            RequestTiming.tlsStarted();
+            super.prepareSocket(socket);
+        }
+    }
+
+    /**
+     * Client that tells when the headers of the response are received.
+     */
+    private static final class TimedHttpClient extends DefaultHttpClient {
+
+        TimedHttpClient(ClientConnectionManager manager) {
+            super(manager);
+        }
+
+        @Override
+        protected HttpRequestExecutor createRequestExecutor() {
+            return new HttpRequestExecutor() {
+                @Override
+                protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection connection,
+                                                         HttpContext context) throws HttpException, IOException {
+                    HttpResponse response = super.doReceiveResponse(request, connection, context);
+                    RequestTiming.firstByteReceived();
+                    return response;
+                }
+            };
+        }
+    }
+
+    /**
+     * The connections seen by a RestAssured client: they are taken from a pool, counted, and not shut down when
+     * RestAssured is done with the client. The schemes registered by RestAssured go to a copy of the schemes of
+     * the pool. If it registers a socket factory of its own, the connections of the client are opened with it, by
+     * a connection manager of the client.
+     */
+    private final class SharedConnectionManager implements ClientConnectionManager {
+
+        private final PoolingClientConnectionManager pool;
+
+        private final SchemeRegistry schemes = new SchemeRegistry();
+
+        private ClientConnectionManager target;
+
+        SharedConnectionManager(PoolingClientConnectionManager pool) {
+            this.pool = pool;
+            for (String name : pool.getSchemeRegistry().getSchemeNames()) {
+                schemes.register(pool.getSchemeRegistry().get(name));
+            }
+        }
+
+        private synchronized ClientConnectionManager target() {
+            if (target == null) {
+                target = usesPoolSchemes() ? pool : new TimedConnectionManager(schemes);
+            }
+            return target;
+        }
+
+        private boolean usesPoolSchemes() {
+            for (String name : schemes.getSchemeNames()) {
+                Scheme own = pool.getSchemeRegistry().get(name);
+                if (own == null || own.getSchemeSocketFactory() != schemes.get(name).getSchemeSocketFactory()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public SchemeRegistry getSchemeRegistry() {
+            return schemes;
+        }
+
+        @Override
+        public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+            ClientConnectionRequest request = target().requestConnection(route, state);
+            return new ClientConnectionRequest() {
+                @Override
+                public ManagedClientConnection getConnection(long timeout, TimeUnit unit)
+                        throws InterruptedException, ConnectionPoolTimeoutException {
+                    ManagedClientConnection connection = request.getConnection(timeout, unit);
+                    leases.increment();
+                    return connection;
+                }
+
+                @Override
+                public void abortRequest() {
+                    request.abortRequest();
+                }
+            };
+        }
+
+        @Override
+        public void releaseConnection(ManagedClientConnection connection, long validDuration, TimeUnit unit) {
+            target().releaseConnection(connection, validDuration, unit);
+        }
+
+        @Override
+        public void closeIdleConnections(long idleTime, TimeUnit unit) {
+            target().closeIdleConnections(idleTime, unit);
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            target().closeExpiredConnections();
+        }
+
+        @Override
+        public void shutdown() {
+            // the pools are shared by the whole suite, shut down on exit
+            if (target() != pool) {
+                target.shutdown();
+            }
+        }
+    }
+}
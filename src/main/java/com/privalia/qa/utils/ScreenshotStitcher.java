@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Joins the screenshots of a page taken while scrolling it, one viewport at a time, into a single image.
+ * <p>
+ * Each screenshot is decoded once and drawn in an image allocated with the first one. The last viewport
+ * can not be scrolled a whole window, so it is aligned with the bottom of the page and its top, that was
+ * already in the previous screenshot, is overwritten.
+ */
+public final class ScreenshotStitcher {
+
+    private final int viewports;
+
+    private final int viewportHeight;
+
+    private final int documentHeight;
+
+    private BufferedImage image;
+
+    private int added;
+
+    /**
+     * @param viewportHeight height of the window, in css pixels
+     * @param documentHeight height of the page, in css pixels
+     */
+    public ScreenshotStitcher(int viewportHeight, int documentHeight) {
+        if (viewportHeight <= 0) {
+            throw new IllegalArgumentException("Invalid viewport height " + viewportHeight);
+        }
+        this.viewportHeight = viewportHeight;
+        this.documentHeight = Math.max(documentHeight, viewportHeight);
+        this.viewports = (this.documentHeight + viewportHeight - 1) / viewportHeight;
+    }
+
+    /**
+     * @return number of screenshots needed, one for each scroll of a whole window
+     */
+    public int getViewports() {
+        return viewports;
+    }
+
+    /**
+     * Adds the screenshot of the next viewport.
+     *
+     * @param png screenshot, as returned by the driver
+     * @throws IOException if the screenshot can not be decoded
+     */
+    public void add(byte[] png) throws IOException {
+        if (added >= viewports) {
+            throw new IllegalStateException("All the " + viewports + " viewports have already been added");
+        }
+        BufferedImage shot = ImageIO.read(new ByteArrayInputStream(png));
+        if (shot == null) {
+            throw new IOException("The screenshot is not a valid image");
+        }
+
+        if (image == null) {
+            // screenshots can have more pixels than the css height of the window (i.e. hdpi devices)
+            long height = Math.round((double) documentHeight * shot.getHeight() / viewportHeight);
+            image = new BufferedImage(shot.getWidth(), (int) Math.max(height, shot.getHeight()), BufferedImage.TYPE_INT_RGB);
+        }
+
+        int y = added == viewports - 1 ? image.getHeight() - shot.getHeight() : added * shot.getHeight();
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.drawImage(shot, 0, y, null);
+        } finally {
+            graphics.dispose();
+        }
+        added++;
+    }
+
+    /**
+     * @return the page, or null if no screenshot has been added
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Sessions that are expensive to open (i.e. browsers in a Selenium grid), kept open between scenarios.
+ * <p>
+ * Sessions are grouped by a key, and only a session of the same key is reused. A released session is
+ * reset and kept, unless it was used by a failed scenario, it has been used the maximum number of times, it
+ * can not be reset, or the key already has as many idle sessions as its capacity. In those cases it is
+ * closed. Idle sessions are checked before being reused, and the ones that are not healthy are closed.
+ *
+ * @param <T> type of the sessions
+ */
+public final class SessionPool<T> {
+
+    private final Logger logger = LoggerFactory.getLogger(SessionPool.class);
+
+    private final Lifecycle<T> lifecycle;
+
+    private final int maxUses;
+
+    private final ToIntFunction<String> capacity;
+
+    private final Map<String, Deque<T>> idle = new HashMap<>();
+
+    private final Set<String> unpooled = ConcurrentHashMap.newKeySet();
+
+    private final Map<T, Integer> uses = new IdentityHashMap<>();
+
+    /**
+     * What the pool does with the sessions.
+     *
+     * @param <T> type of the sessions
+     */
+    public interface Lifecycle<T> {
+
+        /**
+         * @param session idle session
+         * @return whether the session can be used
+         */
+        boolean isHealthy(T session);
+
+        /**
+         * Leaves a session as a new one.
+         *
+         * @param session released session
+         * @throws Exception if the session can not be reset
+         */
+        void reset(T session) throws Exception;
+
+        /**
+         * Closes a session, ignoring any error.
+         *
+         * @param session session
+         */
+        void close(T session);
+    }
+
+    /**
+     * @param lifecycle what to do with the sessions
+     * @param maxUses   times a session is used before it is closed
+     * @param capacity  maximum number of idle sessions of each key. A key with no capacity is not pooled
+     */
+    public SessionPool(Lifecycle<T> lifecycle, int maxUses, ToIntFunction<String> capacity) {
+        this.lifecycle = lifecycle;
+        this.maxUses = maxUses;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns an idle session of a key, or a new one.
+     *
+     * @param key     key of the session
+     * @param factory opens a new session
+     * @return the session
+     * @throws Exception the exception of the factory
+     */
+    public T acquire(String key, Callable<T> factory) throws Exception {
+        T session;
+        while ((session = poll(key)) != null) {
+            if (lifecycle.isHealthy(session)) {
+                logger.debug("Reusing a {} session", key);
+                return session;
+            }
+            logger.debug("Closing a {} session that is not healthy", key);
+            discard(session);
+        }
+        return factory.call();
+    }
+
+    /**
+     * Returns a session to the pool.
+     *
+     * @param key     key of the session
+     * @param session session
+     * @param failed  whether the session was used by a failed scenario
+     */
+    public void release(String key, T session, boolean failed) {
+        int used;
+        synchronized (this) {
+            used = uses.merge(session, 1, Integer::sum);
+        }
+
+        int keyCapacity = capacity(key);
+        if (failed || used >= maxUses || keyCapacity <= 0) {
+            discard(session);
+            return;
+        }
+
+        try {
+            lifecycle.reset(session);
+        } catch (Exception e) {
+            logger.debug("Closing a {} session that can not be reset: {}", key, e.getMessage());
+            discard(session);
+            return;
+        }
+
+        synchronized (this) {
+            Deque<T> sessions = idle.computeIfAbsent(key, k -> new ArrayDeque<>());
+            if (sessions.size() < keyCapacity) {
+                sessions.push(session);
+                return;
+            }
+        }
+        discard(session);
+    }
+
+    /**
+     * @param key key of the sessions
+     * @return number of idle sessions of the key
+     */
+    public synchronized int getIdle(String key) {
+        Deque<T> sessions = idle.get(key);
+        return sessions == null ? 0 : sessions.size();
+    }
+
+    /**
+     * Closes every idle session.
+     */
+    public void close() {
+        List<T> sessions = new ArrayList<>();
+        synchronized (this) {
+            for (Deque<T> deque : idle.values()) {
+                sessions.addAll(deque);
+            }
+            idle.clear();
+        }
+        sessions.forEach(this::discard);
+    }
+
+    private synchronized T poll(String key) {
+        Deque<T> sessions = idle.get(key);
+        return sessions == null ? null : sessions.poll();
+    }
+
+    /**
+     * Asks for the capacity on every release, so it follows the grid (the capacity function caches it).
+     */
+    private int capacity(String key) {
+        int keyCapacity = capacity.applyAsInt(key);
+        if (keyCapacity > 0) {
+            unpooled.remove(key);
+        } else if (unpooled.add(key)) {
+            logger.warn("The {} sessions are not pooled while there is no capacity for them", key);
+        }
+        return keyCapacity;
+    }
+
+    private void discard(T session) {
+        synchronized (this) {
+            uses.remove(session);
+        }
+        lifecycle.close(session);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.response.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the body of large REST responses without converting it to a String.
+ * <p>
+ * Bodies larger than -Dgingerspec.rest.streaming.threshold bytes (1 MB by default, -1 to disable) are read
+ * as a stream: the text is searched chunk by chunk, and the JSONPath expressions are evaluated in a single
+ * pass of a Jackson parser, that skips the parts of the document no expression goes into. Only the values
+ * found are read into memory.
+ * <p>
+ * Only definite paths are evaluated this way ({@code $.a.b[0]['c']}), the rest (wildcards, filters, deep
+ * scan, functions) are left to {@code CommonG.getJSONPathString}.
+ */
+public final class StreamingBody {
+
+    public static final String THRESHOLD_PROPERTY = "gingerspec.rest.streaming.threshold";
+
+    public static final long DEFAULT_THRESHOLD = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    private static final Pattern DEFINITE_PATH = Pattern.compile("^\\$(\\.[^.\\[\\]'\"*()@?~ ]+|\\[\\d+\\]|\\['[^']*'\\]|\\[\"[^\"]*\"\\])*$");
+
+    private static final Pattern SEGMENT = Pattern.compile("\\.([^.\\[]+)|\\[(\\d+)\\]|\\['([^']*)'\\]|\\[\"([^\"]*)\"\\]");
+
+    private static final Pattern CHARSET = Pattern.compile("(?i)charset=\"?([^\";\\s]+)");
+
+    private final Map<List<Object>, List<String>> wanted = new HashMap<>();
+
+    private final Set<List<Object>> prefixes = new HashSet<>();
+
+    private final Map<String, String> found = new LinkedHashMap<>();
+
+    private final List<Object> path = new ArrayList<>();
+
+    private int remaining;
+
+    private StreamingBody(Collection<String> expressions) {
+        for (String expression : expressions) {
+            List<Object> segments = compile(expression);
+            wanted.computeIfAbsent(segments, s -> new ArrayList<>()).add(expression);
+            for (int i = 0; i < segments.size(); i++) {
+                prefixes.add(new ArrayList<>(segments.subList(0, i)));
+            }
+        }
+        remaining = wanted.size();
+    }
+
+    /**
+     * @param response response
+     * @return whether the body of the response is larger than the threshold, and has to be read as a stream
+     */
+    public static boolean isLarge(Response response) {
+        long threshold = Long.getLong(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+        return threshold >= 0 && response.asByteArray().length > threshold;
+    }
+
+    /**
+     * @param expression jsonpath expression
+     * @return whether the expression can be evaluated on a stream
+     */
+    public static boolean isSupported(String expression) {
+        return expression != null && DEFINITE_PATH.matcher(expression).matches();
+    }
+
+    /**
+     * @param response response
+     * @param text     text to find
+     * @return whether the body of the response contains the text
+     */
+    public static boolean contains(Response response, String text) {
+        try (Reader reader = reader(response)) {
+            return contains(reader, text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Searches a text, holding in memory a chunk of the stream only.
+     *
+     * @param reader stream
+     * @param text   text to find
+     * @return whether the stream contains the text
+     * @throws IOException exception
+     */
+    public static boolean contains(Reader reader, String text) throws IOException {
+        if (text.isEmpty()) {
+            return true;
+        }
+        int overlap = text.length() - 1;
+        char[] buffer = new char[Math.max(BUFFER_SIZE, text.length())];
+        StringBuilder window = new StringBuilder();
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            window.append(buffer, 0, read);
+            if (window.indexOf(text) >= 0) {
+                return true;
+            }
+            if (window.length() > overlap) {
+                window.delete(0, window.length() - overlap);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param response response
+     * @return number of characters of the body of the response
+     */
+    public static long length(Response response) {
+        try (Reader reader = reader(response)) {
+            char[] buffer = new char[BUFFER_SIZE];
+            long length = 0;
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                length += read;
+            }
+            return length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Evaluates jsonpath expressions in a single pass of the body of a response.
+     *
+     * @param response    response
+     * @param expressions definite jsonpath expressions (see {@link #isSupported(String)})
+     * @return value of each expression found (see {@link #read(InputStream, Collection)})
+     * @throws IOException if the body is not valid json
+     */
+    public static Map<String, String> read(Response response, Collection<String> expressions) throws IOException {
+        try (InputStream in = response.asInputStream()) {
+            return read(in, expressions);
+        }
+    }
+
+    /**
+     * Evaluates jsonpath expressions in a single pass of a json document. The stream is read until the
+     * values of all the expressions are found.
+     * <p>
+     * Strings are returned as they are, numbers and booleans as text (numbers with no decimals without
+     * ".0", as {@code CommonG.getJSONPathString} does), null as "null", and objects and arrays as json.
+     *
+     * @param in          json document
+     * @param expressions definite jsonpath expressions (see {@link #isSupported(String)})
+     * @return value of each expression found. The expressions not found are not in the map
+     * @throws IOException if the document is not valid json
+     */
+    public static Map<String, String> read(InputStream in, Collection<String> expressions) throws IOException {
+        StreamingBody body = new StreamingBody(expressions);
+        if (body.remaining == 0) {
+            return body.found;
+        }
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            if (parser.nextToken() != null) {
+                body.walk(parser);
+            }
+        }
+        return body.found;
+    }
+
+    private void walk(JsonParser parser) throws IOException {
+        List<String> expressions = wanted.get(path);
+        if (expressions != null) {
+            Object value = MAPPER.readValue(parser, Object.class);
+            // the value is in memory already, the expressions that go into it are evaluated on it
+            for (Map.Entry<List<Object>, List<String>> entry : wanted.entrySet()) {
+                List<Object> segments = entry.getKey();
+                if (segments.size() >= path.size() && segments.subList(0, path.size()).equals(path)) {
+                    Object child = value;
+                    boolean exists = true;
+                    for (Object segment : segments.subList(path.size(), segments.size())) {
+                        if (segment instanceof Integer && child instanceof List && (Integer) segment < ((List<?>) child).size()) {
+                            child = ((List<?>) child).get((Integer) segment);
+                        } else if (segment instanceof String && child instanceof Map && ((Map<?, ?>) child).containsKey(segment)) {
+                            child = ((Map<?, ?>) child).get(segment);
+                        } else {
+                            exists = false;
+                            break;
+                        }
+                    }
+                    if (exists) {
+                        String text = format(child);
+                        for (String expression : entry.getValue()) {
+                            found.put(expression, text);
+                        }
+                    }
+                    remaining--;
+                }
+            }
+            return;
+        }
+        if (!prefixes.contains(path)) {
+            parser.skipChildren();
+            return;
+        }
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            while (remaining > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                path.add(parser.getCurrentName());
+                parser.nextToken();
+                walk(parser);
+                path.remove(path.size() - 1);
+            }
+        } else if (parser.currentToken() == JsonToken.START_ARRAY) {
+            int index = 0;
+            while (remaining > 0 && parser.nextToken() != JsonToken.END_ARRAY) {
+                path.add(index++);
+                walk(parser);
+                path.remove(path.size() - 1);
+            }
+        }
+    }
+
+    private static List<Object> compile(String expression) {
+        if (!isSupported(expression)) {
+            throw new IllegalArgumentException("Expression " + expression + " can not be evaluated on a stream");
+        }
+        List<Object> segments = new ArrayList<>();
+        Matcher matcher = SEGMENT.matcher(expression);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                segments.add(matcher.group(1));
+            } else if (matcher.group(2) != null) {
+                segments.add(Integer.valueOf(matcher.group(2)));
+            } else {
+                segments.add(matcher.group(3) != null ? matcher.group(3) : matcher.group(4));
+            }
+        }
+        return segments;
+    }
+
+    private static String format(Object value) throws IOException {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Double) {
+            double number = (Double) value;
+            if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+                return Long.toString((long) number);
+            }
+        }
+        if (value instanceof Map || value instanceof List) {
+            return MAPPER.writeValueAsString(value);
+        }
+        return value.toString();
+    }
+
+    private static Reader reader(Response response) {
+        return new InputStreamReader(response.asInputStream(), charset(response.getContentType()));
+    }
+
+    static Charset charset(String contentType) {
+        Matcher matcher = CHARSET.matcher(contentType == null ? "" : contentType);
+        if (matcher.find()) {
+            try {
+                return Charset.forName(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                // unknown charset, as if there was none
+            }
+        }
+        return contentType != null && contentType.toLowerCase().contains("json") ? StandardCharsets.UTF_8
+                : StandardCharsets.ISO_8859_1;
+    }
+}
@@ -16,14 +16,12 @@
 
 package com.privalia.qa.utils;
 
-import java.util.Properties;
-
+/**
+ * Variables of the current thread. Facade over the {@link VariableStore}: values are saved in the
+ * thread scope and looked up in every scope. Saving a value removes the key from the scenario and feature
+ * scopes, so it is not hidden by a previous value there.
+ */
 public final class ThreadProperty {
-    private static final ThreadLocal<Properties> PROPS = new ThreadLocal<Properties>() {
-        protected Properties initialValue() {
-            return new Properties();
-        }
-    };
 
     /**
      * Default Constructor.
@@ -38,7 +36,9 @@ public final class ThreadProperty {
      * @param value the value
      */
     public static void set(String key, String value) {
-        PROPS.get().setProperty(key, value);
+        VariableStore.set(VariableStore.Scope.SCENARIO, key, null);
+        VariableStore.set(VariableStore.Scope.FEATURE, key, null);
+        VariableStore.set(VariableStore.Scope.THREAD, key, value);
     }
 
     /**
@@ -48,6 +48,6 @@ public final class ThreadProperty {
      * @return String string
      */
     public static String get(String key) {
-        return PROPS.get().getProperty(key);
+        return VariableStore.get(key);
     }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandInfo;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.http.HttpClient;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command executor that counts the commands sent to the driver, so it can be known whether anything may
+ * have changed the page since a given moment (i.e. since a {@link PreviousWebElements} snapshot was taken).
+ * With the {@link WebDriverTransport}, it records the latency of each command too.
+ */
+public class TrackingCommandExecutor extends HttpCommandExecutor {
+
+    private final AtomicLong commands = new AtomicLong();
+
+    private final WebDriverTransport transport;
+
+    /**
+     * @param additionalCommands additional commands
+     * @param addressOfRemoteServer address of the grid
+     * @param httpClientFactory http client factory
+     */
+    public TrackingCommandExecutor(Map<String, CommandInfo> additionalCommands, URL addressOfRemoteServer,
+                                   HttpClient.Factory httpClientFactory) {
+        super(additionalCommands, addressOfRemoteServer, httpClientFactory);
+        this.transport = httpClientFactory instanceof WebDriverTransport ? (WebDriverTransport) httpClientFactory : null;
+    }
+
+    @Override
+    public Response execute(Command command) throws IOException {
+        commands.incrementAndGet();
+        if (transport == null) {
+            return super.execute(command);
+        }
+        long start = System.nanoTime();
+        try {
+            return super.execute(command);
+        } finally {
+            transport.record(command.getName(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return number of commands sent
+     */
+    public long getCommandCount() {
+        return commands.get();
+    }
+}
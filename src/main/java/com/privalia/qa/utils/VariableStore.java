@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Store of the variables saved by the steps and used in !{} replacements.
+ * <p>
+ * Variables live in one of the {@link Scope}s. The suite scope is shared by all the threads of the
+ * execution, the others are confined to the current thread and are plain maps, so reading and writing
+ * them needs no synchronization. A lookup goes from the most specific scope to the suite one.
+ */
+public final class VariableStore {
+
+    /**
+     * Scopes of a variable, from the most specific to the least specific one.
+     */
+    public enum Scope {
+        /**
+         * Cleared when a new scenario starts in the thread.
+         */
+        SCENARIO,
+        /**
+         * Cleared when a new feature starts in the thread.
+         */
+        FEATURE,
+        /**
+         * Lives as long as the thread. Values saved through {@link ThreadProperty} go here, so they keep
+         * their previous lifetime.
+         */
+        THREAD,
+        /**
+         * Shared by all the threads of the execution.
+         */
+        SUITE
+    }
+
+    private static final Map<String, String> SUITE = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Frame> FRAME = ThreadLocal.withInitial(Frame::new);
+
+    private VariableStore() {
+    }
+
+    /**
+     * Saves a variable.
+     *
+     * @param scope scope of the variable
+     * @param key   the key
+     * @param value the value. A null value removes the variable from the scope
+     */
+    public static void set(Scope scope, String key, String value) {
+        Map<String, String> variables = variables(scope);
+        if (value == null) {
+            variables.remove(key);
+        } else {
+            variables.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the value of a variable, looking in the scenario, feature, thread and suite scopes, in that order.
+     *
+     * @param key the key
+     * @return the value, or null if it is not defined in any scope
+     */
+    public static String get(String key) {
+        Frame frame = FRAME.get();
+        String value = frame.scenario.get(key);
+        if (value == null) {
+            value = frame.feature.get(key);
+        }
+        if (value == null) {
+            value = frame.thread.get(key);
+        }
+        if (value == null) {
+            value = SUITE.get(key);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of a variable in the given scope only.
+     *
+     * @param scope scope of the variable
+     * @param key   the key
+     * @return the value, or null if it is not defined in the scope
+     */
+    public static String get(Scope scope, String key) {
+        return variables(scope).get(key);
+    }
+
+    /**
+     * Returns a copy of the variables of the given scope. For the thread confined scopes, the ones of the current thread.
+     *
+     * @param scope the scope
+     * @return the variables
+     */
+    public static Map<String, String> snapshot(Scope scope) {
+        return new HashMap<>(variables(scope));
+    }
+
+    /**
+     * Removes every variable of the given scope. For the thread confined scopes, only the ones of the current thread.
+     *
+     * @param scope the scope
+     */
+    public static void clear(Scope scope) {
+        variables(scope).clear();
+    }
+
+    private static Map<String, String> variables(Scope scope) {
+        switch (scope) {
+            case SCENARIO:
+                return FRAME.get().scenario;
+            case FEATURE:
+                return FRAME.get().feature;
+            case THREAD:
+                return FRAME.get().thread;
+            default:
+                return SUITE;
+        }
+    }
+
+    private static final class Frame {
+
+        private final Map<String, String> scenario = new HashMap<>();
+
+        private final Map<String, String> feature = new HashMap<>();
+
+        private final Map<String, String> thread = new HashMap<>();
+    }
+}
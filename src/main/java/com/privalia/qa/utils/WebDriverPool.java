@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import com.privalia.qa.data.BrowsersDataProvider;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Selenium sessions reused by the {@literal @}web and {@literal @}mobile scenarios (Singleton).
+ * <p>
+ * Opening a session in the grid takes seconds, so with -Dgingerspec.webdriver.pool=true the session of a
+ * scenario is kept for the next scenario of the same browser and version, instead of quitting it. Between
+ * scenarios, the storage and the cookies are cleared, the extra windows are closed and the browser goes to
+ * about:blank. A session is quit when its scenario fails, after -Dgingerspec.webdriver.pool.maxUses
+ * scenarios (20 by default), or when it does not answer before being reused. The idle sessions of each
+ * browser are limited by its slots in the grid, and by -Dgingerspec.webdriver.pool.size.
+ */
+public enum WebDriverPool {
+    INSTANCE;
+
+    public static final String POOL_PROPERTY = "gingerspec.webdriver.pool";
+
+    public static final String SIZE_PROPERTY = "gingerspec.webdriver.pool.size";
+
+    public static final String MAX_USES_PROPERTY = "gingerspec.webdriver.pool.maxUses";
+
+    public static final int DEFAULT_MAX_USES = 20;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebDriverPool.class);
+
+    private final SessionPool<RemoteWebDriver> pool = new SessionPool<>(new Lifecycle(),
+            Integer.getInteger(MAX_USES_PROPERTY, DEFAULT_MAX_USES), WebDriverPool::capacity);
+
+    WebDriverPool() {
+        Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "gingerspec-webdriver-pool"));
+    }
+
+    public boolean isEnabled() {
+        return Boolean.getBoolean(POOL_PROPERTY);
+    }
+
+    /**
+     * Returns an idle session of a browser, or a new one.
+     *
+     * @param browser browser and version (i.e. chrome_70)
+     * @param factory opens a new session
+     * @return the session
+     * @throws Exception the exception of the factory
+     */
+    public RemoteWebDriver acquire(String browser, Callable<RemoteWebDriver> factory) throws Exception {
+        return isEnabled() ? pool.acquire(browser, factory) : factory.call();
+    }
+
+    /**
+     * Returns a session to the pool, or quits it if the pool is disabled.
+     *
+     * @param browser browser and version (i.e. chrome_70)
+     * @param driver  session
+     * @param failed  whether the scenario failed
+     */
+    public void release(String browser, RemoteWebDriver driver, boolean failed) {
+        if (isEnabled()) {
+            pool.release(browser, driver, failed);
+        } else {
+            driver.quit();
+        }
+    }
+
+    private static int capacity(String browser) {
+        return Math.min(Integer.getInteger(SIZE_PROPERTY, Integer.MAX_VALUE), BrowsersDataProvider.gridCapacity(browser));
+    }
+
+    private static final class Lifecycle implements SessionPool.Lifecycle<RemoteWebDriver> {
+
+        @Override
+        public boolean isHealthy(RemoteWebDriver driver) {
+            try {
+                return driver.getSessionId() != null && driver.getWindowHandle() != null;
+            } catch (WebDriverException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void reset(RemoteWebDriver driver) {
+            String main = null;
+            for (String handle : driver.getWindowHandles()) {
+                if (main == null) {
+                    main = handle;
+                } else {
+                    driver.switchTo().window(handle).close();
+                }
+            }
+            driver.switchTo().window(main);
+            try {
+                driver.executeScript("window.localStorage.clear(); window.sessionStorage.clear();");
+            } catch (WebDriverException e) {
+                // pages without storage, i.e. about:blank
+                LOGGER.debug("Storage not cleared: {}", e.getMessage());
+            }
+            driver.manage().deleteAllCookies();
+            driver.get("about:blank");
+        }
+
+        @Override
+        public void close(RemoteWebDriver driver) {
+            try {
+                driver.quit();
+            } catch (WebDriverException e) {
+                LOGGER.debug("Exception quitting a session: {}", e.getMessage());
+            }
+        }
+    }
+}
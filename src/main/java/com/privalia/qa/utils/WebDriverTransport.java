@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.privalia.qa.utils;
+
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.internal.ApacheHttpClient;
+
+import java.net.ProxySelector;
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The HTTP connections to the Selenium grid, shared by every session (Singleton).
+ * <p>
+ * All the command executors use the same pool, so a new session reuses the keep-alive connections of the
+ * previous ones instead of opening its own. The connections of each route (i.e. the hub) are limited by
+ * -Dgingerspec.webdriver.http.maxPerRoute, twice the threads that can run scenarios by default, and kept alive
+ * for -Dgingerspec.webdriver.http.keepAlive seconds (30 by default) when the grid does not say otherwise.
+ * The timeouts are -Dgingerspec.webdriver.http.timeout ms (60000, as before).
+ * <p>
+ * The transport counts the requests and the connections opened, and the latency of each type of command
+ * (see {@link TrackingCommandExecutor}).
+ */
+public enum WebDriverTransport implements HttpClient.Factory {
+    INSTANCE;
+
+    public static final String MAX_PER_ROUTE_PROPERTY = "gingerspec.webdriver.http.maxPerRoute";
+
+    public static final String KEEP_ALIVE_PROPERTY = "gingerspec.webdriver.http.keepAlive";
+
+    public static final String TIMEOUT_PROPERTY = "gingerspec.webdriver.http.timeout";
+
+    public static final int DEFAULT_TIMEOUT = 60000;
+
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Default threads of the parallel data providers of TestNG.
+     */
+    public static final int DEFAULT_DATA_PROVIDER_THREADS = 10;
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder connections = new LongAdder();
+
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+
+    private final PoolingHttpClientConnectionManager manager;
+
+    private final CloseableHttpClient client;
+
+    /**
+     * Latency of a type of command.
+     */
+    public static final class Latency {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder total = new LongAdder();
+
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return mean latency, in ms
+         */
+        public double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : total.sum() / 1e6 / n;
+        }
+
+        /**
+         * @return maximum latency, in ms
+         */
+        public double getMax() {
+            return max.get() / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{count=%d, mean=%.1f ms, max=%.1f ms}", getCount(), getMean(), getMax());
+        }
+    }
+
+    WebDriverTransport() {
+        int timeout = Integer.getInteger(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT);
+        int parallelism = Math.max(Integer.getInteger("gingerspec.parallel", 1), DEFAULT_DATA_PROVIDER_THREADS);
+        int maxPerRoute = Math.max(1, Integer.getInteger(MAX_PER_ROUTE_PROPERTY, 2 * parallelism));
+        long keepAlive = TimeUnit.SECONDS.toMillis(Long.getLong(KEEP_ALIVE_PROPERTY, DEFAULT_KEEP_ALIVE_SECONDS));
+
+        HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> factory = (route, config) -> {
+            connections.increment();
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        };
+        manager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                .build(), factory);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        manager.setMaxTotal(4 * maxPerRoute);
+        // a connection closed by the grid while idle is detected before it is reused
+        manager.setValidateAfterInactivity(2000);
+        manager.setDefaultSocketConfig(SocketConfig.custom()
+                .setTcpNoDelay(true)
+                .setSoKeepAlive(true)
+                .setSoReuseAddress(true)
+                .setSoTimeout(timeout)
+                .build());
+
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+        };
+
+        client = HttpClientBuilder.create()
+                .setConnectionManager(manager)
+                // the clients of the sessions may be closed when they quit, but not the pool
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(timeout)
+                        .setSocketTimeout(timeout)
+                        .setConnectionRequestTimeout(timeout)
+                        .build())
+                .setRoutePlanner(new SystemDefaultRoutePlanner(ProxySelector.getDefault()))
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) -> requests.increment())
+                .build();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(manager::shutdown, "gingerspec-webdriver-transport"));
+    }
+
+    @Override
+    public HttpClient createClient(URL url) {
+        return new ApacheHttpClient(client, url);
+    }
+
+    @Override
+    public void cleanupIdleClients() {
+        manager.closeExpiredConnections();
+    }
+
+    /**
+     * Records the latency of a command.
+     *
+     * @param command name of the command (i.e. findElements)
+     * @param nanos   time from the request to the response
+     */
+    public void record(String command, long nanos) {
+        latencies.computeIfAbsent(command, c -> new Latency()).record(nanos);
+    }
+
+    /**
+     * @return requests sent to the grid
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return connections opened to the grid
+     */
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    /**
+     * @return requests sent through a connection opened by a previous one
+     */
+    public long getReusedConnections() {
+        return Math.max(0, getRequests() - getConnections());
+    }
+
+    /**
+     * @return latency of each type of command, sorted by name
+     */
+    public Map<String, Latency> getLatencies() {
+        return new TreeMap<>(latencies);
+    }
+
+    @Override
+    public String toString() {
+        return "WebDriverTransport{requests=" + getRequests() + ", connections=" + getConnections()
+                + ", reused=" + getReusedConnections() + ", pool=" + manager.getTotalStats()
+                + ", latencies=" + getLatencies() + "}";
+    }
+}
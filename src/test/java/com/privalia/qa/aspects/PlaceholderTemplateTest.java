@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.aspects;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PlaceholderTemplateTest {
+
+    private final PlaceholderTemplate.Resolver resolver = placeholder -> placeholder.getKind() + ":" + placeholder.getName();
+
+    @Test
+    public void compileOnceTest() {
+        String text = "I send a '!{METHOD}' request to '${DUMMYBDD_ENDPOINT}'";
+
+        assertThat(PlaceholderTemplate.compile(text, PlaceholderTemplate.ALL_KINDS))
+                .as("The same text was compiled twice").isSameAs(PlaceholderTemplate.compile(text, PlaceholderTemplate.ALL_KINDS));
+    }
+
+    @Test
+    public void literalTextTest() throws Exception {
+        String text = "{\"key\": \"value\"}";
+
+        assertThat(PlaceholderTemplate.replace(text, PlaceholderTemplate.ALL_KINDS, resolver)).isSameAs(text);
+        assertThat(PlaceholderTemplate.replace("${UNCLOSED", PlaceholderTemplate.ALL_KINDS, resolver)).isEqualTo("${UNCLOSED");
+    }
+
+    @Test
+    public void singlePassTest() throws Exception {
+        assertThat(PlaceholderTemplate.replace("${A}|!{B}|@{JSON.c.json}|#{d.e}", PlaceholderTemplate.ALL_KINDS, resolver))
+                .isEqualTo("ENVIRONMENT:A|REFLECTION:B|CODE:json|PROPERTY:d.e");
+        assertThat(PlaceholderTemplate.replace("${A}|!{B}", PlaceholderTemplate.Kind.REFLECTION.bit(), resolver))
+                .isEqualTo("${A}|REFLECTION:B");
+    }
+
+    @Test
+    public void modifiersTest() {
+        PlaceholderTemplate.Placeholder placeholder = firstPlaceholder("${NAME.toUpper:-default.value}");
+
+        assertThat(placeholder.getName()).isEqualTo("NAME");
+        assertThat(placeholder.getModifier()).isEqualTo("toUpper");
+        assertThat(placeholder.getDefaultValue()).isEqualTo("default.value");
+    }
+
+    @Test
+    public void nestedPlaceholdersTest() throws Exception {
+        assertThat(PlaceholderTemplate.replace("@{IP.${IFACE}}", PlaceholderTemplate.ALL_KINDS,
+                placeholder -> placeholder.getKind() == PlaceholderTemplate.Kind.ENVIRONMENT ? "eth0" : placeholder.getModifier()))
+                .isEqualTo("eth0");
+    }
+
+    @Test
+    public void valuesOnlyExpandLaterKindsTest() throws Exception {
+        PlaceholderTemplate.Resolver valueResolver = placeholder -> {
+            switch (placeholder.getKind()) {
+                case REFLECTION:
+                    return "${A}#{b}";
+                case PROPERTY:
+                    return "prop";
+                default:
+                    return "env";
+            }
+        };
+
+        assertThat(PlaceholderTemplate.replace("!{VAR}", PlaceholderTemplate.ALL_KINDS, valueResolver)).isEqualTo("${A}prop");
+    }
+
+    private PlaceholderTemplate.Placeholder firstPlaceholder(String text) {
+        PlaceholderTemplate.Placeholder[] found = new PlaceholderTemplate.Placeholder[1];
+        try {
+            PlaceholderTemplate.replace(text, PlaceholderTemplate.ALL_KINDS, placeholder -> {
+                found[0] = placeholder;
+                return "";
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return found[0];
+    }
+}
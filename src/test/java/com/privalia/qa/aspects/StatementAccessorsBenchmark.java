@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.aspects;
+
+import gherkin.formatter.model.Comment;
+import gherkin.formatter.model.DataTableRow;
+import gherkin.formatter.model.DocString;
+import gherkin.formatter.model.Step;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous way of rewriting the name of a step (looking the field up in the class hierarchy
+ * on every call) with the cached setters of {@link StatementAccessors}.
+ * <p>
+ * It is not part of the test suite, run it with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.privalia.qa.aspects.StatementAccessorsBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementAccessorsBenchmark {
+
+    private Step step;
+
+    private DocString docString;
+
+    private final String[] names = {"I send a 'GET' request to '/users/1'", "I send a 'GET' request to '/users/2'"};
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        docString = new DocString("", "{\"id\": 1}", 2);
+        step = new Step(new ArrayList<Comment>(), "Given ", names[0], 1, new ArrayList<DataTableRow>(), docString);
+    }
+
+    @Benchmark
+    public Object reflectiveLookup() throws Exception {
+        String newName = names[next++ & 1];
+        Field field = null;
+        Class current = step.getClass();
+        do {
+            try {
+                field = current.getDeclaredField("name");
+            } catch (Exception e) { }
+        } while ((current = current.getSuperclass()) != null);
+
+        field.setAccessible(true);
+        field.set(step, newName);
+
+        Field value = docString.getClass().getDeclaredField("value");
+        value.setAccessible(true);
+        value.set(docString, newName);
+        return step;
+    }
+
+    @Benchmark
+    public Object cachedSetters() {
+        String newName = names[next++ & 1];
+        StatementAccessors.setName(step, step.getName(), newName);
+        StatementAccessors.setValue(docString, docString.getValue(), newName);
+        return step;
+    }
+
+    @Benchmark
+    public Object unchangedText() {
+        String name = step.getName();
+        StatementAccessors.setName(step, name, name);
+        StatementAccessors.setValue(docString, docString.getValue(), docString.getValue());
+        return step;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StatementAccessorsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
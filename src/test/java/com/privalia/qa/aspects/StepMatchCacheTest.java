@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.aspects;
+
+import org.assertj.core.api.Condition;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StepMatchCacheTest {
+
+    private static final String CHECK_VALUE = "^'(?s)(.+?)' ((?!.*with).+?) '(.+?)'$";
+
+    private final AtomicInteger matches = new AtomicInteger();
+
+    @BeforeMethod
+    public void resetMatches() {
+        matches.set(0);
+    }
+
+    private List<String> match(String pattern, String text) {
+        matches.incrementAndGet();
+        Matcher matcher = Pattern.compile(pattern).matcher(text);
+        return matcher.matches() ? Collections.singletonList(matcher.group(1)) : null;
+    }
+
+    @Test
+    public void cachedMatchTest() throws Throwable {
+        StepMatchCache cache = new StepMatchCache(true, false, 100);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(cache.matchedArguments(String.class, CHECK_VALUE, "'a' contains 'b'", () -> match(CHECK_VALUE, "'a' contains 'b'")))
+                    .containsExactly("a");
+            assertThat(cache.matchedArguments(String.class, CHECK_VALUE, "'a' ends with 'b'", () -> match(CHECK_VALUE, "'a' ends with 'b'")))
+                    .isNull();
+        }
+
+        assertThat(matches.get()).as("regular expressions evaluated").isEqualTo(2);
+        assertThat(cache.getHits()).isEqualTo(4);
+        assertThat(cache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    public void samePatternOfAnotherKindTest() throws Throwable {
+        StepMatchCache cache = new StepMatchCache(true, false, 100);
+
+        cache.matchedArguments(String.class, CHECK_VALUE, "'a' is 'b'", () -> match(CHECK_VALUE, "'a' is 'b'"));
+        cache.matchedArguments(Integer.class, CHECK_VALUE, "'a' is 'b'", () -> match(CHECK_VALUE, "'a' is 'b'"));
+
+        assertThat(matches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void disabledCacheTest() throws Throwable {
+        StepMatchCache cache = new StepMatchCache(false, false, 100);
+
+        cache.matchedArguments(String.class, CHECK_VALUE, "'a' is 'b'", () -> match(CHECK_VALUE, "'a' is 'b'"));
+        cache.matchedArguments(String.class, CHECK_VALUE, "'a' is 'b'", () -> match(CHECK_VALUE, "'a' is 'b'"));
+
+        assertThat(matches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void profileTest() throws Throwable {
+        StepMatchCache cache = new StepMatchCache(false, true, 100);
+
+        cache.matchedArguments(String.class, "^I wait '(\\d+)' seconds?$", "I wait '1' second", () -> match("^I wait '(\\d+)' seconds?$", "I wait '1' second"));
+        cache.matchedArguments(String.class, CHECK_VALUE, "I wait '1' second", () -> match(CHECK_VALUE, "I wait '1' second"));
+        cache.matchedArguments(String.class, CHECK_VALUE, "'a' is 'b'", () -> match(CHECK_VALUE, "'a' is 'b'"));
+
+        assertThat(cache.profile()).hasSize(2)
+                .haveExactly(1, profileLine("2 calls", "1 matches", CHECK_VALUE))
+                .haveExactly(1, profileLine("1 calls", "1 matches", "seconds?$"));
+    }
+
+    private static Condition<String> profileLine(String calls, String matches, String pattern) {
+        return new Condition<>(line -> line.contains(calls) && line.contains(matches) && line.endsWith(pattern),
+                "profile of %s with %s and %s", pattern, calls, matches);
+    }
+}
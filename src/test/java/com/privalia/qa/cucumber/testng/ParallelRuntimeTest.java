@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.cucumber.testng;
+
+import com.privalia.qa.cucumber.testng.steps.RecordingSteps;
+import cucumber.api.CucumberOptions;
+import cucumber.runtime.ClassFinder;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.RuntimeOptionsFactory;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@CucumberOptions(features = "src/test/resources/features/parallelRuntime.feature",
+        glue = "classpath:com/privalia/qa/cucumber/testng/steps")
+public class ParallelRuntimeTest {
+
+    private static final String REPORTS = "target/executions/parallelRuntime/";
+
+    private final ClassLoader classLoader = getClass().getClassLoader();
+
+    private final ResourceLoader resourceLoader = new MultiLoader(classLoader);
+
+    private final ClassFinder classFinder = new ResourceLoaderClassFinder(resourceLoader, classLoader);
+
+    @BeforeClass
+    public void createReportsFolder() {
+        new File(REPORTS).mkdirs();
+    }
+
+    /**
+     * Runs the feature and writes its reports as the given class.
+     */
+    private List<Throwable> run(String name, int threads) throws Exception {
+        RecordingSteps.RECORDED.clear();
+        RuntimeOptions options = new RuntimeOptionsFactory(getClass(), new Class[]{CucumberOptions.class}).create();
+        options.addFormatter(new CucumberReporter(REPORTS, name, ""));
+        if (threads == 1) {
+            Runtime runtime = new Runtime(resourceLoader, classFinder, classLoader, options);
+            runtime.run();
+            return runtime.getErrors();
+        }
+        return new ParallelRuntime(resourceLoader, classFinder, classLoader, options, Collections.emptyList(), threads)
+                .run(options.cucumberFeatures(resourceLoader));
+    }
+
+    private static List<String> attributes(String report, String element, String... names) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(REPORTS + report));
+        NodeList nodes = document.getElementsByTagName(element);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            StringBuilder value = new StringBuilder();
+            for (String name : names) {
+                value.append(((Element) nodes.item(i)).getAttribute(name)).append(' ');
+            }
+            values.add(value.toString().trim());
+        }
+        return values;
+    }
+
+    @Test
+    public void parallelReportsAreTheSequentialOnesTest() throws Exception {
+        List<Throwable> sequentialErrors = run("Sequential", 1);
+        List<Throwable> parallelErrors = run("Parallel", 2);
+
+        assertThat(RecordingSteps.RECORDED).hasSize(6).containsOnly("first", "second", "third", "fourth", "fifth", "sixth");
+        List<String> testMethods = attributes("SequentialTESTNG.xml", "test-method", "name", "status");
+        assertThat(testMethods).hasSize(6).contains("Failing FAIL");
+        assertThat(attributes("ParallelTESTNG.xml", "test-method", "name", "status")).isEqualTo(testMethods);
+        List<String> testCases = attributes("SequentialJUNIT.xml", "testcase", "name");
+        assertThat(testCases).hasSize(6);
+        assertThat(attributes("ParallelJUNIT.xml", "testcase", "name")).isEqualTo(testCases);
+        assertThat(attributes("ParallelJUNIT.xml", "testsuite", "tests", "failures"))
+                .isEqualTo(attributes("SequentialJUNIT.xml", "testsuite", "tests", "failures"));
+
+        assertThat(sequentialErrors).hasSize(1);
+        assertThat(parallelErrors).hasSize(1);
+        assertThat(parallelErrors.get(0)).isInstanceOf(AssertionError.class).hasMessage("expected failure");
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.cucumber.testng;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RunStatisticsTest {
+
+    @Test
+    public void countersTest() {
+        long suiteTotal = RunStatistics.suite().getTotal();
+        long suiteDuration = RunStatistics.suite().getDurationNanos();
+        RunStatistics statistics = new RunStatistics();
+
+        statistics.record(RunStatistics.PASS, 1_500_000L);
+        statistics.record(RunStatistics.FAIL, 2_000_000L);
+        statistics.record(RunStatistics.SKIP, 0L);
+        statistics.record(null, 500_000L);
+
+        assertThat(statistics.getTotal()).isEqualTo(3);
+        assertThat(statistics.getPassed()).isEqualTo(1);
+        assertThat(statistics.getFailed()).isEqualTo(1);
+        assertThat(statistics.getSkipped()).isEqualTo(1);
+        assertThat(statistics.getDurationNanos()).isEqualTo(4_000_000L);
+        assertThat(statistics.getDurationMs()).isEqualTo(4.0);
+        assertThat(statistics.toString()).isEqualTo("3 scenarios (1 passed, 1 failed, 1 skipped) in 0.004 s");
+
+        assertThat(RunStatistics.suite().getTotal() - suiteTotal).isEqualTo(3);
+        assertThat(RunStatistics.suite().getDurationNanos() - suiteDuration).isEqualTo(4_000_000L);
+    }
+}
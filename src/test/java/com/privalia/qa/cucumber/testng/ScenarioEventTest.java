@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.cucumber.testng;
+
+import cucumber.runtime.CucumberException;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Result;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ScenarioEventTest {
+
+    @Test
+    public void portableEventKeepsTheErrorTest() throws Exception {
+        Result failed = new Result(Result.FAILED, 10L, new AssertionError("expected 1"), null);
+        ScenarioEvent event = new ScenarioEvent(Reporter.class.getMethod("result", Result.class), new Object[]{failed});
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(event.portable());
+        }
+        ScenarioEvent received;
+        try (ObjectInputStream in = new ScenarioEvent.EventInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            received = (ScenarioEvent) in.readObject();
+        }
+
+        List<Object[]> calls = new ArrayList<>();
+        Object reporter = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Reporter.class},
+                (proxy, method, args) -> calls.add(args));
+        received.replay(reporter);
+
+        assertThat(received.getName()).isEqualTo("result");
+        assertThat(calls).hasSize(1);
+        Result result = (Result) calls.get(0)[0];
+        assertThat(result.getStatus()).isEqualTo(Result.FAILED);
+        assertThat(result.getDuration()).isEqualTo(10L);
+        assertThat(result.getError()).isInstanceOf(CucumberException.class).hasMessage("java.lang.AssertionError: expected 1");
+        assertThat(result.getError().getStackTrace()).isEqualTo(failed.getError().getStackTrace());
+    }
+
+    @Test
+    public void eventStreamRejectsOtherClassesTest() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(Collections.singletonList(new URL("http://localhost"))));
+        }
+
+        assertThatThrownBy(() -> {
+            try (ObjectInputStream in = new ScenarioEvent.EventInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                in.readObject();
+            }
+        }).isInstanceOf(InvalidClassException.class).hasMessageContaining("java.net.URL");
+    }
+
+    @Test
+    public void eventStreamAcceptsOnlyTheCollectionsOfTheEventsTest() {
+        assertThat(ScenarioEvent.isTransferable(ArrayList.class)).isTrue();
+        assertThat(ScenarioEvent.isTransferable(LinkedHashMap.class)).isTrue();
+        assertThat(ScenarioEvent.isTransferable(Collections.unmodifiableList(new ArrayList<>()).getClass())).isTrue();
+        assertThat(ScenarioEvent.isTransferable(Collections.emptyList().getClass())).isTrue();
+        assertThat(ScenarioEvent.isTransferable(Collections.singletonList("a").getClass())).isTrue();
+        assertThat(ScenarioEvent.isTransferable(TreeMap.class)).isFalse();
+        assertThat(ScenarioEvent.isTransferable(PriorityQueue.class)).isFalse();
+        assertThat(ScenarioEvent.isTransferable(AssertionError.class)).isFalse();
+    }
+
+    @Test
+    public void eventStreamRejectsDeepObjectsTest() throws Exception {
+        List<Object> nested = new ArrayList<>();
+        for (int i = 0; i < ScenarioEvent.MAX_DEPTH; i++) {
+            nested = new ArrayList<>(Collections.singletonList(nested));
+        }
+        Object deep = nested;
+
+        assertThatThrownBy(() -> readEvents(deep)).isInstanceOf(InvalidClassException.class);
+    }
+
+    @Test
+    public void eventStreamRejectsLongArraysTest() throws Exception {
+        assertThat(readEvents(new String[ScenarioEvent.MAX_ARRAY_LENGTH])).isInstanceOf(String[].class);
+        assertThatThrownBy(() -> readEvents(new String[ScenarioEvent.MAX_ARRAY_LENGTH + 1])).isInstanceOf(InvalidClassException.class);
+        assertThatThrownBy(() -> readEvents(new ArrayList<>(Collections.nCopies(ScenarioEvent.MAX_ARRAY_LENGTH + 1, "a"))))
+                .isInstanceOf(InvalidClassException.class);
+    }
+
+    private static Object readEvents(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ScenarioEvent.EventInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+
+    @Test
+    public void portableErrorIsAlwaysACopyTest() throws Exception {
+        Throwable holder = new HolderError(new URL[0]);
+        holder.initCause(new AssertionError("expected 1"));
+
+        Throwable portable = ScenarioEvent.portable(holder);
+
+        assertThat(portable).isInstanceOf(CucumberException.class).hasMessage(HolderError.class.getName() + ": holder");
+        assertThat(portable.getStackTrace()).isEqualTo(holder.getStackTrace());
+        assertThat(portable.getCause()).isInstanceOf(CucumberException.class).hasMessage("java.lang.AssertionError: expected 1");
+        assertThat(readEvents(portable)).isInstanceOf(CucumberException.class);
+    }
+
+    @Test
+    public void replayKeepsTheTimeOfTheEventTest() throws Exception {
+        ScenarioEvent event = new ScenarioEvent(Reporter.class.getMethod("write", String.class), new Object[]{"text"})
+                .portable();
+        long recordedAt = System.currentTimeMillis();
+        Thread.sleep(50);
+
+        List<Long> times = new ArrayList<>();
+        Object reporter = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Reporter.class},
+                (proxy, method, args) -> times.add(ScenarioEvent.currentTimeMillis()));
+        event.replay(reporter);
+
+        assertThat(times).hasSize(1);
+        assertThat(times.get(0)).isLessThanOrEqualTo(recordedAt);
+        assertThat(ScenarioEvent.currentTimeMillis()).isGreaterThanOrEqualTo(recordedAt + 50);
+    }
+
+    @Test
+    public void broadcastSkipsTargetsWithoutTheMethodTest() {
+        List<String> calls = new ArrayList<>();
+        Object reporter = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Reporter.class},
+                (proxy, method, args) -> calls.add(method.getName()));
+        Object broadcast = ScenarioEvent.broadcast(Collections.singletonList(reporter));
+
+        ((Formatter) broadcast).eof();
+        ((Reporter) broadcast).write("text");
+
+        assertThat(calls).containsExactly("write");
+    }
+
+    private static final class HolderError extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final URL[] urls;
+
+        private HolderError(URL[] urls) {
+            super("holder");
+            this.urls = urls;
+        }
+    }
+}
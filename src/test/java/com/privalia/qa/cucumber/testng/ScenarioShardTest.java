@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.cucumber.testng;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class ScenarioShardTest {
+
+    private final List<String> keys = Arrays.asList("a.feature:3", "a.feature:10", "b.feature:5", "b.feature:20", "c.feature:7");
+
+    @Test
+    public void parseTest() {
+        assertThat(ScenarioShard.parse("2/3").select(keys, Collections.emptyMap())).isNotNull();
+        assertThat(ScenarioShard.parse("2/3").getName()).isEqualTo("shard2of3");
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> ScenarioShard.parse("4/3"));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> ScenarioShard.parse("one"));
+    }
+
+    @Test
+    public void hashFallbackIsAPartitionTest() {
+        assertPartition(Collections.emptyMap(), 3);
+    }
+
+    @Test
+    public void longestFirstTest() {
+        Map<String, Double> history = new HashMap<>();
+        history.put("a.feature:3", 100.0);
+        history.put("a.feature:10", 60.0);
+        history.put("b.feature:5", 50.0);
+        history.put("b.feature:20", 10.0);
+
+        assertPartition(history, 2);
+        assertThat(ScenarioShard.parse("1/2").select(keys, history)).containsOnly("a.feature:3", "b.feature:5");
+        assertThat(ScenarioShard.parse("2/2").select(keys, history)).containsOnly("a.feature:10", "c.feature:7", "b.feature:20");
+    }
+
+    @Test
+    public void historyRoundTripTest() throws Exception {
+        File folder = Files.createTempDirectory("durations").toFile();
+        Map<String, Double> durations = new HashMap<>();
+        durations.put("a.feature:3", 12.5);
+
+        ScenarioShard.saveHistory(new File(folder, "com.privalia.FooIT" + ScenarioShard.HISTORY_SUFFIX), durations);
+
+        assertThat(ScenarioShard.loadHistory(folder)).containsEntry("a.feature:3", 12.5);
+    }
+
+    private void assertPartition(Map<String, Double> history, int total) {
+        Set<String> all = new HashSet<>();
+        int count = 0;
+        for (int i = 1; i <= total; i++) {
+            Set<String> selected = new ScenarioShard(i, total).select(keys, history);
+            count += selected.size();
+            all.addAll(selected);
+        }
+        assertThat(count).as("A scenario was assigned to several shards").isEqualTo(keys.size());
+        assertThat(all).containsOnlyElementsOf(keys).hasSize(keys.size());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.cucumber.testng;
+
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardReportMergerTest {
+
+    private File report(String suffix, String content) throws IOException {
+        File file = File.createTempFile("shard", suffix);
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private Document merged(File file) throws Exception {
+        file.deleteOnExit();
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+    }
+
+    @Test
+    public void mergeTestNGTest() throws Exception {
+        File first = report("TESTNG.xml", "<testng-results total=\"2\" passed=\"1\" failed=\"1\" skipped=\"0\">"
+                + "<suite name=\"s\" duration-ms=\"100\"><test name=\"t\"><class name=\"First\">"
+                + "<test-method name=\"a\" status=\"PASS\"/><test-method name=\"b\" status=\"FAIL\"/>"
+                + "</class></test></suite></testng-results>");
+        File second = report("TESTNG.xml", "<testng-results total=\"1\" passed=\"0\" failed=\"0\" skipped=\"1\">"
+                + "<suite name=\"s\" duration-ms=\"50.5\"><test name=\"t\"><class name=\"Second\">"
+                + "<test-method name=\"c\" status=\"SKIP\"/></class></test></suite></testng-results>");
+        File output = File.createTempFile("MERGED", "TESTNG.xml");
+
+        ShardReportMerger.mergeTestNG(Arrays.asList(first, second), output);
+
+        Element results = merged(output).getDocumentElement();
+        assertThat(results.getAttribute("total")).isEqualTo("3");
+        assertThat(results.getAttribute("passed")).isEqualTo("1");
+        assertThat(results.getAttribute("failed")).isEqualTo("1");
+        assertThat(results.getAttribute("skipped")).isEqualTo("1");
+        assertThat(((Element) results.getElementsByTagName("suite").item(0)).getAttribute("duration-ms")).isEqualTo("150.5");
+        assertThat(results.getElementsByTagName("class").getLength()).isEqualTo(2);
+        assertThat(results.getElementsByTagName("test-method").getLength()).isEqualTo(3);
+    }
+
+    @Test
+    public void mergeJUnitTest() throws Exception {
+        File first = report("JUNIT.xml", "<testsuites><testsuite name=\"First\" tests=\"2\" failures=\"1\" skipped=\"0\" time=\"1.5\">"
+                + "<testcase name=\"a\"/><testcase name=\"b\"><failure message=\"m\"/></testcase></testsuite></testsuites>");
+        File second = report("JUNIT.xml", "<testsuites><testsuite name=\"Second\" tests=\"1\" failures=\"0\" skipped=\"1\" time=\"0.5\">"
+                + "<testcase name=\"c\"><skipped/></testcase></testsuite></testsuites>");
+        File output = File.createTempFile("MERGED", "JUNIT.xml");
+
+        ShardReportMerger.mergeJUnit(Arrays.asList(first, second), output);
+
+        Element testSuites = merged(output).getDocumentElement();
+        assertThat(testSuites.getAttribute("tests")).isEqualTo("3");
+        assertThat(testSuites.getAttribute("failures")).isEqualTo("1");
+        assertThat(testSuites.getAttribute("skipped")).isEqualTo("1");
+        assertThat(testSuites.getAttribute("time")).isEqualTo("2.0");
+        assertThat(testSuites.getElementsByTagName("testsuite").getLength()).isEqualTo(2);
+        assertThat(testSuites.getElementsByTagName("testcase").getLength()).isEqualTo(3);
+    }
+}
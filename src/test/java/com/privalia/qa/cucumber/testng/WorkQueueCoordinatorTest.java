@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.cucumber.testng;
+
+import com.privalia.qa.cucumber.testng.steps.RecordingSteps;
+import cucumber.api.CucumberOptions;
+import cucumber.runtime.ClassFinder;
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.RuntimeOptionsFactory;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+import cucumber.runtime.model.CucumberFeature;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Scenario;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs a coordinator and its workers in this JVM, through the loopback interface.
+ */
+@CucumberOptions(features = "src/test/resources/features/parallelRuntime.feature",
+        glue = "classpath:com/privalia/qa/cucumber/testng/steps")
+public class WorkQueueCoordinatorTest {
+
+    private final ClassLoader classLoader = getClass().getClassLoader();
+
+    private final ResourceLoader resourceLoader = new MultiLoader(classLoader);
+
+    private final ClassFinder classFinder = new ResourceLoaderClassFinder(resourceLoader, classLoader);
+
+    private final List<String> reported = new CopyOnWriteArrayList<>();
+
+    @BeforeMethod
+    public void clear() {
+        RecordingSteps.RECORDED.clear();
+        reported.clear();
+    }
+
+    private RuntimeOptions options() {
+        return new RuntimeOptionsFactory(getClass(), new Class[]{CucumberOptions.class}).create();
+    }
+
+    /**
+     * @return options whose formatter records the name of every scenario replayed by the coordinator
+     */
+    private RuntimeOptions coordinatorOptions() {
+        RuntimeOptions options = options();
+        options.addFormatter((Formatter) Proxy.newProxyInstance(classLoader, new Class<?>[]{Formatter.class, Reporter.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(reported, args);
+                    }
+                    if ("startOfScenarioLifeCycle".equals(method.getName())) {
+                        reported.add(((Scenario) args[0]).getName());
+                    }
+                    return null;
+                }));
+        return options;
+    }
+
+    private CompletableFuture<List<Throwable>> start(WorkQueueCoordinator coordinator, List<CucumberFeature> features) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return coordinator.run(features, Collections.emptyMap());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Test
+    public void everyScenarioIsReportedOnceTest() throws Exception {
+        RuntimeOptions options = coordinatorOptions();
+        List<CucumberFeature> features = options.cucumberFeatures(resourceLoader);
+        WorkQueueCoordinator coordinator = new WorkQueueCoordinator(options, 0);
+        CompletableFuture<List<Throwable>> result = start(coordinator, features);
+        int port = coordinator.awaitLocalPort();
+
+        // a worker that disconnects in the middle of its scenario
+        String abandoned;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+            out.writeUTF(WorkQueueCoordinator.NO_MORE_WORK);
+            out.flush();
+            abandoned = in.readUTF();
+        }
+
+        RuntimeOptions workerOptions = options();
+        List<Throwable> workerErrors = new WorkQueueWorker(resourceLoader, classFinder, classLoader, workerOptions,
+                Collections.emptyList(), "127.0.0.1:" + port).run(workerOptions.cucumberFeatures(resourceLoader), 2);
+        List<Throwable> errors = result.get(60, TimeUnit.SECONDS);
+
+        assertThat(abandoned).isNotEmpty();
+        assertThat(workerErrors).isEmpty();
+        assertThat(reported).containsExactly("First", "Second", "Outline", "Outline", "Failing", "Last");
+        assertThat(RecordingSteps.RECORDED).hasSize(6).containsOnly("first", "second", "third", "fourth", "fifth", "sixth");
+        assertThat(errors).hasSize(1);
+        assertThat(errors.get(0)).isInstanceOf(CucumberException.class).hasMessage("java.lang.AssertionError: expected failure");
+    }
+
+    @Test
+    public void scenariosNotFinishedBeforeTheTimeoutAreErrorsTest() throws Exception {
+        RuntimeOptions options = coordinatorOptions();
+        List<CucumberFeature> features = options.cucumberFeatures(resourceLoader);
+        WorkQueueCoordinator coordinator = new WorkQueueCoordinator(options, 0);
+
+        System.setProperty(WorkQueueCoordinator.TIMEOUT_PROPERTY, "1");
+        List<Throwable> errors;
+        try {
+            errors = start(coordinator, features).get(60, TimeUnit.SECONDS);
+        } finally {
+            System.clearProperty(WorkQueueCoordinator.TIMEOUT_PROPERTY);
+        }
+
+        assertThat(reported).isEmpty();
+        assertThat(errors).hasSize(5);
+        assertThat(errors.get(0)).hasMessageContaining("was not finished by any worker in 1 s");
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.cucumber.testng;
+
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XmlReportWriterTest {
+
+    private Document write(String suiteName) throws Exception {
+        File file = File.createTempFile("report", "JUNIT.xml");
+        file.deleteOnExit();
+
+        XmlReportWriter writer = new XmlReportWriter(file, "testsuites", "testsuite");
+        writer.startElement("testcase").attribute("name", "scenario <1>").attribute("classname", "Runner");
+        writer.startElement("failure").attribute("message", "\r\nGiven a step\r\n").cdata("stack ]]> trace").endElement();
+        writer.startElement("skipped").endElement();
+        writer.endElement();
+
+        Map<String, String> suite = new HashMap<>();
+        suite.put("name", suiteName);
+        suite.put("tests", "1");
+        writer.close(Collections.emptyMap(), suite);
+
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+    }
+
+    @Test
+    public void attributesPatchedAtCloseTest() throws Exception {
+        Document report = write("Runner.feature");
+
+        Element suite = (Element) report.getElementsByTagName("testsuite").item(0);
+        assertThat(suite.getAttribute("name")).isEqualTo("Runner.feature");
+        assertThat(suite.getAttribute("tests")).isEqualTo("1");
+        assertThat(report.getDocumentElement().getAttributes().getLength()).isZero();
+
+        Element testCase = (Element) suite.getElementsByTagName("testcase").item(0);
+        assertThat(testCase.getAttribute("name")).isEqualTo("scenario <1>");
+        Element failure = (Element) testCase.getElementsByTagName("failure").item(0);
+        assertThat(failure.getAttribute("message")).isEqualTo("\r\nGiven a step\r\n");
+        assertThat(failure.getTextContent()).isEqualTo("stack ]]> trace");
+        assertThat(testCase.getElementsByTagName("skipped").getLength()).isEqualTo(1);
+    }
+
+    @Test
+    public void headerRewrittenWhenAttributesDoNotFitTest() throws Exception {
+        String longName = String.join("", Collections.nCopies(XmlReportWriter.RESERVED_BYTES, "n"));
+        Document report = write(longName);
+
+        Element suite = (Element) report.getElementsByTagName("testsuite").item(0);
+        assertThat(suite.getAttribute("name")).isEqualTo(longName);
+        assertThat(suite.getElementsByTagName("testcase").getLength()).isEqualTo(1);
+    }
+}
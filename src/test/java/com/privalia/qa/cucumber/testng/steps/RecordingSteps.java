@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.cucumber.testng.steps;
+
+import cucumber.api.java.en.Given;
+import cucumber.api.java.en.Then;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Glue of the features that test the runners: records the steps run, in any thread.
+ */
+public class RecordingSteps {
+
+    public static final Queue<String> RECORDED = new ConcurrentLinkedQueue<>();
+
+    @Given("^I record '(.+?)'$")
+    public void record(String name) throws InterruptedException {
+        RECORDED.add(name);
+        Thread.sleep(20);
+    }
+
+    @Then("^it fails with '(.+?)'$")
+    public void fail(String message) {
+        throw new AssertionError(message);
+    }
+}
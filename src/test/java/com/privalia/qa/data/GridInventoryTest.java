@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.data;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.Jsoup;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GridInventoryTest {
+
+    private static final String STATUS = "{\"value\": {\"ready\": true, \"nodes\": ["
+            + "{\"availability\": \"UP\", \"slots\": ["
+            + "{\"session\": null, \"stereotype\": {\"browserName\": \"chrome\", \"browserVersion\": \"70\", \"platformName\": \"LINUX\"}},"
+            + "{\"session\": {\"sessionId\": \"1\"}, \"stereotype\": {\"browserName\": \"chrome\", \"browserVersion\": \"70\", \"platformName\": \"LINUX\"}},"
+            + "{\"session\": null, \"stereotype\": {\"browserName\": \"chrome\", \"browserVersion\": \"71\", \"platformName\": \"Android\"}}]},"
+            + "{\"availability\": \"DOWN\", \"slots\": ["
+            + "{\"session\": null, \"stereotype\": {\"browserName\": \"firefox\", \"browserVersion\": \"60\"}}]}]}}";
+
+    private static final String CONSOLE = "<html><body>"
+            + "<div class='proxy'><p class='proxyname'>node1</p><div class='content_detail'>"
+            + "<p><img title='{browserName=chrome, platformName=Android, version=71}'/>"
+            + "<img title='{browserName=firefox, maxInstances=1, version=60}'/></p>"
+            + "<p>v:60<span class='busy' title='busy'><img src='/grid/resources/firefox.png'/></span></p>"
+            + "</div></div>"
+            + "<div class='proxy'><p class='proxyname'>node2 Connection refused</p><div class='content_detail'>"
+            + "<p><img title='{browserName=chrome, version=70}'/></p></div></div>"
+            + "</body></html>";
+
+    @Test
+    public void statusTest() throws Exception {
+        GridInventory inventory = GridInventory.fromStatus(new ObjectMapper().readTree(STATUS));
+
+        assertThat(inventory.browsers(Collections.<String, String>emptyMap())).containsExactly("chrome_70", "chrome_70", "chrome_71");
+        assertThat(inventory.browsers(Collections.singletonMap("platformName", "(Android|iOS)"))).containsExactly("chrome_71");
+        assertThat(inventory.capacity()).containsOnlyKeys("chrome_70", "chrome_71");
+        assertThat(inventory.capacity().get("chrome_70").getFree()).isEqualTo(1);
+        assertThat(inventory.capacity().get("chrome_70").getBusy()).isEqualTo(1);
+    }
+
+    @Test
+    public void notAStatusTest() throws Exception {
+        assertThat(GridInventory.fromStatus(new ObjectMapper().readTree("{\"status\": 0}"))).isNull();
+    }
+
+    @Test
+    public void consoleTest() {
+        GridInventory inventory = GridInventory.fromConsole(Jsoup.parse(CONSOLE));
+
+        assertThat(inventory.browsers(Collections.<String, String>emptyMap())).containsExactly("chrome_71", "firefox_60", "firefox_60");
+        assertThat(inventory.browsers(Collections.singletonMap("platformName", "(Android|iOS)"))).containsExactly("chrome_71", "firefox_60");
+        assertThat(inventory.capacity().get("firefox_60").getTotal()).isEqualTo(2);
+        assertThat(inventory.capacity().get("firefox_60").getBusy()).isEqualTo(1);
+    }
+}
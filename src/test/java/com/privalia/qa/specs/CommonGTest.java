@@ -15,6 +15,7 @@
  */
 package com.privalia.qa.specs;
 
+import com.jayway.jsonpath.DocumentContext;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.Response;
 import com.privalia.qa.utils.JsonUtils;
@@ -1227,5 +1228,23 @@ public class CommonGTest {
         assertThat(value1).as("Value for search does not match").isEqualTo("test4.dummy.com");
     }
 
+    @Test
+    public void testParseJSONOnceForSeveralExpressions() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        String baseData = "consulServicesJSON.conf";
+
+        String jsonString = new String(Files.readAllBytes(
+                Paths.get(getClass().getClassLoader().getResource(baseData).getFile())));
+
+        CommonG commong = new CommonG();
+        DocumentContext document = CommonG.parseJSON(jsonString);
+
+        assertThat(commong.getJSONPathString(document, "$.~[0]", null)).as("key in 0 does not match").isEqualTo("mesos");
+        assertThat(commong.getJSONPathString(document, "$.~[2]", null)).as("key in 2 does not match").isEqualTo("consul");
+        assertThat(commong.getJSONPathString(document, "$.~[0]", null)).as("key in 0 does not match when cached").isEqualTo("mesos");
+        assertThat(commong.getJSONPathString(document, "$.consul", null))
+                .isEqualTo(commong.getJSONPathString(jsonString, "$.consul", null));
+    }
+
 
 }
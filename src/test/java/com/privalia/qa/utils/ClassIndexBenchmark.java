@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import com.privalia.qa.cucumber.testng.ICucumberFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reflections.Reflections;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous way of finding the formatters when a runner starts (scanning the package
+ * com.privalia.qa.utils) with reading the index of {@link ClassIndex}. The index is read again on every call,
+ * without the cache of {@link ClassIndex#subTypesOf(Class, String, ClassLoader)}.
+ * <p>
+ * It is not part of the test suite, run it with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.privalia.qa.utils.ClassIndexBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassIndexBenchmark {
+
+    private final ClassLoader classLoader = getClass().getClassLoader();
+
+    @Benchmark
+    public Set<Class<? extends ICucumberFormatter>> packageScan() {
+        return new Reflections("com.privalia.qa.utils").getSubTypesOf(ICucumberFormatter.class);
+    }
+
+    @Benchmark
+    public Set<Class<? extends ICucumberFormatter>> index() {
+        return ClassIndex.load(ICucumberFormatter.class, classLoader);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ClassIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import com.privalia.qa.cucumber.testng.ICucumberFormatter;
+import org.reflections.Reflections;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class ClassIndexTest {
+
+    @Test
+    public void formatterIndexIsUpToDateTest() {
+        assertThat(ClassIndex.load(ICucumberFormatter.class, getClass().getClassLoader()))
+                .as("classes listed in META-INF/services/" + ICucumberFormatter.class.getName())
+                .hasSameElementsAs(new Reflections("com.privalia.qa").getSubTypesOf(ICucumberFormatter.class));
+    }
+
+    @Test
+    public void indexWithCommentsTest() throws Exception {
+        try (URLClassLoader classLoader = indexOf(Runnable.class, "# threads", "java.lang.Thread # the thread", "")) {
+            assertThat(ClassIndex.load(Runnable.class, classLoader)).containsExactly(Thread.class);
+        }
+    }
+
+    @Test
+    public void invalidIndexTest() throws Exception {
+        try (URLClassLoader classLoader = indexOf(Runnable.class, "java.lang.String")) {
+            assertThatExceptionOfType(IllegalStateException.class)
+                    .isThrownBy(() -> ClassIndex.load(Runnable.class, classLoader))
+                    .withMessageContaining("is not a java.lang.Runnable");
+        }
+        try (URLClassLoader classLoader = indexOf(Runnable.class, "com.privalia.qa.DoesNotExist")) {
+            assertThatExceptionOfType(IllegalStateException.class)
+                    .isThrownBy(() -> ClassIndex.load(Runnable.class, classLoader))
+                    .withMessageContaining("does not exist");
+        }
+    }
+
+    private static URLClassLoader indexOf(Class<?> type, String... lines) throws Exception {
+        File root = Files.createTempDirectory("index").toFile();
+        root.deleteOnExit();
+        File index = new File(root, ClassIndex.INDEX_LOCATION + type.getName());
+        assertThat(index.getParentFile().mkdirs()).isTrue();
+        Files.write(index.toPath(), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        index.deleteOnExit();
+        return new URLClassLoader(new URL[]{root.toURI().toURL()}, null);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebElement;
+import org.testng.annotations.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DomWaitTest {
+
+    /**
+     * Returns the given results of the wait script, one per call.
+     */
+    private static final class ScriptedExecutor implements JavascriptExecutor {
+
+        private final Deque<Object> results = new ArrayDeque<>();
+
+        private final List<Object[]> calls = new ArrayList<>();
+
+        @Override
+        public Object executeScript(String script, Object... args) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object executeAsyncScript(String script, Object... args) {
+            calls.add(args);
+            Object result = results.poll();
+            if (result instanceof RuntimeException) {
+                throw (RuntimeException) result;
+            }
+            return result;
+        }
+    }
+
+    private static Map<String, Object> result(boolean done) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("done", done);
+        result.put("elements", Collections.emptyList());
+        return result;
+    }
+
+    @Test
+    public void waitsAgainUntilDoneTest() {
+        ScriptedExecutor driver = new ScriptedExecutor();
+        driver.results.add(result(false));
+        driver.results.add(new UnsupportedCommandException("document unloaded while waiting for result"));
+        driver.results.add(result(true));
+
+        List<WebElement> elements = DomWait.await(driver, "css", "#menu", 0, "present", 60000);
+
+        assertThat(elements).isEmpty();
+        assertThat(driver.calls).hasSize(3);
+        assertThat(driver.calls.get(0)).containsSequence("css", "#menu", 0, "present");
+        assertThat((Long) driver.calls.get(0)[4]).isEqualTo(DomWait.CHUNK_MILLIS);
+    }
+
+    @Test
+    public void unsupportedBrowserTest() {
+        ScriptedExecutor driver = new ScriptedExecutor();
+        driver.results.add(new UnsupportedCommandException("executeAsyncScript"));
+
+        assertThat(DomWait.await(driver, "id", "menu", 1, null, 1000)).isNull();
+        assertThat(DomWait.await(driver, "linkText", "menu", 1, null, 1000)).isNull();
+        assertThat(driver.calls).hasSize(1);
+    }
+
+    @Test
+    public void timeoutTest() {
+        ScriptedExecutor driver = new ScriptedExecutor();
+        driver.results.add(result(false));
+
+        assertThatThrownBy(() -> DomWait.await(driver, "xpath", "//li", 2, null, 0))
+                .isInstanceOf(TimeoutException.class)
+                .hasMessageContaining("2 elements by xpath://li");
+        assertThat((Long) driver.calls.get(0)[4]).isEqualTo(0L);
+    }
+}
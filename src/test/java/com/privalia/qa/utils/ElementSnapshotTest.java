@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import org.openqa.selenium.WebElement;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ElementSnapshotTest {
+
+    @Test
+    public void fromScriptResultTest() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("id", "name");
+        attributes.put("value", "john");
+        attributes.put("checked", null);
+        Map<String, Object> element = new HashMap<>();
+        element.put("text", "Name");
+        element.put("displayed", true);
+        element.put("enabled", false);
+        element.put("selected", false);
+        element.put("attributes", attributes);
+
+        ElementSnapshot snapshot = ElementSnapshot.from(element);
+
+        assertThat(snapshot.getText()).isEqualTo("Name");
+        assertThat(snapshot.isDisplayed()).isTrue();
+        assertThat(snapshot.isEnabled()).isFalse();
+        assertThat(snapshot.isSelected()).isFalse();
+        assertThat(snapshot.getAttribute("value")).isEqualTo("john");
+        assertThat(snapshot.hasAttribute("checked")).isTrue();
+        assertThat(snapshot.getAttribute("checked")).isNull();
+        assertThat(snapshot.hasAttribute("class")).isFalse();
+    }
+
+    @Test
+    public void untrackedElementsTest() {
+        PreviousWebElements elements = new PreviousWebElements(Collections.<WebElement>emptyList());
+        elements.track(null);
+        elements.refresh();
+
+        assertThat(elements.getSnapshot(0)).isNull();
+    }
+}
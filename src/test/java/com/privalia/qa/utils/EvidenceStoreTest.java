@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import com.google.common.hash.Hashing;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EvidenceStoreTest {
+
+    private final File dir = new File("target/test-evidence-store/" + System.nanoTime());
+
+    private final byte[] html = "<html></html>".getBytes(StandardCharsets.UTF_8);
+
+    private final String hash = Hashing.sha256().hashBytes(html).toString();
+
+    @Test
+    public void filesTest() throws Exception {
+        EvidenceStore store = new EvidenceStore(EvidenceStore.Mode.FILES, dir);
+        File file = new File(dir, "files/feature.scenario/chrome.html");
+
+        store.write(file, "<html>".getBytes(StandardCharsets.UTF_8), true);
+        store.write(file, "</html>".getBytes(StandardCharsets.UTF_8), true);
+        store.close();
+
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(html);
+        assertThat(store.locate(file)).isEqualTo(file.toString());
+        assertThat(store.getIndex()).isNull();
+    }
+
+    @Test
+    public void blobsTest() throws Exception {
+        File root = new File(dir, "blobs");
+        EvidenceStore store = new EvidenceStore(EvidenceStore.Mode.BLOBS, root);
+        File first = new File(root, "feature.scenario/chrome1.html");
+        File second = new File(root, "feature.scenario/chrome2.html");
+
+        store.write(first, html, true);
+        store.write(second, html, true);
+        store.close();
+
+        File blob = new File(root, "blobs/" + hash + ".html");
+        assertThat(Files.readAllBytes(blob.toPath())).isEqualTo(html);
+        assertThat(first).doesNotExist();
+        assertThat(store.locate(first)).isEqualTo(blob.toString()).isEqualTo(store.locate(second));
+        assertThat(Files.readAllLines(store.getIndex().toPath(), StandardCharsets.UTF_8)).containsExactly(
+                hash + "\t13\tfeature.scenario/chrome1.html", hash + "\t13\tfeature.scenario/chrome2.html");
+        assertThat(store.toString()).contains("evidences=2", "blobs=1", "bytesSaved=13");
+    }
+
+    @Test
+    public void failedWriteIsRetriedTest() throws Exception {
+        File root = new File(dir, "retry");
+        EvidenceStore store = new EvidenceStore(EvidenceStore.Mode.BLOBS, root);
+        File evidence = new File(root, "feature.scenario/chrome.html");
+        // a file where the blobs folder should be
+        File blocker = new File(root, EvidenceStore.BLOBS_DIR);
+        assertThat(root.mkdirs()).isTrue();
+        assertThat(blocker.createNewFile()).isTrue();
+
+        assertThatThrownBy(() -> store.write(evidence, html, true)).isInstanceOf(IOException.class);
+        assertThat(blocker.delete()).isTrue();
+        store.write(evidence, html, true);
+        store.close();
+
+        assertThat(Files.readAllBytes(new File(root, "blobs/" + hash + ".html").toPath())).isEqualTo(html);
+        assertThat(store.toString()).contains("evidences=1", "blobs=1");
+    }
+
+    @Test
+    public void tarTest() throws Exception {
+        File root = new File(dir, "tar");
+        EvidenceStore store = new EvidenceStore(EvidenceStore.Mode.TAR, root);
+        File file = new File(root, "feature.scenario/chrome.html");
+
+        store.write(file, html, true);
+        store.write(new File(root, "feature.scenario/chrome2.html"), html, true);
+        store.close();
+
+        byte[] tar = Files.readAllBytes(new File(root, EvidenceStore.ARCHIVE_NAME).toPath());
+        // one header, one block of content and the two empty blocks at the end
+        assertThat(tar).hasSize(4 * 512);
+        assertThat(new String(tar, 0, 100, StandardCharsets.US_ASCII).trim()).isEqualTo("blobs/" + hash + ".html");
+        assertThat(new String(tar, 257, 5, StandardCharsets.US_ASCII)).isEqualTo("ustar");
+        assertThat(Integer.parseInt(new String(tar, 124, 11, StandardCharsets.US_ASCII), 8)).isEqualTo(html.length);
+        assertThat(Arrays.copyOfRange(tar, 512, 512 + html.length)).isEqualTo(html);
+        assertThat(Arrays.copyOfRange(tar, 1024, tar.length)).containsOnly((byte) 0);
+
+        List<String> index = Files.readAllLines(store.getIndex().toPath(), StandardCharsets.UTF_8);
+        assertThat(index).hasSize(2);
+        assertThat(store.locate(file)).endsWith(EvidenceStore.ARCHIVE_NAME + "!/blobs/" + hash + ".html");
+    }
+}
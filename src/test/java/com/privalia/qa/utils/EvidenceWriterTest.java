@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvidenceWriterTest {
+
+    private final File dir = new File("target/test-evidences/" + System.nanoTime());
+
+    @Test
+    public void writeTextTest() throws Exception {
+        File file = new File(dir, "feature.scenario/chrome.html");
+
+        EvidenceWriter.INSTANCE.writeText(file, "<html>");
+        EvidenceWriter.INSTANCE.writeText(file, "</html>");
+        EvidenceWriter.INSTANCE.flush();
+
+        assertThat(EvidenceWriter.INSTANCE.getPendingFiles()).doesNotContain(file);
+        assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)).isEqualTo("<html></html>");
+    }
+
+    @Test
+    public void writePngTest() throws Exception {
+        File file = new File(dir, "feature.scenario/chromeassert.png");
+        BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(1, 1, 0xFF0000);
+
+        EvidenceWriter.INSTANCE.writePng(file, image);
+        EvidenceWriter.INSTANCE.flush();
+
+        BufferedImage written = ImageIO.read(file);
+        assertThat(written.getWidth()).isEqualTo(3);
+        assertThat(written.getHeight()).isEqualTo(2);
+        assertThat(written.getRGB(1, 1) & 0xFFFFFF).isEqualTo(0xFF0000);
+    }
+}
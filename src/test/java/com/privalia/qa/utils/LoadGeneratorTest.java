@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LoadGeneratorTest {
+
+    private HttpServer server;
+
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ok", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private boolean get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getAddress().getPort() + path).openConnection();
+        try {
+            return connection.getResponseCode() < 400;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void rateTest() throws Exception {
+        LoadGenerator.Result result = new LoadGenerator(20, 4, 100).run(() -> get("/ok"));
+
+        assertThat(result.getRequests()).isEqualTo(20);
+        assertThat(result.getErrors()).isZero();
+        assertThat(result.getLatencies().getTotalCount()).isEqualTo(20);
+        // the last request is started 190 ms after the first one
+        assertThat(result.getThroughput()).isLessThanOrEqualTo(110);
+    }
+
+    @Test
+    public void coordinatedOmissionTest() throws Exception {
+        LoadGenerator.Result result = new LoadGenerator(10, 1, 100).run(() -> get("/slow"));
+
+        // requests wait for the previous ones, so the last ones are late by several service times
+        assertThat(result.getLatency(100)).isGreaterThan(3 * result.getServiceTimes().getValueAtPercentile(50) / 1000.0);
+        assertThat(result.getLatency(50)).isLessThanOrEqualTo(result.getLatency(99));
+    }
+
+    @Test
+    public void errorRateTest() throws Exception {
+        AtomicInteger sent = new AtomicInteger();
+        LoadGenerator.Result result = new LoadGenerator(10, 2, 1000).run(() -> {
+            int n = sent.incrementAndGet();
+            if (n == 1) {
+                throw new IOException("Connection refused");
+            }
+            return n > 2 && get("/missing");
+        });
+
+        assertThat(result.getErrors()).isEqualTo(10);
+        assertThat(result.getErrorRate()).isEqualTo(100.0);
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        System.setProperty(LoadGenerator.TIMEOUT_PROPERTY, "1");
+        LoadGenerator.Result result;
+        try {
+            result = new LoadGenerator(3, 1, 1000).run(() -> {
+                Thread.sleep(5000);
+                return true;
+            });
+        } finally {
+            System.clearProperty(LoadGenerator.TIMEOUT_PROPERTY);
+        }
+
+        // the requests still pending are recorded with the latency they had at the timeout
+        assertThat(result.getTimedOut()).isEqualTo(3);
+        assertThat(result.getErrors()).isEqualTo(3);
+        assertThat(result.getLatencies().getTotalCount()).isEqualTo(3);
+        assertThat(result.getLatency(0)).isGreaterThanOrEqualTo(990);
+        assertThat(result.getThroughput()).isZero();
+    }
+
+    @Test
+    public void invalidLoadTest() {
+        assertThatThrownBy(() -> new LoadGenerator(10, 0, 10)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.io.FileNotFoundException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOfType;
+
+public class PropertySnapshotTest {
+
+    @Test
+    public void loadCommonPropertiesTest() throws Exception {
+        PropertySnapshot.invalidate();
+        PropertySnapshot snapshot = PropertySnapshot.get();
+
+        assertThat(snapshot.getString("wait.time")).isEqualTo("1");
+        assertThat(snapshot.getString("not.defined")).isNull();
+    }
+
+    @Test
+    public void snapshotIsReusedTest() throws Exception {
+        PropertySnapshot snapshot = PropertySnapshot.get();
+
+        assertThat(PropertySnapshot.get()).as("Snapshot was loaded again").isSameAs(snapshot);
+    }
+
+    @Test
+    public void missingEnvironmentFileTest() {
+        System.setProperty("env", "DUMMYBDD_MISSING_ENV");
+        try {
+            assertThatExceptionOfType(FileNotFoundException.class).isThrownBy(PropertySnapshot::get);
+        } finally {
+            System.clearProperty("env");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestTimingTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void newConnectionIsTimed() throws Exception {
+        RequestTiming timing = RequestTiming.start("GET", "http://localhost:80/users");
+        long start = System.nanoTime();
+        RequestTiming.dnsResolved(1000000);
+        RequestTiming.connectionOpened(start, start + 3000000);
+        RequestTiming.firstByteReceived();
+        timing.stop(200);
+
+        assertThat(timing.getDns()).isEqualTo(1.0);
+        assertThat(timing.getConnect()).isEqualTo(2.0);
+        assertThat(timing.getTls()).isEqualTo(-1);
+        assertThat(timing.getTimeToFirstByte()).isGreaterThanOrEqualTo(0);
+        assertThat(timing.getTotal()).isGreaterThanOrEqualTo(timing.getTimeToFirstByte());
+        assertThat(timing.isReused()).isFalse();
+    }
+
+    @Test
+    public void reusedConnectionIsNotTimed() {
+        RequestTiming timing = RequestTiming.start("GET", "http://localhost:80/users");
+        RequestTiming.firstByteReceived();
+        timing.stop(200);
+
+        assertThat(timing.getDns()).isEqualTo(-1);
+        assertThat(timing.getConnect()).isEqualTo(-1);
+        assertThat(timing.isReused()).isTrue();
+    }
+
+    @Test
+    public void failedRequestIsNotReused() {
+        RequestTiming timing = RequestTiming.start("GET", "http://unknown:80/users").stop(0);
+
+        assertThat(timing.isReused()).isFalse();
+        assertThat(timing.getTimeToFirstByte()).isEqualTo(-1);
+    }
+
+    @Test
+    public void timesOutsideATimingAreIgnored() {
+        RequestTiming timing = RequestTiming.start("GET", "http://localhost:80/users").stop(200);
+        RequestTiming.dnsResolved(1000000);
+        RequestTiming.firstByteReceived();
+
+        assertThat(timing.getDns()).isEqualTo(-1);
+        assertThat(timing.getTimeToFirstByte()).isEqualTo(-1);
+    }
+
+    @Test
+    public void logIsAppended() throws IOException {
+        File file = File.createTempFile("requests", ".jsonl");
+        file.deleteOnExit();
+        Map<String, String> context = Collections.singletonMap("class", "RestSpecIT");
+        RequestTiming first = RequestTiming.start("GET", "http://localhost:80/users").stop(200);
+        RequestTiming second = RequestTiming.start("POST", "http://localhost:80/users").stop(201);
+
+        RequestTiming.appendLog(file, Arrays.asList(first, second), context);
+        RequestTiming.appendLog(file, Collections.singletonList(first), context);
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(3);
+        JsonNode line = mapper.readTree(lines.get(1));
+        assertThat(line.get("class").asText()).isEqualTo("RestSpecIT");
+        assertThat(line.get("method").asText()).isEqualTo("POST");
+        assertThat(line.get("status").asInt()).isEqualTo(201);
+        assertThat(line.get("dns").isNull()).isTrue();
+        assertThat(line.get("total").asDouble()).isGreaterThanOrEqualTo(0);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResourceCacheTest {
+
+    @Test
+    public void cachedResourceTest() throws Exception {
+        ResourceCache.INSTANCE.clear();
+        long hits = ResourceCache.INSTANCE.getHits();
+
+        String first = ResourceCache.INSTANCE.get("retrieveDataValidJsonTest.conf", "json", "UTF-8");
+        String second = ResourceCache.INSTANCE.get("retrieveDataValidJsonTest.conf", "json", "UTF-8");
+
+        assertThat(second).as("Resource was read again").isSameAs(first);
+        assertThat(ResourceCache.INSTANCE.getHits()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    public void typeIsPartOfTheKeyTest() throws Exception {
+        String json = ResourceCache.INSTANCE.get("retrieveDataValidJsonTest.conf", "json", "UTF-8");
+        String text = ResourceCache.INSTANCE.get("retrieveDataValidJsonTest.conf", "string", "UTF-8");
+
+        assertThat(json).isNotSameAs(text);
+    }
+
+    @Test
+    public void missingResourceTest() throws Exception {
+        assertThat(ResourceCache.INSTANCE.get("invalid.conf", "string", "UTF-8")).isNull();
+    }
+
+    @Test
+    public void retrieveDataTest() {
+        assertThat(ResourceCache.INSTANCE.retrieveData("retrieveDataStringTest.conf", "string", "UTF-8")).doesNotStartWith("ERR!");
+        assertThat(ResourceCache.INSTANCE.retrieveData("invalid.conf", "string", "UTF-8")).isEqualTo("ERR! File not found: invalid.conf");
+    }
+
+    @Test
+    public void modifiedResourceTest() throws Exception {
+        File folder = new File(getClass().getClassLoader().getResource("retrieveDataStringTest.conf").toURI()).getParentFile();
+        File resource = new File(folder, "resourceCacheTest.conf");
+        try {
+            FileUtils.write(resource, "first", StandardCharsets.UTF_8);
+            resource.setLastModified(1000000L);
+            assertThat(ResourceCache.INSTANCE.get(resource.getName(), "string", "UTF-8")).isEqualTo("first");
+
+            FileUtils.write(resource, "second", StandardCharsets.UTF_8);
+            resource.setLastModified(2000000L);
+            assertThat(ResourceCache.INSTANCE.get(resource.getName(), "string", "UTF-8")).isEqualTo("second");
+        } finally {
+            FileUtils.deleteQuietly(resource);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RestClientsTest {
+
+    private static final char[] PASSWORD = "gingerspec".toCharArray();
+
+    // with a body, so the server keeps the connection open
+    private static final HttpHandler OK = exchange -> {
+        byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    };
+
+    private HttpServer httpServer;
+
+    private HttpsServer httpsServer;
+
+    private KeyStore trustStore;
+
+    @BeforeClass
+    public void startServers() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream in = getClass().getResourceAsStream("/keystore/localhost.jks")) {
+            keyStore.load(in, PASSWORD);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        // only the certificate, RestAssured loads the keys of a trust store with a private key
+        trustStore = KeyStore.getInstance("JKS");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("localhost", keyStore.getCertificate("localhost"));
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+
+        httpsServer = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpsServer.setHttpsConfigurator(new HttpsConfigurator(context));
+        httpsServer.createContext("/ok", OK);
+        httpsServer.start();
+
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/ok", OK);
+        httpServer.start();
+    }
+
+    @AfterClass
+    public void stopServers() {
+        httpServer.stop(0);
+        httpsServer.stop(0);
+    }
+
+    @Test
+    public void sharedAsyncClientTest() {
+        assertThat(RestClients.INSTANCE.getAsyncClient()).isSameAs(RestClients.INSTANCE.getAsyncClient());
+        assertThat(RestClients.INSTANCE.getAsyncClient().isClosed()).isFalse();
+    }
+
+    @Test
+    public void requestPerCallTest() {
+        assertThat(RestClients.given()).isNotNull().isNotSameAs(RestClients.given());
+        assertThat(RestClients.INSTANCE.toString()).startsWith("RestClients{handshakes=");
+    }
+
+    @Test
+    public void connectionIsReusedTest() {
+        String url = "http://localhost:" + httpServer.getAddress().getPort() + "/ok";
+        long handshakes = RestClients.INSTANCE.getHandshakes();
+        long reused = RestClients.INSTANCE.getReused();
+
+        // the body of the first response is not read by the test
+        assertThat(RestClients.given().get(url).getStatusCode()).isEqualTo(200);
+        assertThat(RestClients.given().get(url).asString()).isEqualTo("ok");
+
+        assertThat(RestClients.INSTANCE.getHandshakes() - handshakes).isEqualTo(1);
+        assertThat(RestClients.INSTANCE.getReused() - reused).isEqualTo(1);
+    }
+
+    @Test
+    public void tlsHandshakeIsTimedTest() throws Exception {
+        String url = "https://localhost:" + httpsServer.getAddress().getPort() + "/ok";
+        long tlsHandshakes = RestClients.INSTANCE.getTlsHandshakes();
+
+        RequestTiming timing = RequestTiming.start("GET", url);
+        int status = RestClients.relaxedHTTPSValidation(RestClients.given()).get(url).getStatusCode();
+        timing.stop(status);
+
+        JsonNode line = new ObjectMapper().readTree(timing.toJson(Collections.emptyMap()));
+        assertThat(status).isEqualTo(200);
+        assertThat(line.get("tls").isNull()).as("tls of %s", line).isFalse();
+        assertThat(timing.getTls()).isGreaterThanOrEqualTo(0);
+        assertThat(RestClients.INSTANCE.getTlsHandshakes()).isEqualTo(tlsHandshakes + 1);
+    }
+
+    @Test
+    public void certificateIsValidatedTest() {
+        String url = "https://localhost:" + httpsServer.getAddress().getPort() + "/ok";
+
+        assertThatThrownBy(() -> RestClients.given().get(url)).isInstanceOf(SSLException.class);
+    }
+
+    @Test
+    public void ownTrustStoreIsUsedTest() {
+        String url = "https://localhost:" + httpsServer.getAddress().getPort() + "/ok";
+
+        assertThat(RestClients.given().trustStore(trustStore).get(url).getStatusCode()).isEqualTo(200);
+    }
+}
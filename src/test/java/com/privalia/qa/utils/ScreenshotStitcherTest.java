@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class ScreenshotStitcherTest {
+
+    @Test
+    public void stitchTest() throws Exception {
+        // a page of 250 css pixels, shown in a window of 100 with a device pixel ratio of 2
+        ScreenshotStitcher stitcher = new ScreenshotStitcher(100, 250);
+        assertThat(stitcher.getViewports()).isEqualTo(3);
+
+        stitcher.add(shot(0x0000FF));
+        stitcher.add(shot(0x00FF00));
+        stitcher.add(shot(0xFF0000));
+
+        BufferedImage page = stitcher.getImage();
+        assertThat(page.getWidth()).isEqualTo(4);
+        assertThat(page.getHeight()).isEqualTo(500);
+        assertThat(page.getRGB(0, 0) & 0xFFFFFF).isEqualTo(0x0000FF);
+        assertThat(page.getRGB(0, 199) & 0xFFFFFF).isEqualTo(0x0000FF);
+        assertThat(page.getRGB(0, 200) & 0xFFFFFF).isEqualTo(0x00FF00);
+        assertThat(page.getRGB(0, 299) & 0xFFFFFF).isEqualTo(0x00FF00);
+        // the last screenshot is aligned with the bottom of the page
+        assertThat(page.getRGB(0, 300) & 0xFFFFFF).isEqualTo(0xFF0000);
+        assertThat(page.getRGB(3, 499) & 0xFFFFFF).isEqualTo(0xFF0000);
+    }
+
+    @Test
+    public void shortPageTest() throws Exception {
+        ScreenshotStitcher stitcher = new ScreenshotStitcher(100, 50);
+        assertThat(stitcher.getViewports()).isEqualTo(1);
+        assertThat(stitcher.getImage()).isNull();
+
+        stitcher.add(shot(0x00FF00));
+
+        assertThat(stitcher.getImage().getHeight()).isEqualTo(200);
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() -> stitcher.add(shot(0x00FF00)));
+    }
+
+    @Test
+    public void invalidScreenshotTest() {
+        ScreenshotStitcher stitcher = new ScreenshotStitcher(100, 100);
+        assertThatExceptionOfType(IOException.class).isThrownBy(() -> stitcher.add(new byte[]{1, 2, 3}));
+    }
+
+    private static byte[] shot(int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(4, 200, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SessionPoolTest {
+
+    @Test
+    public void reuseTest() throws Exception {
+        Sessions sessions = new Sessions();
+        SessionPool<Session> pool = new SessionPool<>(sessions, 2, key -> 1);
+
+        Session first = pool.acquire("chrome_70", Session::new);
+        pool.release("chrome_70", first, false);
+        assertThat(first.resets).isEqualTo(1);
+        assertThat(pool.acquire("firefox_60", Session::new)).isNotSameAs(first);
+        assertThat(pool.acquire("chrome_70", Session::new)).isSameAs(first);
+
+        // maximum uses reached
+        pool.release("chrome_70", first, false);
+        assertThat(sessions.closed).containsExactly(first);
+        assertThat(pool.getIdle("chrome_70")).isZero();
+    }
+
+    @Test
+    public void failedScenarioTest() throws Exception {
+        Sessions sessions = new Sessions();
+        SessionPool<Session> pool = new SessionPool<>(sessions, 10, key -> 1);
+
+        Session session = pool.acquire("chrome_70", Session::new);
+        pool.release("chrome_70", session, true);
+
+        assertThat(sessions.closed).containsExactly(session);
+        assertThat(session.resets).isZero();
+        assertThat(pool.acquire("chrome_70", Session::new)).isNotSameAs(session);
+    }
+
+    @Test
+    public void capacityTest() throws Exception {
+        Sessions sessions = new Sessions();
+        SessionPool<Session> pool = new SessionPool<>(sessions, 10, key -> key.startsWith("chrome") ? 1 : 0);
+
+        Session first = pool.acquire("chrome_70", Session::new);
+        Session second = pool.acquire("chrome_70", Session::new);
+        Session firefox = pool.acquire("firefox_60", Session::new);
+        pool.release("chrome_70", first, false);
+        pool.release("chrome_70", second, false);
+        pool.release("firefox_60", firefox, false);
+
+        assertThat(pool.getIdle("chrome_70")).isEqualTo(1);
+        assertThat(sessions.closed).containsExactly(second, firefox);
+
+        pool.close();
+        assertThat(sessions.closed).containsExactly(second, firefox, first);
+    }
+
+    @Test
+    public void capacityIsNotMemoisedTest() throws Exception {
+        Sessions sessions = new Sessions();
+        AtomicInteger capacity = new AtomicInteger();
+        SessionPool<Session> pool = new SessionPool<>(sessions, 10, key -> capacity.get());
+
+        // i.e. the node is not registered in the grid yet
+        Session first = pool.acquire("chrome_70", Session::new);
+        pool.release("chrome_70", first, false);
+        assertThat(sessions.closed).containsExactly(first);
+
+        capacity.set(1);
+        Session second = pool.acquire("chrome_70", Session::new);
+        pool.release("chrome_70", second, false);
+        assertThat(pool.getIdle("chrome_70")).isEqualTo(1);
+        assertThat(pool.acquire("chrome_70", Session::new)).isSameAs(second);
+    }
+
+    @Test
+    public void unhealthyTest() throws Exception {
+        Sessions sessions = new Sessions();
+        SessionPool<Session> pool = new SessionPool<>(sessions, 10, key -> 2);
+
+        Session broken = pool.acquire("chrome_70", Session::new);
+        Session notResettable = pool.acquire("chrome_70", Session::new);
+        notResettable.resettable = false;
+        pool.release("chrome_70", broken, false);
+        pool.release("chrome_70", notResettable, false);
+        broken.healthy = false;
+
+        assertThat(pool.acquire("chrome_70", Session::new)).isNotSameAs(broken).isNotSameAs(notResettable);
+        assertThat(sessions.closed).containsExactly(notResettable, broken);
+    }
+
+    private static final class Session {
+
+        private boolean healthy = true;
+
+        private boolean resettable = true;
+
+        private int resets;
+    }
+
+    private static final class Sessions implements SessionPool.Lifecycle<Session> {
+
+        private final List<Session> closed = new ArrayList<>();
+
+        @Override
+        public boolean isHealthy(Session session) {
+            return session.healthy;
+        }
+
+        @Override
+        public void reset(Session session) {
+            if (!session.resettable) {
+                throw new IllegalStateException("Session not resettable");
+            }
+            session.resets++;
+        }
+
+        @Override
+        public void close(Session session) {
+            closed.add(session);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StreamingBodyTest {
+
+    private static final String JSON = "{\"id\": 1, \"name\": \"gingerspec\", \"price\": 2.0, \"rate\": 0.5, \"active\": true,"
+            + " \"owner\": null, \"items\": [{\"id\": 10, \"tags\": [\"a\", \"b\"]}, {\"id\": 11, \"tags\": []}],"
+            + " \"meta\": {\"first-page\": 1, \"links\": {\"self\": \"/items\"}}}";
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void definitePathsAreSupported() {
+        assertThat(StreamingBody.isSupported("$")).isTrue();
+        assertThat(StreamingBody.isSupported("$.items[0].tags[1]")).isTrue();
+        assertThat(StreamingBody.isSupported("$['meta'][\"first-page\"]")).isTrue();
+        assertThat(StreamingBody.isSupported("$.items[*].id")).isFalse();
+        assertThat(StreamingBody.isSupported("$..id")).isFalse();
+        assertThat(StreamingBody.isSupported("$.items[?(@.id == 10)]")).isFalse();
+        assertThat(StreamingBody.isSupported("$.items.length()")).isFalse();
+        assertThat(StreamingBody.isSupported("$.items[-1]")).isFalse();
+        assertThat(StreamingBody.isSupported("$.meta.~")).isFalse();
+    }
+
+    @Test
+    public void expressionsAreEvaluatedInASinglePass() throws IOException {
+        Map<String, String> values = StreamingBody.read(stream(JSON), Arrays.asList("$.id", "$.name", "$.price",
+                "$.rate", "$.active", "$.owner", "$.items[1].id", "$.items[0].tags", "$['meta'][\"first-page\"]",
+                "$.meta.links", "$.items[5]", "$.unknown"));
+
+        assertThat(values).containsEntry("$.id", "1")
+                .containsEntry("$.name", "gingerspec")
+                .containsEntry("$.price", "2")
+                .containsEntry("$.rate", "0.5")
+                .containsEntry("$.active", "true")
+                .containsEntry("$.owner", "null")
+                .containsEntry("$.items[1].id", "11")
+                .containsEntry("$.items[0].tags", "[\"a\",\"b\"]")
+                .containsEntry("$['meta'][\"first-page\"]", "1")
+                .containsEntry("$.meta.links", "{\"self\":\"/items\"}")
+                .doesNotContainKeys("$.items[5]", "$.unknown");
+    }
+
+    @Test
+    public void expressionsInsideAnotherAreEvaluatedOnItsValue() throws IOException {
+        Map<String, String> values = StreamingBody.read(stream(JSON), Arrays.asList("$.meta", "$.meta.links.self",
+                "$.meta.unknown"));
+
+        assertThat(values).containsEntry("$.meta", "{\"first-page\":1,\"links\":{\"self\":\"/items\"}}")
+                .containsEntry("$.meta.links.self", "/items")
+                .doesNotContainKeys("$.meta.unknown");
+    }
+
+    @Test
+    public void readingStopsWhenEverythingIsFound() throws IOException {
+        Map<String, String> values = StreamingBody.read(stream("{\"id\": 1, \"rest\": [1, 2,"),
+                Collections.singletonList("$.id"));
+
+        assertThat(values).containsEntry("$.id", "1");
+    }
+
+    @Test
+    public void invalidJsonFails() {
+        assertThatThrownBy(() -> StreamingBody.read(stream("{id: 1}"), Collections.singletonList("$.id")))
+                .isInstanceOf(JsonParseException.class);
+    }
+
+    @Test
+    public void textIsFoundAcrossChunks() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 8190; i++) {
+            body.append('x');
+        }
+        body.append("needle");
+
+        assertThat(StreamingBody.contains(new StringReader(body.toString()), "needle")).isTrue();
+        assertThat(StreamingBody.contains(new StringReader(body.toString()), "needles")).isFalse();
+        assertThat(StreamingBody.contains(new StringReader(""), "")).isTrue();
+    }
+
+    @Test
+    public void charsetIsTakenFromTheContentType() {
+        assertThat(StreamingBody.charset("text/plain; charset=UTF-16")).isEqualTo(StandardCharsets.UTF_16);
+        assertThat(StreamingBody.charset("application/json")).isEqualTo(StandardCharsets.UTF_8);
+        assertThat(StreamingBody.charset("text/html; charset=unknown")).isEqualTo(StandardCharsets.ISO_8859_1);
+        assertThat(StreamingBody.charset(null)).isEqualTo(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VariableStoreTest {
+
+    @Test
+    public void scopeFallbackTest() {
+        VariableStore.set(VariableStore.Scope.SUITE, "VARIABLE_STORE_FALLBACK", "suite");
+        VariableStore.set(VariableStore.Scope.FEATURE, "VARIABLE_STORE_FALLBACK", "feature");
+        VariableStore.set(VariableStore.Scope.SCENARIO, "VARIABLE_STORE_FALLBACK", "scenario");
+
+        assertThat(VariableStore.get("VARIABLE_STORE_FALLBACK")).isEqualTo("scenario");
+        VariableStore.clear(VariableStore.Scope.SCENARIO);
+        assertThat(VariableStore.get("VARIABLE_STORE_FALLBACK")).isEqualTo("feature");
+        VariableStore.clear(VariableStore.Scope.FEATURE);
+        assertThat(VariableStore.get("VARIABLE_STORE_FALLBACK")).isEqualTo("suite");
+        VariableStore.set(VariableStore.Scope.SUITE, "VARIABLE_STORE_FALLBACK", null);
+        assertThat(VariableStore.get("VARIABLE_STORE_FALLBACK")).isNull();
+    }
+
+    @Test
+    public void threadPropertyFacadeTest() {
+        ThreadProperty.set("VARIABLE_STORE_FACADE", "value");
+
+        assertThat(VariableStore.get(VariableStore.Scope.THREAD, "VARIABLE_STORE_FACADE")).isEqualTo("value");
+        VariableStore.clear(VariableStore.Scope.SCENARIO);
+        assertThat(ThreadProperty.get("VARIABLE_STORE_FACADE")).as("Scenario change discarded a thread variable").isEqualTo("value");
+    }
+
+    @Test
+    public void threadPropertyIsNotHiddenTest() {
+        VariableStore.set(VariableStore.Scope.FEATURE, "VARIABLE_STORE_HIDDEN", "feature");
+        VariableStore.set(VariableStore.Scope.SCENARIO, "VARIABLE_STORE_HIDDEN", "scenario");
+        ThreadProperty.set("VARIABLE_STORE_HIDDEN", "thread");
+
+        assertThat(ThreadProperty.get("VARIABLE_STORE_HIDDEN")).isEqualTo("thread");
+        assertThat(VariableStore.get(VariableStore.Scope.SCENARIO, "VARIABLE_STORE_HIDDEN")).isNull();
+        assertThat(VariableStore.get(VariableStore.Scope.FEATURE, "VARIABLE_STORE_HIDDEN")).isNull();
+        ThreadProperty.set("VARIABLE_STORE_HIDDEN", null);
+        assertThat(ThreadProperty.get("VARIABLE_STORE_HIDDEN")).isNull();
+    }
+
+    @Test
+    public void onlySuiteIsSharedTest() throws Exception {
+        VariableStore.set(VariableStore.Scope.SUITE, "VARIABLE_STORE_SHARED", "suite");
+        VariableStore.set(VariableStore.Scope.SCENARIO, "VARIABLE_STORE_CONFINED", "scenario");
+
+        AtomicReference<String> shared = new AtomicReference<>();
+        AtomicReference<String> confined = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            shared.set(VariableStore.get("VARIABLE_STORE_SHARED"));
+            confined.set(VariableStore.get("VARIABLE_STORE_CONFINED"));
+        });
+        other.start();
+        other.join();
+
+        assertThat(shared.get()).isEqualTo("suite");
+        assertThat(confined.get()).isNull();
+    }
+}
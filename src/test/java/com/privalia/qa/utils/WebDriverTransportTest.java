@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.privalia.qa.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class WebDriverTransportTest {
+
+    private HttpServer server;
+
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/status", exchange -> {
+            // with a body, so the server keeps the connection open
+            byte[] body = "{\"value\":{\"ready\":true}}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void latencyTest() {
+        WebDriverTransport.Latency latency = new WebDriverTransport.Latency();
+        latency.record(2000000);
+        latency.record(6000000);
+
+        assertThat(latency.getCount()).isEqualTo(2);
+        assertThat(latency.getMean()).isCloseTo(4.0, within(0.001));
+        assertThat(latency.getMax()).isCloseTo(6.0, within(0.001));
+        assertThat(latency.toString()).isEqualTo("{count=2, mean=4.0 ms, max=6.0 ms}");
+    }
+
+    @Test
+    public void sharedTransportTest() throws Exception {
+        WebDriverTransport.INSTANCE.record("transportTestCommand", 1000000);
+
+        assertThat(WebDriverTransport.INSTANCE.getLatencies()).containsKey("transportTestCommand");
+        assertThat(WebDriverTransport.INSTANCE.createClient(new URL("http://localhost:4444/wd/hub")))
+                .isNotSameAs(WebDriverTransport.INSTANCE.createClient(new URL("http://localhost:4444/wd/hub")));
+        assertThat(WebDriverTransport.INSTANCE.getReusedConnections()).isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    public void connectionIsReusedTest() throws Exception {
+        long connections = WebDriverTransport.INSTANCE.getConnections();
+        long reused = WebDriverTransport.INSTANCE.getReusedConnections();
+
+        HttpClient first = WebDriverTransport.INSTANCE.createClient(new URL("http://localhost:" + server.getAddress().getPort()));
+        HttpClient second = WebDriverTransport.INSTANCE.createClient(new URL("http://localhost:" + server.getAddress().getPort()));
+        assertThat(first.execute(new HttpRequest(HttpMethod.GET, "/status"), true).getStatus()).isEqualTo(200);
+        assertThat(second.execute(new HttpRequest(HttpMethod.GET, "/status"), true).getStatus()).isEqualTo(200);
+
+        assertThat(WebDriverTransport.INSTANCE.getConnections() - connections).isEqualTo(1);
+        assertThat(WebDriverTransport.INSTANCE.getReusedConnections() - reused).isEqualTo(1);
+    }
+}
@@ -0,0 +1,22 @@
+Feature: Scenarios run by the parallel runners
+
+  Scenario: First
+    Given I record 'first'
+
+  Scenario: Second
+    Given I record 'second'
+
+  Scenario Outline: Outline
+    Given I record '<name>'
+
+    Examples:
+      | name   |
+      | third  |
+      | fourth |
+
+  Scenario: Failing
+    Given I record 'fifth'
+    Then it fails with 'expected failure'
+
+  Scenario: Last
+    Given I record 'sixth'